@@ -0,0 +1,93 @@
+package top.shjibi.plugineer.command;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.shjibi.plugineer.command.base.CommandHandler;
+import top.shjibi.plugineer.command.base.annotations.CommandInfo;
+import top.shjibi.plugineer.command.base.annotations.RegisterCommand;
+import top.shjibi.plugineer.config.IOMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static top.shjibi.plugineer.util.StringUtil.color;
+
+/**
+ * A command which dumps the {@link IOMetrics} of the configs and data in use, add it to the handlers of {@link CommandManager}.
+ * <p>
+ * Usage: /iometrics [name] dumps the metrics, /iometrics reset [name] clears them.
+ */
+@CommandInfo(name = "iometrics", usage = "&cUsage: /%s [reset] [name]")
+@RegisterCommand(name = "iometrics", description = "Dumps the I/O metrics of the configs and data")
+public class IOMetricsCommand extends CommandHandler {
+
+    /**
+     * Permission required to run the command
+     */
+    public static final String PERMISSION = "plugineer.iometrics";
+
+    public IOMetricsCommand(@NotNull JavaPlugin plugin) {
+        super(plugin);
+    }
+
+    @Override
+    public void execute(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+        if (!sender.hasPermission(PERMISSION)) {
+            sender.sendMessage(color("&cYou don't have permission to do this!"));
+            return;
+        }
+        boolean reset = args.length > 0 && args[0].equalsIgnoreCase("reset");
+        int nameIndex = reset ? 1 : 0;
+        if (args.length > nameIndex + 1) {
+            sendUsage(sender, label);
+            return;
+        }
+        List<IOMetrics> matched = find(args.length > nameIndex ? args[nameIndex] : null);
+        if (matched.isEmpty()) {
+            sender.sendMessage(color("&cNo metrics found!"));
+            return;
+        }
+        for (IOMetrics metrics : matched) {
+            if (reset) {
+                metrics.reset();
+                sender.sendMessage(color("&aReset the metrics of " + metrics.getOwner().getName()));
+                continue;
+            }
+            List<String> lines = metrics.dump();
+            sender.sendMessage(color("&e" + lines.get(0)));
+            for (int i = 1; i < lines.size(); i++) {
+                sender.sendMessage(color("&7" + lines.get(i)));
+            }
+        }
+    }
+
+    @Override
+    @Nullable
+    public List<String> completeTab(@NotNull CommandSender sender, @NotNull Command command, @NotNull String label, @NotNull String[] args) {
+        if (args.length > 2 || (args.length == 2 && !args[0].equalsIgnoreCase("reset"))) return List.of();
+        String prefix = args.length == 0 ? "" : args[args.length - 1].toLowerCase(Locale.ENGLISH);
+        List<String> result = new ArrayList<>();
+        if (args.length <= 1 && "reset".startsWith(prefix)) result.add("reset");
+        for (IOMetrics metrics : IOMetrics.getAll()) {
+            String name = metrics.getOwner().getName();
+            if (name.toLowerCase(Locale.ENGLISH).startsWith(prefix) && !result.contains(name)) result.add(name);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the metrics of the configurables with the name, or all the metrics if the name is null
+     */
+    @NotNull
+    private static List<IOMetrics> find(@Nullable String name) {
+        List<IOMetrics> result = new ArrayList<>();
+        for (IOMetrics metrics : IOMetrics.getAll()) {
+            if (name == null || metrics.getOwner().getName().equalsIgnoreCase(name)) result.add(metrics);
+        }
+        return result;
+    }
+}
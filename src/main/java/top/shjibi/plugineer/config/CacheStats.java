@@ -0,0 +1,27 @@
+package top.shjibi.plugineer.config;
+
+/**
+ * Statistics of the cache of a {@link Data} which loads lazily
+ *
+ * @param hits      Count of the lookups which found the entry in memory
+ * @param misses    Count of the lookups which had to load the entry
+ * @param evictions Count of the entries evicted from the cache
+ * @param size      Count of the entries in the cache
+ * @param weight    Total weight of the entries in the cache
+ */
+public record CacheStats(long hits, long misses, long evictions, long size, long weight) {
+
+    /**
+     * @return Ratio of the lookups which found the entry in memory, or 1 if nothing was looked up
+     */
+    public double hitRate() {
+        long total = hits + misses;
+        return total == 0 ? 1 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits: " + hits + ", misses: " + misses + ", evictions: " + evictions
+                + ", size: " + size + ", weight: " + weight + "}";
+    }
+}
@@ -0,0 +1,42 @@
+package top.shjibi.plugineer.config;
+
+/**
+ * Statistics of the encoding and decoding of the files of a {@link FileDataStorage}
+ *
+ * @param encoded     Count of the documents written
+ * @param rawBytes    Size of the written documents as plain json
+ * @param storedBytes Size of the written documents on disk
+ * @param encodeNanos Time spent serializing and compressing the written documents
+ * @param decoded     Count of the documents read
+ * @param decodeNanos Time spent reading, decompressing and parsing the read documents
+ */
+public record CompressionStats(long encoded, long rawBytes, long storedBytes, long encodeNanos,
+                               long decoded, long decodeNanos) {
+
+    /**
+     * @return Size on disk divided by the plain json size, or 1 if nothing was written
+     */
+    public double ratio() {
+        return rawBytes == 0 ? 1 : (double) storedBytes / rawBytes;
+    }
+
+    /**
+     * @return Average time to encode a document in microseconds
+     */
+    public double averageEncodeMicros() {
+        return encoded == 0 ? 0 : encodeNanos / 1000.0 / encoded;
+    }
+
+    /**
+     * @return Average time to decode a document in microseconds
+     */
+    public double averageDecodeMicros() {
+        return decoded == 0 ? 0 : decodeNanos / 1000.0 / decoded;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CompressionStats{encoded: %d, ratio: %.3f, encode: %.1f us, decoded: %d, decode: %.1f us}",
+                encoded, ratio(), averageEncodeMicros(), decoded, averageDecodeMicros());
+    }
+}
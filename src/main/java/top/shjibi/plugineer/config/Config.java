@@ -8,22 +8,59 @@ import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import top.shjibi.plugineer.config.annotations.ConfigPath;
+import top.shjibi.plugineer.util.ThreadUtil;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 /**
- * A configuration of a plugin
+ * A configuration of a plugin.
+ * <p>
+ * Values are read from an immutable {@link ConfigSnapshot}, which is replaced as a whole when the configuration is
+ * reloaded or modified, so they can be read from any thread and never observe a half reloaded configuration.
+ * The snapshot is only ever taken by the writers and the main thread, which own the modifiable configuration:
+ * modifications are published once per tick on the main thread, so setting many values in a row copies the configuration once.
  */
 public class Config extends Configurable<YamlConfiguration> {
 
+    /**
+     * Time in milliseconds within which the saves requested by {@link #saveAsync()} are coalesced
+     */
+    public static final long SAVE_WINDOW = 500;
+
     protected final JavaPlugin plugin;
     protected final File folder;
     protected final File[] files;
-    protected final YamlConfiguration config;
+    protected volatile YamlConfiguration config;
     protected final YamlConfiguration defaults;
     protected final String name;
+    private final ConfigSnapshot defaultSnapshot;
+    private volatile ConfigSnapshot snapshot;
+    // Whether the configuration was modified since the snapshot was taken
+    private volatile boolean stale;
+    // Whether a task publishing the modifications is scheduled on the main thread
+    private boolean publishScheduled;
+    // Bound class to the instance bound from the current snapshot
+    private final Map<Class<?>, Bound> bound = new ConcurrentHashMap<>();
+    // Held while the config file is read to be updated and written, so saves on different threads don't interleave
+    private final Object fileLock = new Object();
+    @Nullable
+    private volatile ExecutorService ioExecutor;
+    @Nullable
+    private CompletableFuture<Void> pendingSave;
 
     /**
      * Creates a {@link Config} with the specified name
@@ -49,41 +86,122 @@ public class Config extends Configurable<YamlConfiguration> {
         this.folder = mkdirs(plugin, folderPath);
         this.files = new File[]{new File(folder.getAbsolutePath() + "\\" + name + ".yml")};
         this.defaults = loadDefault();
+        this.defaultSnapshot = ConfigSnapshot.of(defaults, 0);
         this.config = load(files[0]);
+        this.snapshot = ConfigSnapshot.of(config, 0);
+        registerMetrics();
     }
 
     /**
      * Creates an empty {@link ConfigurationSection} at the specified path with specified data.
+     * The readers see it once it's published, like {@link #setConfig(String, Object)}.
      *
      * @param path The specified path
      * @param map  The data to put
      * @return Newly created section
      */
     @NotNull
-    public ConfigurationSection createSection(@NotNull String path, @NotNull Map<?, ?> map) {
-        return config.createSection(path, map);
+    public synchronized ConfigurationSection createSection(@NotNull String path, @NotNull Map<?, ?> map) {
+        ConfigurationSection section = config.createSection(path, map);
+        modified();
+        return section;
     }
 
     /**
      * Creates an empty ConfigurationSection at the specified path, any value that was previously
      * set at this path will be overwritten.
+     * The section is a live view which must only be modified on the main thread, like {@link #getData()},
+     * the values set in it are published with the next modification of this config, or by {@link #publish()}.
      *
      * @param path The specified path
      * @return Newly created section
      */
     @NotNull
-    public ConfigurationSection createSection(@NotNull String path) {
-        return config.createSection(path);
+    public synchronized ConfigurationSection createSection(@NotNull String path) {
+        ConfigurationSection section = config.createSection(path);
+        modified();
+        return section;
     }
 
     /**
-     * Sets the provided path to a specified value
+     * Sets the provided path to a specified value.
+     * The main thread sees it right away, the other threads once it's published at the end of the tick,
+     * or right away when {@link #publish()} is called.
      *
      * @param path  The provided path
      * @param value The value to set
      */
-    public void setConfig(@NotNull String path, @Nullable Object value) {
+    public synchronized void setConfig(@NotNull String path, @Nullable Object value) {
         config.set(path, value);
+        modified();
+    }
+
+    /**
+     * Publishes the current state of the configuration to the readers,
+     * call this after modifying the {@link YamlConfiguration} returned by {@link #getData()} directly.
+     * Copies the configuration, so it must be called by the thread modifying it.
+     */
+    public synchronized void publish() {
+        publish(config);
+    }
+
+    /**
+     * Marks the configuration as modified and schedules its publication on the main thread once per tick,
+     * must hold the lock
+     */
+    private void modified() {
+        stale = true;
+        if (Bukkit.getServer() == null || !plugin.isEnabled()) {
+            // Nothing runs the task, e.g. while the plugin is disabled
+            publish(config);
+            return;
+        }
+        if (publishScheduled) return;
+        publishScheduled = true;
+        Bukkit.getScheduler().runTask(plugin, () -> {
+            synchronized (this) {
+                publishScheduled = false;
+                if (stale) publish(config);
+            }
+        });
+    }
+
+    /**
+     * Replaces the configuration and its snapshot, must hold the lock
+     */
+    private void publish(YamlConfiguration config) {
+        ConfigSnapshot published = ConfigSnapshot.of(config, snapshot.getVersion() + 1);
+        this.config = config;
+        this.snapshot = published;
+        this.stale = false;
+    }
+
+    /**
+     * @return Snapshot of the default configuration
+     */
+    @NotNull
+    public ConfigSnapshot getDefaultSnapshot() {
+        return defaultSnapshot;
+    }
+
+    /**
+     * Gets the current snapshot of the configuration, which never changes once it's taken.
+     * On the main thread, the modifications which aren't published yet are published first, so it sees its own changes,
+     * the other threads only read the last published snapshot and never copy the configuration.
+     *
+     * @return The snapshot
+     */
+    @NotNull
+    public ConfigSnapshot getSnapshot() {
+        if (!stale || !isMainThread()) return snapshot;
+        synchronized (this) {
+            if (stale) publish(config);
+            return snapshot;
+        }
+    }
+
+    private static boolean isMainThread() {
+        return Bukkit.getServer() != null && Bukkit.isPrimaryThread();
     }
 
     /**
@@ -94,13 +212,15 @@ public class Config extends Configurable<YamlConfiguration> {
      */
     @Nullable
     public String getConfig(@NotNull String path) {
-        Object o = config.get(path);
+        Object o = getSnapshot().get(path);
         if (o == null) return null;
         return o.toString();
     }
 
     /**
      * Gets the value of a provided path cast to the given class.
+     * {@link ConfigurationSection}s are live views, so they're taken from the configuration instead of the snapshot
+     * and must only be used on the main thread.
      *
      * @param clazz The given class.
      * @param path  The provided path
@@ -108,7 +228,58 @@ public class Config extends Configurable<YamlConfiguration> {
      */
     @Nullable
     public <T> T getConfig(@NotNull Class<T> clazz, @NotNull String path) {
-        return config.getObject(path, clazz, null);
+        if (ConfigurationSection.class.isAssignableFrom(clazz)) return config.getObject(path, clazz, null);
+        return getSnapshot().get(clazz, path);
+    }
+
+    /**
+     * Creates a typed handle of a provided path, which caches the converted value until the config is modified or reloaded.
+     * Keys are meant to be created once and kept, e.g. in a field.
+     *
+     * @param path The provided path
+     * @param type Type of the value
+     * @return The key, whose value defaults to the value in {@link #getDefaults()}
+     */
+    @NotNull
+    public <T> ConfigKey<T> getKey(@NotNull String path, @NotNull Class<T> type) {
+        return new ConfigKey<>(this, path, type, null);
+    }
+
+    /**
+     * Creates a typed handle of a provided path with a default value,
+     * which caches the converted value until the config is modified or reloaded.
+     *
+     * @param path         The provided path
+     * @param type         Type of the value
+     * @param defaultValue Value used if the path doesn't exist or can't be converted
+     * @return The key
+     */
+    @NotNull
+    public <T> ConfigKey<T> getKey(@NotNull String path, @NotNull Class<T> type, @NotNull T defaultValue) {
+        return new ConfigKey<>(this, path, type, defaultValue);
+    }
+
+    /**
+     * Binds the values of this config to a new instance of a class, a record or a class with a no-argument constructor
+     * whose fields are annotated with {@link ConfigPath}. Values which are missing are taken from {@link #getDefaults()},
+     * fields whose values are missing in both keep the value set by the constructor.
+     * <p>
+     * The binder of a class is compiled into method handles once. The instance is created once per snapshot,
+     * so calling this again returns the same instance until the config is modified or reloaded,
+     * after which a new instance is bound.
+     *
+     * @param type The class to bind to
+     * @return The bound instance, which should be treated as immutable
+     * @throws IllegalArgumentException If the class can't be bound, or a record component of a primitive type is missing
+     */
+    @NotNull
+    public <T> T bind(@NotNull Class<T> type) {
+        ConfigSnapshot current = getSnapshot();
+        Bound previous = bound.get(type);
+        if (previous != null && previous.snapshot() == current) return type.cast(previous.instance());
+        T instance = ConfigBinder.of(type).bind(current, defaultSnapshot);
+        bound.put(type, new Bound(current, instance));
+        return instance;
     }
 
     /**
@@ -119,7 +290,7 @@ public class Config extends Configurable<YamlConfiguration> {
      */
     @Nullable
     public String getDefaultConfig(@NotNull String path) {
-        Object o = defaults.get(path);
+        Object o = defaultSnapshot.get(path);
         if (o == null) return null;
         return o.toString();
     }
@@ -133,31 +304,192 @@ public class Config extends Configurable<YamlConfiguration> {
      */
     @Nullable
     public <T> T getDefaultConfig(@NotNull Class<T> clazz, @NotNull String path) {
-        return defaults.getObject(path, clazz, null);
+        if (ConfigurationSection.class.isAssignableFrom(clazz)) return defaults.getObject(path, clazz, null);
+        return defaultSnapshot.get(clazz, path);
     }
 
 
 
+    /**
+     * Saves the configuration on the calling thread, the file is replaced atomically
+     */
     @Override
     public void save() {
+        IOMetrics.Measurement measurement = getMetrics().start(IOMetrics.Operation.SAVE);
+        String content = config.saveToString();
+        synchronized (fileLock) {
+            write(content);
+        }
+        measurement.finish(1);
+    }
+
+    /**
+     * Saves the current snapshot of the configuration on a background thread.
+     * Saves requested within {@link #SAVE_WINDOW} milliseconds of each other are coalesced into one write
+     * of the snapshot which is current when the write starts, so this costs nearly nothing on the calling thread.
+     * <p>
+     * The file is parsed again and updated with the values of the snapshot, so its comments are kept,
+     * and replaced atomically. Changes made directly to {@link #getData()} are only saved once they're published,
+     * and comments added in memory are only saved by {@link #save()}.
+     *
+     * @return Future which completes once the snapshot is written, shared by the coalesced saves
+     */
+    @NotNull
+    public synchronized CompletableFuture<Void> saveAsync() {
+        if (pendingSave != null) return pendingSave;
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        pendingSave = future;
+        CompletableFuture.delayedExecutor(SAVE_WINDOW, TimeUnit.MILLISECONDS, getExecutor()).execute(this::writePendingSave);
+        return future;
+    }
+
+    /**
+     * Blocks until the saves requested by {@link #saveAsync()} are written,
+     * a save waiting for the end of its window is written right away.
+     * Should be called when the plugin is disabled.
+     */
+    public void flush() {
+        CompletableFuture<Void> future;
+        synchronized (this) {
+            future = pendingSave;
+        }
+        if (future == null) return;
+        // The write reads the published snapshot, which may miss the modifications of this tick
+        getSnapshot();
+        getExecutor().execute(this::writePendingSave);
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            throw new RuntimeException("Cannot flush config: " + name, e.getCause());
+        }
+    }
+
+    private void writePendingSave() {
+        CompletableFuture<Void> future;
+        synchronized (this) {
+            future = pendingSave;
+            // A save requested from now on writes again
+            pendingSave = null;
+        }
+        if (future == null) return;
+        try {
+            IOMetrics.Measurement measurement = getMetrics().start(IOMetrics.Operation.SAVE);
+            synchronized (fileLock) {
+                write(toYaml(getSnapshot()));
+            }
+            measurement.finish(1);
+            future.complete(null);
+        } catch (RuntimeException e) {
+            Bukkit.getLogger().log(Level.SEVERE, "Cannot save config: " + name, e);
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Serializes a snapshot as the config file updated with its values
+     */
+    private String toYaml(ConfigSnapshot snapshot) {
         File file = files[0];
+        YamlConfiguration yaml = new YamlConfiguration();
         try {
-            config.save(file);
+            if (file.isFile()) {
+                yaml.load(file);
+                IOMetrics.countRead(file.length());
+            }
+        } catch (IOException | InvalidConfigurationException e) {
+            // Replaced as a whole
+            yaml = new YamlConfiguration();
+        }
+        for (String path : yaml.getKeys(true)) {
+            if (!snapshot.contains(path)) yaml.set(path, null);
+        }
+        for (Map.Entry<String, Object> entry : snapshot.getValues().entrySet()) {
+            // Sections are stored as maps, they're written through the values in them
+            if (entry.getValue() instanceof Map<?, ?> map && !map.isEmpty()
+                    && snapshot.contains(entry.getKey() + "." + map.keySet().iterator().next())) continue;
+            yaml.set(entry.getKey(), entry.getValue());
+        }
+        return yaml.saveToString();
+    }
+
+    /**
+     * Writes the content to a temporary file which then replaces the config file, so a crash never leaves it half written.
+     * Must hold the file lock.
+     */
+    private void write(String content) {
+        File file = files[0];
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        Path temporary = null;
+        try {
+            // In the same folder, so it can be moved atomically
+            temporary = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(), file.getName(), ".tmp");
+            try (FileOutputStream out = new FileOutputStream(temporary.toFile())) {
+                out.write(bytes);
+                out.getFD().sync();
+            }
+            Files.move(temporary, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
             throw new RuntimeException("Cannot save file: " + file.getName(), e);
         }
+        IOMetrics.countWritten(bytes.length);
     }
 
     /**
-     * Loads the configuration from the config file again
+     * Loads the configuration from the config file again.
+     * The file is parsed into a new configuration, which replaces the current one and its snapshot at once,
+     * if the file can't be parsed, the current configuration is kept.
+     * Changes which weren't saved are lost.
+     *
+     * @return The new snapshot
      */
-    public void reload() {
+    @NotNull
+    public ConfigSnapshot reload() {
         File file = files[0];
+        IOMetrics.Measurement measurement = getMetrics().start(IOMetrics.Operation.RELOAD);
+        YamlConfiguration reloaded = new YamlConfiguration();
         try {
-            config.load(file);
+            reloaded.load(file);
         } catch (IOException | InvalidConfigurationException e) {
             throw new RuntimeException("Cannot reload config: " + file.getName(), e);
         }
+        IOMetrics.countRead(file.length());
+        measurement.finish(1);
+        synchronized (this) {
+            publish(reloaded);
+            return snapshot;
+        }
+    }
+
+    /**
+     * Reloads the configuration like {@link #reload()} on a background thread, readers keep reading the current snapshot
+     * until the new one is published.
+     * The {@link YamlConfiguration} returned by {@link #getData()} is replaced by the reload,
+     * so it shouldn't be kept across reloads.
+     *
+     * @return Future of the new snapshot, which fails if the file can't be parsed
+     */
+    @NotNull
+    public CompletableFuture<ConfigSnapshot> reloadAsync() {
+        return CompletableFuture.supplyAsync(this::reload, getExecutor());
+    }
+
+    @NotNull
+    private synchronized ExecutorService getExecutor() {
+        if (ioExecutor == null) {
+            // The thread stops when idle, as configs are never closed
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    ThreadUtil.newThreadFactory("Plugineer-Config-" + name));
+            executor.allowCoreThreadTimeOut(true);
+            ioExecutor = executor;
+        }
+        return ioExecutor;
     }
 
     /**
@@ -191,6 +523,7 @@ public class Config extends Configurable<YamlConfiguration> {
             return defaults;
         }
         YamlConfiguration config = new YamlConfiguration();
+        IOMetrics.Measurement measurement = getMetrics().start(IOMetrics.Operation.LOAD);
         try {
             config.load(file);
         } catch (IOException e) {
@@ -198,6 +531,8 @@ public class Config extends Configurable<YamlConfiguration> {
         } catch (InvalidConfigurationException e) {
             Bukkit.getLogger().log(Level.SEVERE, "Cannot load config because of It's invalid.");
         }
+        IOMetrics.countRead(file.length());
+        measurement.finish(1);
         return config;
     }
 
@@ -225,6 +560,10 @@ public class Config extends Configurable<YamlConfiguration> {
         return plugin;
     }
 
+    /**
+     * @return The current configuration, which is replaced when it's reloaded.
+     * It must only be modified on the main thread, and the changes are visible to the readers once {@link #publish()} is called.
+     */
     @Override
     @NotNull
     public YamlConfiguration getData() {
@@ -235,4 +574,10 @@ public class Config extends Configurable<YamlConfiguration> {
     public YamlConfiguration getDefaults() {
         return defaults;
     }
+
+    /**
+     * An instance bound from a snapshot
+     */
+    private record Bound(ConfigSnapshot snapshot, Object instance) {
+    }
 }
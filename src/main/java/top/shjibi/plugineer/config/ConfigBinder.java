@@ -0,0 +1,148 @@
+package top.shjibi.plugineer.config;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.shjibi.plugineer.config.annotations.ConfigPath;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Binds the values of a {@link ConfigSnapshot} to a new instance of a class, used by {@link Config#bind(Class)}.
+ * A binder is compiled once per class into method handles of the constructor and the fields,
+ * records are created with their canonical constructor, other classes with their no-argument constructor
+ * followed by setting the fields annotated with {@link ConfigPath}.
+ *
+ * @param <T> The bound class
+ */
+final class ConfigBinder<T> {
+
+    private static final ClassValue<ConfigBinder<?>> BINDERS = new ClassValue<>() {
+        @Override
+        protected ConfigBinder<?> computeValue(Class<?> type) {
+            return new ConfigBinder<>(type);
+        }
+    };
+
+    private final Class<T> type;
+    private final Binding[] bindings;
+    // (Object[])Object for records, ()Object otherwise
+    private final MethodHandle constructor;
+
+    private ConfigBinder(Class<T> type) {
+        this.type = type;
+        List<Binding> bindings = new ArrayList<>();
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            if (type.isRecord()) {
+                RecordComponent[] components = type.getRecordComponents();
+                Class<?>[] parameters = new Class<?>[components.length];
+                for (int i = 0; i < components.length; i++) {
+                    RecordComponent component = components[i];
+                    ConfigPath path = component.getAnnotation(ConfigPath.class);
+                    parameters[i] = component.getType();
+                    bindings.add(new Binding(path == null ? component.getName() : path.value(), component.getType(), null));
+                }
+                this.constructor = lookup.findConstructor(type, MethodType.methodType(void.class, parameters))
+                        .asSpreader(Object[].class, parameters.length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            } else {
+                for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                    MethodHandles.Lookup fieldLookup = current == type ? lookup : MethodHandles.privateLookupIn(current, MethodHandles.lookup());
+                    for (Field field : current.getDeclaredFields()) {
+                        ConfigPath path = field.getAnnotation(ConfigPath.class);
+                        if (path == null || Modifier.isStatic(field.getModifiers())) continue;
+                        // Final fields can only be set through a setter of an accessible field
+                        field.setAccessible(true);
+                        MethodHandle setter = fieldLookup.unreflectSetter(field)
+                                .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                        bindings.add(new Binding(path.value(), field.getType(), setter));
+                    }
+                }
+                this.constructor = lookup.findConstructor(type, MethodType.methodType(void.class))
+                        .asType(MethodType.methodType(Object.class));
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalArgumentException("Cannot bind config to " + type.getName(), e);
+        }
+        this.bindings = bindings.toArray(new Binding[0]);
+    }
+
+    /**
+     * Gets the binder of a class, which is compiled the first time it's used
+     */
+    @SuppressWarnings("unchecked")
+    @NotNull
+    static <T> ConfigBinder<T> of(@NotNull Class<T> type) {
+        return (ConfigBinder<T>) BINDERS.get(type);
+    }
+
+    /**
+     * Creates a new instance with the values of the snapshot, values which are missing or can't be converted
+     * are taken from the defaults
+     *
+     * @param values   The values to bind
+     * @param defaults The default values
+     * @return The new instance
+     * @throws IllegalArgumentException If a value of a primitive type is missing from both snapshots
+     */
+    @NotNull
+    T bind(@NotNull ConfigSnapshot values, @NotNull ConfigSnapshot defaults) {
+        Object[] resolved = new Object[bindings.length];
+        for (int i = 0; i < bindings.length; i++) {
+            resolved[i] = bindings[i].resolve(values, defaults);
+        }
+        try {
+            if (type.isRecord()) return type.cast((Object) constructor.invokeExact(resolved));
+            Object instance = (Object) constructor.invokeExact();
+            for (int i = 0; i < bindings.length; i++) {
+                // Missing values keep the value the constructor set
+                if (resolved[i] != null) bindings[i].setter.invokeExact(instance, resolved[i]);
+            }
+            return type.cast(instance);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("Cannot bind config to " + type.getName(), e);
+        }
+    }
+
+    private static final class Binding {
+        private final String path;
+        private final Class<?> type;
+        private final Function<Object, ?> converter;
+        // (Object, Object)void, null for record components
+        @Nullable
+        private final MethodHandle setter;
+
+        private Binding(String path, Class<?> type, @Nullable MethodHandle setter) {
+            this.path = path;
+            this.type = type;
+            this.converter = ConfigKey.converter(type);
+            this.setter = setter;
+        }
+
+        @Nullable
+        private Object resolve(ConfigSnapshot values, ConfigSnapshot defaults) {
+            Object value = convert(values.get(path));
+            if (value == null) value = convert(defaults.get(path));
+            // Fields keep the value of the constructor instead
+            if (value == null && type.isPrimitive() && setter == null) {
+                throw new IllegalArgumentException("Missing config value " + path + " of type " + type.getName());
+            }
+            return value;
+        }
+
+        @Nullable
+        private Object convert(@Nullable Object value) {
+            return value == null ? null : converter.apply(value);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package top.shjibi.plugineer.config;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.Function;
+
+/**
+ * A typed handle of a path of a {@link Config}, created by {@link Config#getKey(String, Class)}.
+ * The value is looked up and converted once per {@link ConfigSnapshot}, so it's only resolved again after the config
+ * is modified or reloaded, and reading it otherwise costs a field load and a comparison.
+ * Keys can be read from any thread.
+ *
+ * @param <T> Type of the value
+ */
+public final class ConfigKey<T> {
+
+    private final Config config;
+    private final String path;
+    private final Class<T> type;
+    private final Function<Object, T> converter;
+    @Nullable
+    private final T defaultValue;
+    @Nullable
+    private volatile Resolved<T> resolved;
+
+    ConfigKey(@NotNull Config config, @NotNull String path, @NotNull Class<T> type, @Nullable T defaultValue) {
+        this.config = config;
+        this.path = path;
+        this.type = type;
+        this.converter = converter(type);
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Gets the value of the path, converted to the type of this key.
+     * Numbers are converted to the other number types, primitive types are read as their wrappers,
+     * and any value is converted to a {@link String} with {@link Object#toString()}.
+     *
+     * @return The value, or the default value if the path doesn't exist or can't be converted,
+     * which is the given default value or otherwise the value in {@link Config#getDefaults()}
+     */
+    @Nullable
+    public T get() {
+        ConfigSnapshot snapshot = config.getSnapshot();
+        Resolved<T> current = resolved;
+        if (current != null && current.snapshot == snapshot) return current.value;
+        T value = resolve(snapshot);
+        // Racing threads resolve the same value from the same snapshot
+        resolved = new Resolved<>(snapshot, value);
+        return value;
+    }
+
+    @Nullable
+    private T resolve(ConfigSnapshot snapshot) {
+        T value = convert(snapshot.get(path));
+        if (value != null) return value;
+        if (defaultValue != null) return defaultValue;
+        return convert(config.getDefaultConfig(Object.class, path));
+    }
+
+    @Nullable
+    private T convert(@Nullable Object value) {
+        return value == null ? null : converter.apply(value);
+    }
+
+    /**
+     * Creates the converter of the values of a type, which returns null for values which can't be converted
+     */
+    @SuppressWarnings("unchecked")
+    @NotNull
+    static <T> Function<Object, T> converter(@NotNull Class<T> type) {
+        Function<Object, ?> converter;
+        if (type == String.class) {
+            converter = Object::toString;
+        } else if (type == Integer.class || type == int.class) {
+            converter = value -> value instanceof Number number ? number.intValue() : null;
+        } else if (type == Long.class || type == long.class) {
+            converter = value -> value instanceof Number number ? number.longValue() : null;
+        } else if (type == Double.class || type == double.class) {
+            converter = value -> value instanceof Number number ? number.doubleValue() : null;
+        } else if (type == Float.class || type == float.class) {
+            converter = value -> value instanceof Number number ? number.floatValue() : null;
+        } else if (type == Short.class || type == short.class) {
+            converter = value -> value instanceof Number number ? number.shortValue() : null;
+        } else if (type == Byte.class || type == byte.class) {
+            converter = value -> value instanceof Number number ? number.byteValue() : null;
+        } else if (type == Boolean.class || type == boolean.class) {
+            converter = value -> value instanceof Boolean ? value : null;
+        } else {
+            converter = value -> type.isInstance(value) ? value : null;
+        }
+        return (Function<Object, T>) converter;
+    }
+
+    /**
+     * @return The path of this key
+     */
+    @NotNull
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * @return The type of the value of this key
+     */
+    @NotNull
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * @return The config this key reads from
+     */
+    @NotNull
+    public Config getConfig() {
+        return config;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigKey{config: " + config.getName() + ", path: " + path + ", type: " + type.getSimpleName() + "}";
+    }
+
+    /**
+     * The value resolved from a snapshot
+     */
+    private record Resolved<T>(ConfigSnapshot snapshot, @Nullable T value) {
+    }
+}
@@ -0,0 +1,260 @@
+package top.shjibi.plugineer.config;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * A yaml file of a {@link LayeredConfig}, whose top-level sections are parsed separately the first time they're read.
+ * The file is split into sections by scanning its lines for unindented keys, which is much cheaper than parsing it.
+ * Files which can't be split safely, e.g. because of anchors, flow style at the top level or a quoted scalar continuing
+ * on an unindented line, are parsed as a whole at once, and so is a file whose section turns out to hold other keys.
+ */
+final class ConfigLayer {
+
+    // Anchors, aliases and merge keys may refer to other sections
+    private static final Pattern ANCHOR = Pattern.compile("(?m)(?::|^\\s*-)\\s+[&*][^\\s'\"]|<<\\s*:");
+    // Marks a section whose value is null, as the parsed sections can't hold null
+    private static final Object NULL = new Object();
+
+    private final String name;
+    // Top-level key to the text of its section, empty if the file was parsed at once
+    private final Map<String, String> blocks;
+    private final Set<String> keys;
+    private final Map<String, Object> parsed = new ConcurrentHashMap<>();
+    // Values of the whole file, only parsed if a section turns out to hold other keys than its own
+    @Nullable
+    private volatile Map<String, Object> whole;
+
+    private ConfigLayer(String name, Map<String, String> blocks, Set<String> keys) {
+        this.name = name;
+        this.blocks = blocks;
+        this.keys = keys;
+    }
+
+    /**
+     * Splits the content of a file into its top-level sections
+     *
+     * @param name    Name of the file, used in the error messages
+     * @param content Content of the file
+     * @return The layer
+     * @throws RuntimeException If the file can't be split and can't be parsed
+     */
+    @NotNull
+    static ConfigLayer of(@NotNull String name, @NotNull String content) {
+        Map<String, String> blocks = split(content);
+        if (blocks != null) return new ConfigLayer(name, blocks, Collections.unmodifiableSet(blocks.keySet()));
+        Map<String, Object> values = parseAll(name, content);
+        ConfigLayer layer = new ConfigLayer(name, Map.of(), Collections.unmodifiableSet(values.keySet()));
+        layer.parsed.putAll(values);
+        return layer;
+    }
+
+    /**
+     * Parses the content of a whole file
+     *
+     * @return The value of every top-level key, in the order of the file
+     */
+    private static Map<String, Object> parseAll(String name, String content) {
+        YamlConfiguration yaml = new YamlConfiguration();
+        try {
+            yaml.loadFromString(content);
+        } catch (InvalidConfigurationException e) {
+            throw new RuntimeException("Cannot load config: " + name, e);
+        }
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String key : yaml.getKeys(false)) {
+            Object value = ConfigSnapshot.copy(yaml.get(key));
+            values.put(key, value == null ? NULL : value);
+        }
+        return values;
+    }
+
+    /**
+     * Splits the content by its unindented keys. Quoted scalars, flow collections and block scalars are followed
+     * across the lines, as their lines may look like keys, and the content isn't split if one continues on an unindented line.
+     *
+     * @return The text of every section, or null if the content can't be split safely
+     */
+    @Nullable
+    private static Map<String, String> split(String content) {
+        if (ANCHOR.matcher(content).find()) return null;
+        Map<String, String> blocks = new LinkedHashMap<>();
+        Scanner scanner = new Scanner();
+        String key = null;
+        int start = 0;
+        int index = 0;
+        while (index < content.length()) {
+            int end = content.indexOf('\n', index);
+            if (end < 0) end = content.length();
+            String line = content.substring(index, end);
+            int indent = indent(line);
+            boolean unindented = indent == 0 && !line.isBlank() && line.charAt(0) != '#';
+            if (scanner.blockIndent >= 0 && (indent == line.length() || indent > scanner.blockIndent)) {
+                // Content of a block scalar
+                index = end + 1;
+                continue;
+            }
+            scanner.blockIndent = -1;
+            int from = 0;
+            if (unindented) {
+                // The value of a quoted scalar or a flow collection would continue with this line
+                if (scanner.isOpen()) return null;
+                int colon = colon(line);
+                String next = colon < 0 ? null : key(line.substring(0, colon));
+                if (next == null || blocks.containsKey(next) || next.equals(key)) return null;
+                if (key != null) blocks.put(key, content.substring(start, index));
+                key = next;
+                start = index;
+                from = colon + 1;
+            }
+            scanner.scan(line, from, indent);
+            index = end + 1;
+        }
+        if (scanner.isOpen()) return null;
+        if (key != null) blocks.put(key, content.substring(start));
+        return blocks;
+    }
+
+    private static int indent(String line) {
+        int indent = 0;
+        while (indent < line.length() && Character.isWhitespace(line.charAt(indent))) {
+            indent++;
+        }
+        return indent;
+    }
+
+    /**
+     * Gets the index of the colon which ends the key of a line, a colon followed by a space or the end of the line,
+     * as other colons are part of plain scalars such as "a:b"
+     */
+    private static int colon(String line) {
+        for (int i = line.indexOf(':'); i >= 0; i = line.indexOf(':', i + 1)) {
+            if (i + 1 == line.length() || Character.isWhitespace(line.charAt(i + 1))) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the key before the colon of an unindented line, or null if it isn't a plain key
+     */
+    @Nullable
+    private static String key(String text) {
+        String key = text.trim();
+        // Paths are split by dots, and other characters start documents, sequences, flow style, quoted keys or comments
+        if (key.isEmpty() || key.indexOf('.') >= 0 || key.contains(" #") || "-[{?%&*!|>'\"@`#".indexOf(key.charAt(0)) >= 0) return null;
+        return key;
+    }
+
+    /**
+     * @return The top-level keys of this layer, in the order of the file
+     */
+    @NotNull
+    Set<String> getKeys() {
+        return keys;
+    }
+
+    /**
+     * Gets the value of a top-level key, its section is parsed the first time it's read
+     *
+     * @param key The top-level key
+     * @return The value with sections as unmodifiable maps, or null if the key doesn't exist
+     */
+    @Nullable
+    Object get(@NotNull String key) {
+        if (!keys.contains(key)) return null;
+        Object value = parsed.computeIfAbsent(key, this::parse);
+        return value == NULL ? null : value;
+    }
+
+    private Object parse(String key) {
+        if (whole != null) return whole().getOrDefault(key, NULL);
+        YamlConfiguration yaml = new YamlConfiguration();
+        try {
+            yaml.loadFromString(blocks.get(key));
+        } catch (InvalidConfigurationException e) {
+            throw new RuntimeException("Cannot load section " + key + " of config: " + name, e);
+        }
+        // A line the scanner took for a key was part of a value, so the file is parsed as a whole
+        for (String parsedKey : yaml.getKeys(false)) {
+            if (!parsedKey.equals(key)) return whole().getOrDefault(key, NULL);
+        }
+        Object value = ConfigSnapshot.copy(yaml.get(key));
+        return value == null ? NULL : value;
+    }
+
+    private Map<String, Object> whole() {
+        Map<String, Object> values = whole;
+        if (values != null) return values;
+        synchronized (this) {
+            if (whole == null) whole = parseAll(name, String.join("", blocks.values()));
+            return whole;
+        }
+    }
+
+    /**
+     * @return Count of the sections which are parsed
+     */
+    int getParsedCount() {
+        return parsed.size();
+    }
+
+    /**
+     * Follows the quoted scalars, flow collections and block scalars of the lines of a file
+     */
+    private static final class Scanner {
+        // The quote of the quoted scalar which is open, or 0
+        private char quote;
+        // Depth of the flow collections which are open
+        private int depth;
+        // Indentation of the line which starts a block scalar, the lines indented further are its content, or -1
+        private int blockIndent = -1;
+
+        private boolean isOpen() {
+            return quote != 0 || depth > 0;
+        }
+
+        /**
+         * Scans the rest of a line from the given index, which is in a value
+         */
+        private void scan(String line, int from, int indent) {
+            // Whether the next character starts a token, where quotes and brackets open scalars and collections
+            boolean token = true;
+            for (int i = from; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quote == '"') {
+                    if (c == '\\') i++;
+                    else if (c == '"') quote = 0;
+                    token = false;
+                    continue;
+                }
+                if (quote == '\'') {
+                    if (c == '\'' && i + 1 < line.length() && line.charAt(i + 1) == '\'') i++;
+                    else if (c == '\'') quote = 0;
+                    token = false;
+                    continue;
+                }
+                if (Character.isWhitespace(c)) continue;
+                if (c == '#' && (i == 0 || Character.isWhitespace(line.charAt(i - 1)))) return;
+                if (token && (c == '"' || c == '\'')) {
+                    quote = c;
+                } else if ((token || depth > 0) && (c == '[' || c == '{')) {
+                    depth++;
+                } else if (depth > 0 && (c == ']' || c == '}')) {
+                    depth--;
+                } else if (token && depth == 0 && (c == '|' || c == '>')) {
+                    blockIndent = indent;
+                    return;
+                }
+                // Values start after a key, an entry of a sequence or a separator of a flow collection
+                boolean separated = i + 1 == line.length() || Character.isWhitespace(line.charAt(i + 1));
+                token = (c == ':' || c == '-' || c == '?') && separated || depth > 0 && (c == ',' || c == '[' || c == '{');
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package top.shjibi.plugineer.config;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * An immutable view of a {@link Config} at one point in time, which can be read from any thread without locking.
+ * Every value is stored under its full path, and sections are stored as unmodifiable maps of their values.
+ * Lists and maps are copied, while objects such as item stacks are shared with the configuration and must not be modified.
+ */
+public final class ConfigSnapshot {
+
+    private final Map<String, Object> values;
+    private final long version;
+
+    ConfigSnapshot(@NotNull Map<String, Object> values, long version) {
+        this.values = values;
+        this.version = version;
+    }
+
+    /**
+     * Copies the values of a section into a snapshot, the section must not be modified meanwhile
+     *
+     * @param section The section to copy
+     * @param version Version of the snapshot
+     * @return The snapshot
+     */
+    @NotNull
+    public static ConfigSnapshot of(@NotNull ConfigurationSection section, long version) {
+        // Kept in the order of the file
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String path : section.getKeys(true)) {
+            Object value = copy(section.get(path));
+            if (value != null) values.put(path, value);
+        }
+        return new ConfigSnapshot(Collections.unmodifiableMap(values), version);
+    }
+
+    /**
+     * Copies a value, sections and maps into unmodifiable maps and lists into unmodifiable lists
+     */
+    @Nullable
+    static Object copy(@Nullable Object value) {
+        if (value instanceof ConfigurationSection section) {
+            Map<String, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<String, Object> entry : section.getValues(false).entrySet()) {
+                map.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(map);
+        }
+        if (value instanceof Map<?, ?> source) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : source.entrySet()) {
+                map.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return Collections.unmodifiableMap(map);
+        }
+        if (value instanceof List<?> source) {
+            List<Object> list = new ArrayList<>(source.size());
+            for (Object element : source) {
+                list.add(copy(element));
+            }
+            return Collections.unmodifiableList(list);
+        }
+        return value;
+    }
+
+    /**
+     * Gets the value of a provided path
+     *
+     * @param path The provided path
+     * @return The value, or null if the provided path doesn't exist
+     */
+    @Nullable
+    public Object get(@NotNull String path) {
+        return values.get(path);
+    }
+
+    /**
+     * Gets the value of a provided path cast to the given class
+     *
+     * @param clazz The given class
+     * @param path  The provided path
+     * @return Value cast to the given class, or null if the value can't be cast to the given class
+     */
+    @Nullable
+    public <T> T get(@NotNull Class<T> clazz, @NotNull String path) {
+        Object value = values.get(path);
+        return clazz.isInstance(value) ? clazz.cast(value) : null;
+    }
+
+    /**
+     * @return Whether the provided path exists
+     */
+    public boolean contains(@NotNull String path) {
+        return values.containsKey(path);
+    }
+
+    /**
+     * @return The full paths of all the values and sections, unmodifiable
+     */
+    @NotNull
+    public Set<String> getPaths() {
+        return values.keySet();
+    }
+
+    /**
+     * @return All the values by their full paths, unmodifiable
+     */
+    @NotNull
+    public Map<String, Object> getValues() {
+        return values;
+    }
+
+    /**
+     * @return Version of this snapshot, which is increased every time the config is reloaded or modified
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigSnapshot{version: " + version + ", values: " + values + "}";
+    }
+}
@@ -11,6 +11,9 @@ import java.io.File;
  */
 public abstract class Configurable<T> {
 
+    // Only listed by IOMetrics#getAll once registered by the constructor of the subclass
+    private final IOMetrics metrics = new IOMetrics(this);
+
     /**
      * Saves data in the memory
      */
@@ -55,6 +58,29 @@ public abstract class Configurable<T> {
     @NotNull
     public abstract T getData();
 
+    /**
+     * @return The I/O metrics of this configurable
+     */
+    @NotNull
+    public IOMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Lists the metrics of this configurable in {@link IOMetrics#getAll()},
+     * called last by the constructors so a configurable which isn't fully constructed is never listed
+     */
+    protected final void registerMetrics() {
+        metrics.register();
+    }
+
+    /**
+     * @return Count of the entries which are modified in memory but not written yet
+     */
+    public int getPendingCount() {
+        return 0;
+    }
+
     /**
      * Creates the plugin folder and the folder which stores data
      *
@@ -80,7 +106,8 @@ public abstract class Configurable<T> {
 
     @Override
     public String toString() {
-        return getClass().getSimpleName() + "{name: " + getName() + ", data: " + getData() + "}";
+        // Not the data, which may be large or parsed on demand
+        return getClass().getSimpleName() + "{name: " + getName() + "}";
     }
 
 }
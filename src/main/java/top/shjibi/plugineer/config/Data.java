@@ -1,30 +1,93 @@
 package top.shjibi.plugineer.config;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import org.bukkit.Bukkit;
 import org.bukkit.plugin.Plugin;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import top.shjibi.plugineer.util.ThreadUtil;
+import top.shjibi.plugineer.util.UUIDMap;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.file.Files;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
+import java.util.logging.Level;
+import java.util.stream.Stream;
 
 /**
  * Data of a plugin
  */
 public class Data extends Configurable<Map<UUID, JsonObject>> {
 
+    // Entries with more patched operations than this are saved as a whole
+    private static final int MAX_PATCH_SIZE = 64;
+    private static final DateTimeFormatter SNAPSHOT_NAME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final long COMPACTION_INTERVAL = TimeUnit.HOURS.toMillis(1);
+    // Limits how long a compaction holds the main thread, the rest is archived by the next compaction shortly after
+    private static final int MAX_COMPACTION_SIZE = 4096;
+    // Count of the imported entries saved at once
+    private static final int TRANSFER_BATCH_SIZE = 1024;
+
     protected final Plugin plugin;
     protected final File folder;
     protected final File[] files;
     protected final Map<UUID, JsonObject> data;
     protected final String name;
+    protected final DataOptions options;
+    protected final Set<UUID> dirty;
+    protected final Map<UUID, DataPatch> patches;
+    protected final Map<UUID, JsonElement> pendingWrites;
+    protected final DataStorage storage;
+    protected final Map<String, DataIndex> indexes;
+    private final AtomicBoolean drainScheduled;
+    // Digests of the bytes last written, so the watcher can skip the changes made by this data
+    private final Map<UUID, byte[]> writtenDigests;
+    @Nullable
+    private final DataWatcher watcher;
+    @Nullable
+    private final DataArchive archive;
+    @Nullable
+    private final String[] expiryKeys;
+    // Time each entry was last accessed, only tracked if the entries expire
+    private final Map<UUID, Long> accessed;
+    // Expired entries which are being archived, they're still stored until they're archived
+    private final Map<UUID, JsonObject> archiving;
+    private volatile boolean accessSeeded;
+    @Nullable
+    private volatile ScheduledExecutorService compactionExecutor;
+    @Nullable
+    private CompletableFuture<Integer> compaction;
+    @Nullable
+    private volatile ScheduledExecutorService ioExecutor;
+    @Nullable
+    private volatile ExecutorService snapshotExecutor;
 
     /**
      * Creates a {@link Data} with the specified name
@@ -44,11 +107,64 @@ public class Data extends Configurable<Map<UUID, JsonObject>> {
      * @param folderPath Folder which stores all the data files.
      */
     public Data(@NotNull Plugin plugin, @NotNull String name, @NotNull String folderPath) {
+        this(plugin, name, folderPath, DataOptions.defaults());
+    }
+
+    /**
+     * Creates a {@link Data} with the specified name and options
+     *
+     * @param plugin     {@link Plugin} that the {@link Data} belongs to.
+     * @param name       Name of the data
+     * @param folderPath Folder which stores all the data files.
+     * @param options    Options of the data
+     */
+    public Data(@NotNull Plugin plugin, @NotNull String name, @NotNull String folderPath, @NotNull DataOptions options) {
         this.plugin = plugin;
         this.name = name;
+        this.options = options;
         this.folder = mkdirs(plugin, folderPath);
-        files = folder.listFiles((f -> f.isFile() && f.getName().endsWith(".json")));
-        this.data = load(folder);
+        this.dirty = ConcurrentHashMap.newKeySet();
+        this.patches = new ConcurrentHashMap<>();
+        this.pendingWrites = new ConcurrentHashMap<>();
+        this.drainScheduled = new AtomicBoolean();
+        this.indexes = new ConcurrentHashMap<>();
+        this.storage = options.getStorageFactory().create(folder);
+        if (options.isLazy()) {
+            this.files = new File[0];
+            this.data = new DataCache(options.getMaximumSize(), options.getMaximumWeight(), options.getWeigher(), this::onEvict);
+        } else {
+            this.files = storage.getFiles();
+            Map<UUID, JsonObject> loaded = load(folder);
+            this.data = options.isConcurrent() ? new ConcurrentHashMap<>(loaded) : loaded;
+        }
+        this.writtenDigests = new ConcurrentHashMap<>();
+        this.accessed = new ConcurrentHashMap<>();
+        this.archiving = new ConcurrentHashMap<>();
+        if (options.getExpiry() > 0) {
+            this.archive = new DataArchive(getArchiveFolder());
+            this.expiryKeys = options.getExpiryTimestampPath() == null ? null : JsonPaths.split(options.getExpiryTimestampPath());
+            accessed.putAll(archive.readAccessTimes());
+            // Entries of a lazy data are only known once the storage is read by the first compaction
+            this.accessSeeded = !options.isLazy() || !accessed.isEmpty();
+            long now = System.currentTimeMillis();
+            if (!options.isLazy()) data.keySet().forEach(uuid -> accessed.putIfAbsent(uuid, now));
+            long interval = Math.min(options.getExpiry(), COMPACTION_INTERVAL);
+            getCompactionExecutor().scheduleWithFixedDelay(this::compact, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.archive = null;
+            this.expiryKeys = null;
+        }
+        if (options.getWatchDebounce() <= 0) {
+            this.watcher = null;
+        } else if (storage instanceof FileDataStorage fileStorage) {
+            this.watcher = new DataWatcher(this, fileStorage, options.getWatchDebounce());
+        } else {
+            plugin.getLogger().warning("Cannot watch data " + name + " as " + storage + " doesn't store its entries in files");
+            this.watcher = null;
+        }
+        // Last, so the watcher never sees a partially constructed data
+        if (watcher != null) watcher.start();
+        registerMetrics();
     }
 
     /**
@@ -57,7 +173,12 @@ public class Data extends Configurable<Map<UUID, JsonObject>> {
      * @param uuid The specified key
      */
     public void removeData(@Nullable UUID uuid) {
-        data.remove(uuid);
+        if (uuid == null) return;
+        data.compute(uuid, (key, obj) -> {
+            if (obj != null || options.isLazy() || isArchived(key)) changed(key, null);
+            return null;
+        });
+        accessed.remove(uuid);
     }
 
     /**
@@ -69,7 +190,17 @@ public class Data extends Configurable<Map<UUID, JsonObject>> {
      */
     @Nullable
     public JsonObject putDataIfAbsent(@NotNull UUID uuid, @NotNull JsonObject obj) {
-        return data.putIfAbsent(uuid, obj);
+        JsonObject[] previous = new JsonObject[1];
+        touch(uuid);
+        computeLoaded(uuid, (key, old) -> {
+            if (old != null) {
+                previous[0] = old;
+                return old;
+            }
+            changed(key, obj);
+            return obj;
+        });
+        return previous[0];
     }
 
     /**
@@ -81,39 +212,1009 @@ public class Data extends Configurable<Map<UUID, JsonObject>> {
      */
     @Nullable
     public JsonObject putData(@NotNull UUID uuid, @NotNull JsonObject obj) {
-        return data.put(uuid, obj);
+        JsonObject[] previous = new JsonObject[1];
+        touch(uuid);
+        data.compute(uuid, (key, old) -> {
+            previous[0] = old;
+            changed(key, obj);
+            return obj;
+        });
+        return previous[0];
     }
 
     /**
-     * Gets the value associated with the provided {@link UUID}
+     * Atomically updates the value associated with the provided {@link UUID} and marks it dirty,
+     * other threads can't read a half updated value through this method or modify the same value meanwhile.
+     * If the data loads lazily and the value isn't in memory, it's loaded before the function is applied.
+     *
+     * @param uuid     The specified UUID
+     * @param function Function which receives the current value (or null if it doesn't exist),
+     *                 modifies it or creates a new one, and returns the new value (or null to remove it)
+     * @return The new value associated with the provided UUID
+     */
+    @Nullable
+    public JsonObject updateData(@NotNull UUID uuid, @NotNull UnaryOperator<JsonObject> function) {
+        touch(uuid);
+        return computeLoaded(uuid, (key, obj) -> {
+            JsonObject result = function.apply(obj);
+            changed(key, result);
+            return result;
+        });
+    }
+
+    /**
+     * Atomically applies a patch to the value associated with the provided {@link UUID},
+     * or to a new value if it doesn't exist.
+     * Unless the entry is also modified as a whole, only the patched operations are saved,
+     * which storages such as {@link JournalDataStorage} write without writing the whole value.
+     *
+     * @param uuid  The specified UUID
+     * @param patch The patch, changing it afterwards doesn't affect this entry
+     * @return The patched value
+     */
+    @NotNull
+    public JsonObject patchData(@NotNull UUID uuid, @NotNull DataPatch patch) {
+        touch(uuid);
+        return computeLoaded(uuid, (key, obj) -> {
+            JsonObject result = patch.apply(obj);
+            if (dirty.contains(key)) {
+                reindex(key, result);
+                return result;
+            }
+            DataPatch pending = patches.computeIfAbsent(key, k -> DataPatch.create()).append(patch);
+            if (pending.size() > MAX_PATCH_SIZE) changed(key, result);
+            else reindex(key, result);
+            return result;
+        });
+    }
+
+    /**
+     * Gets the value associated with the provided {@link UUID}, if the data loads lazily and the value isn't in memory,
+     * loads it from the file. An archived value is restored from the archive.
      *
      * @param uuid The specified UUID
      * @return The value associated with the provided UUID
      */
     @Nullable
     public JsonObject getData(@NotNull UUID uuid) {
-        return data.get(uuid);
+        JsonObject obj = data.get(uuid);
+        if (obj != null) touch(uuid);
+        if (!(data instanceof DataCache cache)) {
+            if (obj != null || !isArchived(uuid)) return obj;
+            touch(uuid);
+            return data.compute(uuid, (key, value) -> value != null ? value : restore(key));
+        }
+        cache.recordLookup(obj != null);
+        if (obj != null) return obj;
+        // Loaded without holding the lock of the cache, so the other entries can still be read meanwhile
+        obj = cache.compute(uuid, this::loadData, this::restoreIfArchived);
+        if (obj != null) touch(uuid);
+        return obj;
     }
 
     /**
-     * Saves the data associated with the provided {@link UUID} to uuid.json
+     * Loads the value associated with the provided {@link UUID} from the storage without putting it into memory,
+     * writes which are still queued are taken into account. Archived values aren't restored.
      *
      * @param uuid The specified UUID
+     * @return The loaded value, or null if it doesn't exist
      */
-    public void saveData(@NotNull UUID uuid) {
-        File file = new File(folder.getAbsolutePath() + "\\" + uuid + ".json");
+    @Nullable
+    protected JsonObject loadData(@NotNull UUID uuid) {
+        // Removed but not saved yet
+        if (dirty.contains(uuid)) return null;
+        JsonElement pending = pendingWrites.get(uuid);
+        // Evictions replace queued patches with the whole value, so a patch is only left here if it was queued by a removed entry
+        if (pending instanceof JsonArray patch) return DataPatch.fromJson(patch).apply(storage.read(uuid));
+        if (pending != null) return pending instanceof JsonObject obj ? obj.deepCopy() : null;
+        IOMetrics.Measurement measurement = getMetrics().start(IOMetrics.Operation.LOAD);
+        JsonObject obj = storage.read(uuid);
+        measurement.finish(1);
+        return obj;
+    }
+
+    /**
+     * Records the entry as accessed now if the entries expire
+     */
+    private void touch(UUID uuid) {
+        if (archive != null) accessed.put(uuid, System.currentTimeMillis());
+    }
+
+    /**
+     * Computes the value associated with the provided {@link UUID}, the function receives the value in memory,
+     * or else the loaded or restored value. If the data loads lazily, the value is loaded without holding the lock of the cache.
+     */
+    @Nullable
+    private JsonObject computeLoaded(UUID uuid, BiFunction<UUID, JsonObject, JsonObject> function) {
+        if (data instanceof DataCache cache) {
+            return cache.compute(uuid, this::loadData, (key, obj) -> function.apply(key, restoreIfArchived(key, obj)));
+        }
+        return data.compute(uuid, (key, obj) -> function.apply(key, obj == null ? restore(key) : obj));
+    }
+
+    /**
+     * Takes back a loaded value which is being archived, or restores a missing one from the archive unless it was removed,
+     * called while holding the lock of the entry
+     */
+    @Nullable
+    private JsonObject restoreIfArchived(UUID uuid, @Nullable JsonObject obj) {
+        if (dirty.contains(uuid) || (obj != null && !archiving.containsKey(uuid))) return obj;
+        JsonObject restored = restore(uuid);
+        return restored != null ? restored : obj;
+    }
+
+    /**
+     * Takes a value which is being archived back, or restores it from the archive, called while holding the lock of the entry.
+     * A restored value is marked dirty so it's written back to the storage, its archived copy is dropped once it's written.
+     */
+    @Nullable
+    private JsonObject restore(UUID uuid) {
+        // Still stored, as it's deleted only once it's archived
+        JsonObject claimed = archiving.remove(uuid);
+        if (claimed != null) {
+            reindex(uuid, claimed);
+            return claimed;
+        }
+        if (archive == null || !archive.contains(uuid)) return null;
+        IOMetrics.Measurement measurement = getMetrics().start(IOMetrics.Operation.LOAD);
+        JsonObject obj = archive.read(uuid);
+        measurement.finish(1);
+        if (obj != null) changed(uuid, obj);
+        return obj;
+    }
+
+    /**
+     * Reloads the value associated with the provided {@link UUID} from the storage, e.g. after its file was changed by another program.
+     * If the value was modified in memory but not saved yet, it's kept unless {@link DataOptions#withWatching(long, boolean)}
+     * allows changed files to overwrite it, values whose writes are queued are always kept.
+     * If the data loads lazily and the value isn't in memory, only the indexes are updated.
+     *
+     * @param uuid The specified UUID
+     * @return Whether the value in memory was replaced or removed
+     */
+    public boolean reloadData(@NotNull UUID uuid) {
+        return applyStored(uuid, readStored(uuid));
+    }
+
+    /**
+     * Reloads an entry whose file was changed, called by the {@link DataWatcher}.
+     * The file is read on the calling thread, and applied on the main thread unless the data can be accessed concurrently.
+     */
+    void onExternalChange(@NotNull UUID uuid) {
+        JsonObject stored = readStored(uuid);
+        byte[] written = writtenDigests.remove(uuid);
+        if (written != null && MessageDigest.isEqual(written, digest(stored))) return;
+        if (options.isConcurrent() || options.isLazy()) applyStored(uuid, stored);
+        else Bukkit.getScheduler().runTask(plugin, () -> applyStored(uuid, stored));
+    }
+
+    /**
+     * Digests the bytes a value is stored as, the storage writes the same json as {@link DataJson#toBytes(JsonElement)}.
+     * The digest is compared with the value read back, as the parsed numbers aren't equal to the numbers written.
+     */
+    private static byte[] digest(@Nullable JsonObject obj) {
+        // Deleted entries have an empty digest
+        if (obj == null) return new byte[0];
         try {
-            Files.writeString(file.toPath(), data.get(uuid).toString());
-        } catch (IOException e) {
-            throw new RuntimeException("Cannot save file: " + file.getName(), e);
+            return MessageDigest.getInstance("SHA-256").digest(DataJson.toBytes(obj));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Nullable
+    private JsonObject readStored(UUID uuid) {
+        IOMetrics.Measurement measurement = getMetrics().start(IOMetrics.Operation.LOAD);
+        JsonObject stored = storage.read(uuid);
+        measurement.finish(1);
+        return stored;
+    }
+
+    private boolean applyStored(UUID uuid, @Nullable JsonObject stored) {
+        boolean[] replaced = new boolean[1];
+        data.compute(uuid, (key, obj) -> {
+            // The queued value is about to replace the file anyway
+            if (pendingWrites.containsKey(key)) return obj;
+            if (isDirty(key)) {
+                if (!options.isOverwriteDirty()) {
+                    plugin.getLogger().warning("Kept entry " + key + " of " + name + " which was modified in memory, its stored value was changed by another program");
+                    return obj;
+                }
+                dirty.remove(key);
+                patches.remove(key);
+            }
+            if (obj == null && options.isLazy()) {
+                reindex(key, stored);
+                return null;
+            }
+            if (Objects.equals(obj, stored)) return obj;
+            reindex(key, stored);
+            replaced[0] = true;
+            return stored;
+        });
+        return replaced[0];
+    }
+
+    /**
+     * Removes the value associated with the provided {@link UUID} from memory without deleting it,
+     * if it was modified, it's queued to be written on the background thread.
+     * Pinned values are not unloaded.
+     *
+     * @param uuid The specified UUID
+     * @throws IllegalStateException If the data doesn't load lazily
+     */
+    public void unload(@NotNull UUID uuid) {
+        if (!(data instanceof DataCache cache)) throw new IllegalStateException("Data " + name + " doesn't load lazily");
+        cache.compute(uuid, (key, obj) -> {
+            if (obj == null || cache.isPinned(key)) return obj;
+            onEvict(key, obj);
+            return null;
+        });
+        scheduleDrain();
+    }
+
+    /**
+     * Keeps the value associated with the provided {@link UUID} in memory until it's unpinned, used by {@link DataLifecycle}
+     */
+    void pin(@NotNull UUID uuid) {
+        if (data instanceof DataCache cache) cache.pin(uuid);
+    }
+
+    /**
+     * Allows the value associated with the provided {@link UUID} to be evicted again
+     */
+    void unpin(@NotNull UUID uuid) {
+        if (data instanceof DataCache cache) cache.unpin(uuid);
+    }
+
+    /**
+     * Marks the data associated with the provided {@link UUID} as modified,
+     * call this after editing the {@link JsonObject} returned by {@link #getData(UUID)} in place.
+     * The indexes of this data are updated with the edited value.
+     * If the data loads lazily, entries which are no longer in memory are ignored, use {@link #updateData} instead.
+     *
+     * @param uuid The specified UUID
+     */
+    public void markDirty(@NotNull UUID uuid) {
+        if (!options.isLazy() && indexes.isEmpty()) {
+            dirty.add(uuid);
+            return;
         }
+        data.computeIfPresent(uuid, (key, obj) -> {
+            changed(key, obj);
+            return obj;
+        });
     }
 
+    /**
+     * @return Copy of the keys in memory, the cache of a lazy data is copied while holding its lock
+     */
+    private List<UUID> keys() {
+        return data instanceof DataCache cache ? cache.keySnapshot() : new ArrayList<>(data.keySet());
+    }
+
+    /**
+     * Marks the entry dirty and updates the indexes, called while holding the lock of the entry
+     */
+    private void changed(UUID uuid, @Nullable JsonObject obj) {
+        // A newer value replaces the value being archived, whose archived copy is dropped by the compaction
+        archiving.remove(uuid);
+        dirty.add(uuid);
+        patches.remove(uuid);
+        reindex(uuid, obj);
+    }
+
+    private void reindex(UUID uuid, @Nullable JsonObject obj) {
+        for (DataIndex index : indexes.values()) {
+            index.update(uuid, obj);
+        }
+    }
+
+    /**
+     * Creates an index over a numeric field of the entries, or gets the existing index with the same name.
+     * All the entries are indexed when it's created, which reads the whole storage if the data loads lazily,
+     * so indexes should be created when the plugin is enabled.
+     *
+     * @param name Name of the index
+     * @param path Dotted path of the field, such as "stats.kills"
+     * @return The index
+     */
+    @NotNull
+    public DataIndex createIndex(@NotNull String name, @NotNull String path) {
+        DataIndex index = new DataIndex(name, path);
+        DataIndex existing = indexes.putIfAbsent(name, index);
+        if (existing != null) {
+            if (!existing.getPath().equals(path))
+                throw new IllegalArgumentException("Index " + name + " already exists on " + existing.getPath());
+            return existing;
+        }
+        for (UUID uuid : keys()) {
+            data.computeIfPresent(uuid, (key, obj) -> {
+                index.update(key, obj);
+                return obj;
+            });
+        }
+        if (options.isLazy()) {
+            // Values in memory, queued or removed are newer than the stored ones
+            for (Map.Entry<UUID, JsonElement> entry : pendingWrites.entrySet()) {
+                index.updateIfAbsent(entry.getKey(), entry.getValue() instanceof JsonObject obj ? obj : null);
+            }
+            storage.loadAll((uuid, obj) -> {
+                if (!data.containsKey(uuid) && !dirty.contains(uuid) && !pendingWrites.containsKey(uuid))
+                    index.updateIfAbsent(uuid, obj);
+            }, options.getLoadParallelism());
+        }
+        return index;
+    }
+
+    /**
+     * Gets an index created by {@link #createIndex(String, String)}
+     *
+     * @param name Name of the index
+     * @return The index, or null if it doesn't exist
+     */
+    @Nullable
+    public DataIndex getIndex(@NotNull String name) {
+        return indexes.get(name);
+    }
+
+    /**
+     * Removes an index, it's no longer updated
+     *
+     * @param name Name of the index
+     */
+    public void dropIndex(@NotNull String name) {
+        indexes.remove(name);
+    }
+
+    /**
+     * Checks whether the data associated with the provided {@link UUID} was modified since it was last saved
+     *
+     * @param uuid The specified UUID
+     * @return Whether the data is dirty or patched
+     */
+    public boolean isDirty(@NotNull UUID uuid) {
+        return dirty.contains(uuid) || patches.containsKey(uuid);
+    }
+
+    /**
+     * @return Count of the entries which were modified or patched since they were last saved
+     */
+    public int getDirtyCount() {
+        return dirty.size() + patches.size();
+    }
+
+    /**
+     * @return Count of the entries which were modified or patched, and of the writes which are queued but not written yet
+     */
+    @Override
+    public int getPendingCount() {
+        return getDirtyCount() + pendingWrites.size();
+    }
+
+    /**
+     * Saves the data associated with the provided {@link UUID} to the storage,
+     * or deletes it from the storage if the data was removed.
+     * If the data writes behind, the data is copied and written on the background thread.
+     *
+     * @param uuid The specified UUID
+     */
+    public void saveData(@NotNull UUID uuid) {
+        saveAll(Collections.singleton(uuid));
+    }
+
+    /**
+     * Saves only the entries which were modified since they were last saved
+     */
+    public void saveDirty() {
+        List<UUID> uuids = new ArrayList<>(dirty);
+        uuids.addAll(patches.keySet());
+        saveAll(uuids);
+    }
+
+    /**
+     * Saves all the data, or only the dirty entries if the data writes behind.
+     */
     @Override
     public void save() {
-        for (UUID uuid : data.keySet()) {
-            saveData(uuid);
+        if (options.isWriteBehind()) {
+            saveDirty();
+            return;
+        }
+        Set<UUID> uuids = new HashSet<>(keys());
+        uuids.addAll(dirty);
+        uuids.addAll(patches.keySet());
+        saveAll(uuids);
+    }
+
+    /**
+     * Saves the data associated with the provided {@link UUID}s as one batch
+     *
+     * @param uuids The specified UUIDs
+     */
+    protected void saveAll(@NotNull Collection<UUID> uuids) {
+        if (!options.isWriteBehind() && !options.isLazy() && !options.isConcurrent()) {
+            Map<UUID, JsonElement> batch = new HashMap<>();
+            for (UUID uuid : uuids) {
+                collect(uuid, batch);
+            }
+            write(batch);
+            return;
         }
+        // Values are queued while holding the lock of their entry and written by the single background thread,
+        // so writes of different threads and of evicted entries reach the storage in the order their values were taken
+        for (UUID uuid : uuids) {
+            collect(uuid, pendingWrites);
+        }
+        scheduleDrain();
+        if (!options.isWriteBehind()) flush();
+    }
+
+    /**
+     * Clears the dirty flag of the value associated with the provided {@link UUID} and puts the value to save into the batch,
+     * {@link JsonNull} if it was removed, or only its patches as a {@link JsonArray} if it was only patched.
+     * If the value can be modified by another thread while it's written, a copy is made
+     * while holding the lock of the entry, so no update is half copied or lost.
+     * If the data loads lazily, entries which are neither in memory nor dirty are skipped.
+     *
+     * @param uuid  The specified UUID
+     * @param batch The batch of values to write
+     */
+    protected void collect(@NotNull UUID uuid, @NotNull Map<UUID, JsonElement> batch) {
+        if (!options.isLazy() && !options.isConcurrent()) {
+            collect(uuid, data.get(uuid), batch);
+            return;
+        }
+        data.compute(uuid, (key, obj) -> {
+            collect(key, obj, batch);
+            return obj;
+        });
+    }
+
+    private void collect(UUID uuid, @Nullable JsonObject obj, Map<UUID, JsonElement> batch) {
+        boolean wasDirty = dirty.remove(uuid);
+        DataPatch patch = patches.remove(uuid);
+        if (obj != null && patch != null && !wasDirty) {
+            batch.merge(uuid, patch.toJson(), Data::coalesce);
+        } else if (obj != null) {
+            batch.put(uuid, options.isWriteBehind() || options.isConcurrent() ? obj.deepCopy() : obj);
+        } else if (wasDirty || (!options.isLazy() && !isArchived(uuid))) {
+            batch.put(uuid, JsonNull.INSTANCE);
+        }
+    }
+
+    /**
+     * Merges a patch into a write which is already queued, queued values are never modified as they may be being written
+     */
+    private static JsonElement coalesce(JsonElement queued, JsonElement patch) {
+        if (queued instanceof JsonArray operations) {
+            JsonArray merged = new JsonArray(operations.size() + ((JsonArray) patch).size());
+            merged.addAll(operations);
+            merged.addAll((JsonArray) patch);
+            return merged;
+        }
+        return DataPatch.fromJson((JsonArray) patch).apply(queued instanceof JsonObject obj ? obj.deepCopy() : null);
+    }
+
+    /**
+     * Blocks until all the writes queued on the background thread are finished,
+     * writes waiting for the end of the flush window are written right away
+     */
+    public void flush() {
+        ScheduledExecutorService executor = ioExecutor;
+        if (executor == null) return;
+        try {
+            executor.submit(this::drainPendingWrites).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while flushing data: " + name, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Cannot flush data: " + name, e);
+        }
+    }
+
+    /**
+     * Creates a point-in-time snapshot of this data on a background thread, writes continue meanwhile.
+     * The dirty entries are saved first, then the snapshot holds the stored files as they were when it started,
+     * files which are unchanged since the previous snapshot are shared with it through hard links.
+     * Snapshots are created in the folder returned by {@link #getSnapshotFolder()}, and the oldest ones are deleted
+     * according to {@link DataOptions#withSnapshotRetention(int)}.
+     *
+     * @return Future of the created snapshot, which fails with an {@link UnsupportedOperationException}
+     * if the storage can't create snapshots
+     */
+    @NotNull
+    public CompletableFuture<DataSnapshot> snapshot() {
+        saveDirty();
+        return CompletableFuture.supplyAsync(this::createSnapshot, getSnapshotExecutor());
+    }
+
+    private DataSnapshot createSnapshot() {
+        flush();
+        File snapshots = getSnapshotFolder();
+        File[] partial = snapshots.listFiles(f -> f.isDirectory() && f.getName().endsWith(PARTIAL_SUFFIX));
+        if (partial != null) {
+            for (File file : partial) {
+                delete(file);
+            }
+        }
+        List<File> existing = getSnapshots();
+        File previous = existing.isEmpty() ? null : existing.get(existing.size() - 1);
+        String snapshotName = SNAPSHOT_NAME.format(LocalDateTime.now());
+        File target = new File(snapshots, snapshotName);
+        File temporary = new File(snapshots, snapshotName + PARTIAL_SUFFIX);
+        // Created under another name first, so a snapshot interrupted by a crash is never taken for a complete one
+        DataSnapshot created = storage.snapshot(temporary, previous);
+        try {
+            // A storage without files doesn't create the folder
+            Files.createDirectories(temporary.toPath());
+            Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot save snapshot: " + target.getName(), e);
+        }
+        DataSnapshot snapshot = new DataSnapshot(target, created.files(), created.changedFiles(), created.copiedFiles(),
+                created.copiedBytes(), created.durationNanos());
+        plugin.getLogger().info("Created snapshot " + snapshot.name() + " of '" + name + "' with " + snapshot.files()
+                + " files (" + snapshot.changedFiles() + " changed, " + snapshot.copiedFiles() + " copied) in "
+                + snapshot.durationNanos() / 1_000_000 + " ms");
+        if (options.getSnapshotRetention() > 0) pruneSnapshots(options.getSnapshotRetention());
+        return snapshot;
+    }
+
+    /**
+     * Gets the complete snapshots of this data
+     *
+     * @return The folders of the snapshots, from the oldest to the newest
+     */
+    @NotNull
+    public List<File> getSnapshots() {
+        File[] snapshots = getSnapshotFolder().listFiles(f -> f.isDirectory() && !f.getName().endsWith(PARTIAL_SUFFIX));
+        if (snapshots == null) return new ArrayList<>();
+        List<File> result = new ArrayList<>(List.of(snapshots));
+        result.sort(Comparator.comparing(File::getName));
+        return result;
+    }
+
+    /**
+     * Deletes the oldest snapshots, files shared with the other snapshots are kept for them
+     *
+     * @param keep Count of the newest snapshots to keep
+     * @return Count of the deleted snapshots
+     */
+    public int pruneSnapshots(int keep) {
+        List<File> snapshots = getSnapshots();
+        int count = Math.max(0, snapshots.size() - keep);
+        for (int i = 0; i < count; i++) {
+            delete(snapshots.get(i));
+        }
+        return count;
+    }
+
+    /**
+     * @return The folder which holds the snapshots, next to the folder of this data so they share the volume
+     */
+    @NotNull
+    public File getSnapshotFolder() {
+        return new File(folder.getParentFile(), folder.getName() + "-snapshots");
+    }
+
+    /**
+     * Exports all the entries of this data, archived ones included, to a single file as newline-delimited json,
+     * compressed with gzip if the name of the file ends with ".gz".
+     * The dirty entries are saved first, then the entries are streamed from the storage to the file one at a time,
+     * so the data doesn't have to fit in memory. The file is written under another name first and replaced at the end.
+     *
+     * @param file The file to export to
+     * @return Count of the exported entries
+     */
+    public long exportTo(@NotNull File file) {
+        long start = System.nanoTime();
+        saveDirty();
+        flush();
+        File temporary = new File(file.getAbsoluteFile().getParentFile(), file.getName() + PARTIAL_SUFFIX);
+        long[] count = new long[1];
+        try {
+            Files.createDirectories(temporary.toPath().getParent());
+            try (Writer writer = DataTransfer.newWriter(temporary, DataTransfer.isCompressed(file))) {
+                BiConsumer<UUID, JsonObject> consumer = (uuid, obj) -> {
+                    try {
+                        DataTransfer.write(writer, uuid, obj);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    count[0]++;
+                };
+                storage.loadAll(consumer, options.getLoadParallelism());
+                // Entries being archived are still in the storage
+                if (archive != null) archive.forEach((uuid, obj) -> {
+                    if (!archiving.containsKey(uuid)) consumer.accept(uuid, obj);
+                });
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | UncheckedIOException e) {
+            try {
+                Files.deleteIfExists(temporary.toPath());
+            } catch (IOException ignored) {
+            }
+            throw new RuntimeException("Cannot export data " + name + " to " + file.getName(), e);
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        plugin.getLogger().info("Exported " + count[0] + " entries of '" + name + "' to " + file.getName()
+                + " (" + file.length() + " bytes) in " + millis + " ms");
+        return count[0];
+    }
+
+    /**
+     * Imports the entries of a file written by {@link #exportTo(File)}, replacing the entries with the same {@link UUID}s,
+     * entries which aren't in the file are kept. The file is read and saved in batches, so it doesn't have to fit in memory.
+     * If the data loads lazily, imported entries which aren't in memory are written without being loaded into the cache.
+     * Call this on the main thread unless the data loads lazily or can be accessed concurrently.
+     *
+     * @param file The file to import from
+     * @return Count of the imported entries
+     * @throws IllegalArgumentException If a line of the file isn't an entry, the entries before it are imported
+     */
+    public long importFrom(@NotNull File file) {
+        long start = System.nanoTime();
+        long count = 0;
+        long lines = 0;
+        List<UUID> batch = new ArrayList<>(TRANSFER_BATCH_SIZE);
+        try (BufferedReader reader = DataTransfer.newReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                if (line.isBlank()) continue;
+                Map.Entry<UUID, JsonObject> entry = DataTransfer.parse(line, lines);
+                importEntry(entry.getKey(), entry.getValue());
+                batch.add(entry.getKey());
+                count++;
+                if (batch.size() >= TRANSFER_BATCH_SIZE) {
+                    saveImported(batch);
+                    batch.clear();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            RuntimeException failure = e instanceof RuntimeException runtime ? runtime
+                    : new RuntimeException("Cannot import data " + name + " from " + file.getName(), e);
+            // The entries before the failure are still saved, without hiding the failure if that fails too
+            try {
+                saveImported(batch);
+            } catch (RuntimeException suppressed) {
+                failure.addSuppressed(suppressed);
+            }
+            throw failure;
+        }
+        saveImported(batch);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        plugin.getLogger().info("Imported " + count + " entries of '" + name + "' from " + file.getName() + " in " + millis + " ms");
+        return count;
+    }
+
+    private void importEntry(UUID uuid, JsonObject obj) {
+        touch(uuid);
+        if (!options.isLazy()) {
+            putData(uuid, obj);
+            return;
+        }
+        data.compute(uuid, (key, old) -> {
+            if (old != null) {
+                changed(key, obj);
+                return obj;
+            }
+            // Queued as if it was evicted right away, so the import doesn't flood the cache
+            archiving.remove(key);
+            dirty.remove(key);
+            patches.remove(key);
+            reindex(key, obj);
+            pendingWrites.put(key, obj);
+            return null;
+        });
+    }
+
+    private void saveImported(List<UUID> uuids) {
+        if (uuids.isEmpty()) return;
+        saveAll(uuids);
+        scheduleDrain();
+        // Bounds the queued writes
+        flush();
+    }
+
+    /**
+     * Moves the entries which expired to the archive on a background thread, they're restored when they're accessed again.
+     * An entry expires once it wasn't accessed for the time given to {@link DataOptions#withExpiry(long, String)},
+     * and its timestamp field, if any, is older than that. Modified entries never expire before they're saved.
+     * Compactions run periodically, this method starts one now.
+     *
+     * @return Future of the count of the archived entries, which is the running compaction if one is running
+     * @throws IllegalStateException If the entries of this data don't expire
+     */
+    @NotNull
+    public synchronized CompletableFuture<Integer> compact() {
+        if (archive == null) throw new IllegalStateException("Data " + name + " doesn't expire its entries");
+        CompletableFuture<Integer> running = compaction;
+        if (running != null && !running.isDone()) return running;
+        ScheduledExecutorService background = getCompactionExecutor();
+        // Entries of a data which can only be accessed on the main thread are selected and released on it
+        Executor owner = options.isLazy() || options.isConcurrent() ? background : task -> Bukkit.getScheduler().runTask(plugin, task);
+        long start = System.nanoTime();
+        CompletableFuture<Integer> future = CompletableFuture.runAsync(this::seedAccessTimes, background)
+                .thenApplyAsync(ignored -> claimExpired(), owner)
+                .thenApplyAsync(claimed -> {
+                    try {
+                        archive.add(claimed);
+                    } catch (RuntimeException e) {
+                        plugin.getLogger().log(Level.SEVERE, "Cannot archive " + claimed.size() + " entries of " + name, e);
+                        return new Claims(claimed, false);
+                    }
+                    return new Claims(claimed, true);
+                }, background)
+                .thenApplyAsync(this::release, owner)
+                .thenApplyAsync(count -> {
+                    archive.writeAccessTimes(accessed);
+                    long millis = (System.nanoTime() - start) / 1_000_000;
+                    if (count > 0) plugin.getLogger().info("Archived " + count + " expired entries of '" + name + "' in " + millis
+                            + " ms, the archive holds " + archive.size() + " entries in " + archive.getBundleCount() + " bundles");
+                    if (count >= MAX_COMPACTION_SIZE) background.schedule(this::compact, 1, TimeUnit.SECONDS);
+                    return count;
+                }, background);
+        compaction = future;
+        return future;
+    }
+
+    /**
+     * Records every stored entry as accessed now, if the entries of a lazy data weren't tracked yet
+     */
+    private void seedAccessTimes() {
+        if (accessSeeded) return;
+        long now = System.currentTimeMillis();
+        storage.loadAll((uuid, obj) -> accessed.putIfAbsent(uuid, now), options.getLoadParallelism());
+        accessSeeded = true;
+    }
+
+    /**
+     * Takes the expired entries out of memory and the indexes, they're read from {@link #archiving} until they're archived
+     */
+    private Map<UUID, JsonObject> claimExpired() {
+        long now = System.currentTimeMillis();
+        long expiry = options.getExpiry();
+        Map<UUID, JsonObject> claimed = new HashMap<>();
+        for (Map.Entry<UUID, Long> entry : new ArrayList<>(accessed.entrySet())) {
+            if (claimed.size() >= MAX_COMPACTION_SIZE) break;
+            if (now - entry.getValue() < expiry) continue;
+            data.compute(entry.getKey(), (key, obj) -> {
+                if (isDirty(key) || pendingWrites.containsKey(key) || archiving.containsKey(key)) return obj;
+                // Entries kept in memory by a lazy data were used recently enough
+                if (obj != null && options.isLazy()) return obj;
+                JsonObject value = obj != null ? obj : options.isLazy() ? storage.read(key) : null;
+                if (value == null) {
+                    // Removed meanwhile
+                    accessed.remove(key);
+                    return null;
+                }
+                if (!isExpired(value, now)) return obj;
+                reindex(key, null);
+                archiving.put(key, value);
+                claimed.put(key, value);
+                return null;
+            });
+        }
+        return claimed;
+    }
+
+    private boolean isExpired(JsonObject obj, long now) {
+        if (expiryKeys == null) return true;
+        JsonElement timestamp = JsonPaths.get(obj, expiryKeys);
+        if (!(timestamp instanceof JsonPrimitive primitive) || !primitive.isNumber()) return true;
+        return now - primitive.getAsLong() >= options.getExpiry();
+    }
+
+    /**
+     * Deletes the archived entries from the storage, unless they were taken back meanwhile.
+     * If they couldn't be archived, they're put back into memory.
+     */
+    private int release(Claims claims) {
+        Map<UUID, JsonElement> deletes = new HashMap<>();
+        List<UUID> taken = new ArrayList<>();
+        // Deleted on the main thread in one batch, as the other writes of such data are made on it as well
+        boolean batched = !options.isLazy() && !options.isConcurrent();
+        for (Map.Entry<UUID, JsonObject> entry : claims.entries().entrySet()) {
+            data.compute(entry.getKey(), (key, obj) -> {
+                if (obj != null || !archiving.remove(key, entry.getValue())) {
+                    taken.add(key);
+                    return obj;
+                }
+                if (!claims.archived()) {
+                    reindex(key, entry.getValue());
+                    return options.isLazy() ? null : entry.getValue();
+                }
+                accessed.remove(key);
+                if (watcher != null) writtenDigests.put(key, digest(null));
+                if (batched) deletes.put(key, JsonNull.INSTANCE);
+                else storage.write(key, null);
+                return null;
+            });
+        }
+        if (!deletes.isEmpty()) storage.writeAll(deletes);
+        if (!claims.archived()) return 0;
+        // Taken back before they were deleted, so they're still stored
+        archive.remove(taken);
+        return claims.entries().size() - taken.size();
+    }
+
+    /**
+     * Checks whether the value associated with the provided {@link UUID} was moved to the archive,
+     * it's restored when it's accessed again
+     *
+     * @param uuid The specified UUID
+     * @return Whether the value is archived or being archived
+     */
+    public boolean isArchived(@NotNull UUID uuid) {
+        return archiving.containsKey(uuid) || (archive != null && archive.contains(uuid));
+    }
+
+    /**
+     * @return Count of the archived entries, or 0 if the entries of this data don't expire
+     */
+    public int getArchivedCount() {
+        return archive == null ? 0 : archive.size();
+    }
+
+    /**
+     * @return The folder which holds the archive of the expired entries, next to the folder of this data
+     */
+    @NotNull
+    public File getArchiveFolder() {
+        return new File(folder.getParentFile(), folder.getName() + "-archive");
+    }
+
+    private static void delete(File folder) {
+        try (Stream<Path> paths = Files.walk(folder.toPath())) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot delete snapshot: " + folder.getName(), e);
+        }
+    }
+
+    /**
+     * Stops watching the files, saves the dirty entries, waits for all the queued writes, stops the background thread and closes the storage.
+     * A snapshot being created is finished first. Should be called when the plugin is disabled.
+     */
+    public void close() {
+        if (watcher != null) watcher.close();
+        ScheduledExecutorService compactions = compactionExecutor;
+        if (compactions != null) {
+            // A compaction which isn't finished leaves its entries stored, and is started again by the next compaction
+            compactions.shutdownNow();
+            try {
+                compactions.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            compactionExecutor = null;
+        }
+        ExecutorService snapshots = snapshotExecutor;
+        if (snapshots != null) {
+            snapshots.shutdown();
+            try {
+                snapshots.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            snapshotExecutor = null;
+        }
+        saveDirty();
+        flush();
+        if (ioExecutor != null) {
+            ioExecutor.shutdown();
+            ioExecutor = null;
+        }
+        if (archive != null) {
+            archive.writeAccessTimes(accessed);
+            archive.close();
+        }
+        storage.close();
+    }
+
+    /**
+     * Queues a write on the background thread, writes to the same {@link UUID} which are not started yet are coalesced,
+     * and all the queued writes are passed to the storage as one batch.
+     *
+     * @param uuid     The specified UUID
+     * @param snapshot Copy of the data to write, or {@link JsonNull} to delete it
+     */
+    protected void enqueueWrite(@NotNull UUID uuid, @NotNull JsonElement snapshot) {
+        pendingWrites.put(uuid, snapshot);
+        scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (!pendingWrites.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+            long window = options.getFlushWindow();
+            if (window > 0) getExecutor().schedule(this::drainPendingWrites, window, TimeUnit.MILLISECONDS);
+            else getExecutor().execute(this::drainPendingWrites);
+        }
+    }
+
+    private void drainPendingWrites() {
+        drainScheduled.set(false);
+        if (pendingWrites.isEmpty()) return;
+        Map<UUID, JsonElement> batch = new HashMap<>(pendingWrites);
+        try {
+            write(batch);
+        } catch (RuntimeException e) {
+            plugin.getLogger().log(Level.SEVERE, "Cannot write " + batch.size() + " entries of " + name, e);
+        }
+        // Keeps the entries visible to loadData until they're written, entries replaced meanwhile are left for the next drain
+        for (Map.Entry<UUID, JsonElement> entry : batch.entrySet()) {
+            pendingWrites.computeIfPresent(entry.getKey(), (uuid, element) -> element == entry.getValue() ? null : element);
+        }
+    }
+
+    /**
+     * Queues the evicted entry if it's dirty or patched, called while holding the lock of the cache,
+     * so the entry stays visible to {@link #loadData(UUID)} until it's written.
+     */
+    private void onEvict(UUID uuid, JsonObject obj) {
+        boolean patched = patches.remove(uuid) != null;
+        if (dirty.remove(uuid) || patched) {
+            enqueueWrite(uuid, obj);
+        } else if (pendingWrites.computeIfPresent(uuid, (key, queued) -> queued instanceof JsonArray ? obj : queued) != null) {
+            // A queued patch can't be read without reading the storage, which may or may not contain it yet
+            scheduleDrain();
+        }
+    }
+
+    private void write(Map<UUID, JsonElement> batch) {
+        if (batch.isEmpty()) return;
+        if (watcher != null) {
+            for (Map.Entry<UUID, JsonElement> entry : batch.entrySet()) {
+                // The result of a patch isn't known here, so its change is compared with the value in memory instead
+                if (entry.getValue() instanceof JsonArray) writtenDigests.remove(entry.getKey());
+                else writtenDigests.put(entry.getKey(), digest(entry.getValue() instanceof JsonObject obj ? obj : null));
+            }
+        }
+        // A removed entry is removed from the archive before it's deleted, so it never comes back from the archive,
+        // and a restored one is removed once it's written back
+        if (archive != null) archive.remove(archivedKeys(batch, true));
+        IOMetrics.Measurement measurement = getMetrics().start(IOMetrics.Operation.SAVE);
+        if (options.isGroupCommit()) storage.commit(batch);
+        else storage.writeAll(batch);
+        measurement.finish(batch.size());
+        if (archive != null) archive.remove(archivedKeys(batch, false));
+    }
+
+    private List<UUID> archivedKeys(Map<UUID, JsonElement> batch, boolean removed) {
+        List<UUID> keys = new ArrayList<>();
+        for (Map.Entry<UUID, JsonElement> entry : batch.entrySet()) {
+            if ((entry.getValue() instanceof JsonNull) == removed && archive.contains(entry.getKey())) keys.add(entry.getKey());
+        }
+        return keys;
+    }
+
+    @NotNull
+    private synchronized ScheduledExecutorService getExecutor() {
+        if (ioExecutor == null) {
+            ioExecutor = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newThreadFactory("Plugineer-Data-" + name));
+        }
+        return ioExecutor;
+    }
+
+    @NotNull
+    private synchronized ScheduledExecutorService getCompactionExecutor() {
+        if (compactionExecutor == null) {
+            compactionExecutor = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newThreadFactory("Plugineer-Compaction-" + name));
+        }
+        return compactionExecutor;
+    }
+
+    @NotNull
+    private synchronized ExecutorService getSnapshotExecutor() {
+        if (snapshotExecutor == null) {
+            snapshotExecutor = Executors.newSingleThreadExecutor(ThreadUtil.newThreadFactory("Plugineer-Snapshot-" + name));
+        }
+        return snapshotExecutor;
     }
 
     @Override
@@ -128,6 +1229,30 @@ public class Data extends Configurable<Map<UUID, JsonObject>> {
         return data;
     }
 
+    /**
+     * @return Statistics of the cache, or null if the data doesn't load lazily
+     */
+    @Nullable
+    public CacheStats getCacheStats() {
+        return data instanceof DataCache cache ? cache.stats() : null;
+    }
+
+    /**
+     * @return The storage which persists this data
+     */
+    @NotNull
+    public DataStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * @return Options of this data
+     */
+    @NotNull
+    public DataOptions getOptions() {
+        return options;
+    }
+
     @Override
     @NotNull
     public String getName() {
@@ -143,26 +1268,26 @@ public class Data extends Configurable<Map<UUID, JsonObject>> {
     @Override
     @NotNull
     public File[] getFiles() {
-        return files;
+        return options.isLazy() ? storage.getFiles() : files;
     }
 
     @Override
     @NotNull
     protected Map<UUID, JsonObject> load(@NotNull File folder) {
-        Map<UUID, JsonObject> map = new HashMap<>();
-        if (files.length == 0) return map;
-        for (File file : files) {
-            try {
-                String name = file.getName();
-                UUID uuid = UUID.fromString(name.substring(0, name.length() - 5));
-                String value = Files.readString(file.toPath(), StandardCharsets.UTF_8);
-                JsonElement element = JsonParser.parseString(value);
-                if (element instanceof JsonObject obj) map.put(uuid, obj);
-            } catch (IOException e) {
-                throw new RuntimeException("Cannot load file: " + file.getName(), e);
-            }
-        }
+        long start = System.nanoTime();
+        IOMetrics.Measurement measurement = getMetrics().start(IOMetrics.Operation.LOAD);
+        Map<UUID, JsonObject> map = new UUIDMap<>(files.length);
+        long bytes = storage.loadAll(map::put, options.getLoadParallelism());
+        measurement.finish(files.length);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        plugin.getLogger().info("Loaded " + map.size() + " entries of '" + name + "' from " + files.length
+                + " files (" + bytes + " bytes) in " + millis + " ms");
         return map;
     }
 
-}
\ No newline at end of file
+    /**
+     * Entries taken out by a compaction, and whether they were archived
+     */
+    private record Claims(Map<UUID, JsonObject> entries, boolean archived) {
+    }
+}
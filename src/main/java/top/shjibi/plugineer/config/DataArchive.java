@@ -0,0 +1,308 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Cold archive of the expired entries of a {@link Data}, stored as compressed zip bundles in a folder.
+ * Every compaction adds a new bundle instead of rewriting the archive, newer bundles take precedence over older ones.
+ * Entries taken out of the archive are recorded in a tombstone file, and the bundles are merged into one
+ * once there are too many of them or they hold more dead entries than live ones.
+ * <p>
+ * The times the entries were last accessed are kept in the same folder, so the expiry survives restarts.
+ */
+final class DataArchive {
+
+    private static final String BUNDLE_PREFIX = "bundle-";
+    private static final String BUNDLE_SUFFIX = ".zip";
+    private static final String ENTRY_SUFFIX = ".json";
+    private static final String REMOVED_FILE = "removed.txt";
+    private static final String ACCESS_FILE = "access.bin";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int MAX_BUNDLES = 8;
+
+    private final File folder;
+    // Sequence number of a bundle to the bundle
+    private final TreeMap<Long, ZipFile> bundles = new TreeMap<>();
+    // Entry to the sequence number of the newest bundle which holds it
+    private final Map<UUID, Long> index = new HashMap<>();
+    private long entries;
+
+    DataArchive(@NotNull File folder) {
+        this.folder = folder;
+        try {
+            Files.createDirectories(folder.toPath());
+            File[] files = folder.listFiles();
+            if (files == null) throw new IOException("Cannot list files");
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(TEMPORARY_SUFFIX)) {
+                    // Left by a compaction interrupted by a crash
+                    Files.delete(file.toPath());
+                } else if (name.startsWith(BUNDLE_PREFIX) && name.endsWith(BUNDLE_SUFFIX)) {
+                    bundles.put(Long.parseLong(name.substring(BUNDLE_PREFIX.length(), name.length() - BUNDLE_SUFFIX.length())), new ZipFile(file));
+                }
+            }
+            for (Map.Entry<Long, ZipFile> bundle : bundles.entrySet()) {
+                index(bundle.getKey(), bundle.getValue());
+            }
+            File removed = new File(folder, REMOVED_FILE);
+            if (removed.isFile()) {
+                for (String line : Files.readAllLines(removed.toPath(), StandardCharsets.UTF_8)) {
+                    String[] parts = line.split(" ");
+                    // A line which was being written during a crash
+                    if (parts.length != 2) continue;
+                    UUID uuid = UUID.fromString(parts[0]);
+                    Long sequence = index.get(uuid);
+                    if (sequence != null && sequence <= Long.parseLong(parts[1])) index.remove(uuid);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new RuntimeException("Cannot open archive: " + folder.getName(), e);
+        }
+    }
+
+    private void index(long sequence, ZipFile bundle) {
+        for (Enumeration<? extends ZipEntry> iterator = bundle.entries(); iterator.hasMoreElements(); ) {
+            String name = iterator.nextElement().getName();
+            index.put(UUID.fromString(name.substring(0, name.length() - ENTRY_SUFFIX.length())), sequence);
+            entries++;
+        }
+    }
+
+    /**
+     * @return Whether the archive holds the entry
+     */
+    synchronized boolean contains(@NotNull UUID uuid) {
+        return index.containsKey(uuid);
+    }
+
+    /**
+     * @return Count of the entries in the archive
+     */
+    synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * @return Count of the bundles of the archive
+     */
+    synchronized int getBundleCount() {
+        return bundles.size();
+    }
+
+    /**
+     * Reads an entry from the archive, it's left in the archive
+     *
+     * @return The entry, or null if it isn't archived
+     */
+    @Nullable
+    synchronized JsonObject read(@NotNull UUID uuid) {
+        Long sequence = index.get(uuid);
+        if (sequence == null) return null;
+        ZipFile bundle = bundles.get(sequence);
+        try {
+            byte[] json = bundle.getInputStream(bundle.getEntry(uuid + ENTRY_SUFFIX)).readAllBytes();
+            IOMetrics.countRead(json.length);
+            return DataJson.read(json);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read archived entry " + uuid + " from " + folder.getName(), e);
+        }
+    }
+
+    /**
+     * Reads all the archived entries one by one, entries removed meanwhile are skipped
+     *
+     * @param consumer Consumer which accepts every archived entry
+     */
+    void forEach(@NotNull BiConsumer<UUID, JsonObject> consumer) {
+        List<UUID> uuids;
+        synchronized (this) {
+            uuids = new ArrayList<>(index.keySet());
+        }
+        for (UUID uuid : uuids) {
+            JsonObject obj = read(uuid);
+            if (obj != null) consumer.accept(uuid, obj);
+        }
+    }
+
+    /**
+     * Removes entries from the archive, the removal is durable when this method returns
+     */
+    synchronized void remove(@NotNull Collection<UUID> uuids) {
+        StringBuilder lines = new StringBuilder();
+        for (UUID uuid : uuids) {
+            Long sequence = index.remove(uuid);
+            if (sequence != null) lines.append(uuid).append(' ').append(sequence).append('\n');
+        }
+        if (lines.isEmpty()) return;
+        try (FileChannel channel = FileChannel.open(new File(folder, REMOVED_FILE).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(lines.toString());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot remove entries from archive: " + folder.getName(), e);
+        }
+    }
+
+    /**
+     * Adds the entries as a new bundle, which is durable when this method returns.
+     * The bundles are merged afterwards if needed.
+     */
+    void add(@NotNull Map<UUID, JsonObject> values) {
+        if (values.isEmpty()) return;
+        long sequence;
+        synchronized (this) {
+            sequence = bundles.isEmpty() ? 1 : bundles.lastKey() + 1;
+        }
+        // Only the compaction adds bundles, so the sequence number can't be taken meanwhile
+        ZipFile bundle;
+        try {
+            bundle = writeBundle(sequence, values.keySet(), uuid -> DataJson.toBytes(values.get(uuid)));
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write archive bundle in " + folder.getName(), e);
+        }
+        synchronized (this) {
+            bundles.put(sequence, bundle);
+            index(sequence, bundle);
+            if (bundles.size() > MAX_BUNDLES || entries > 2L * index.size()) merge();
+        }
+    }
+
+    /**
+     * Merges all the bundles into one which only holds the live entries, must hold the lock
+     */
+    private void merge() {
+        long sequence = bundles.lastKey() + 1;
+        ZipFile merged;
+        try {
+            merged = writeBundle(sequence, index.keySet(), uuid -> {
+                ZipFile bundle = bundles.get(index.get(uuid));
+                return bundle.getInputStream(bundle.getEntry(uuid + ENTRY_SUFFIX)).readAllBytes();
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot merge archive bundles in " + folder.getName(), e);
+        }
+        // The merged bundle is newer than all the others, so it's taken if a crash leaves any of them behind
+        List<ZipFile> old = new ArrayList<>(bundles.values());
+        bundles.clear();
+        index.clear();
+        entries = 0;
+        bundles.put(sequence, merged);
+        index(sequence, merged);
+        try {
+            for (ZipFile bundle : old) {
+                bundle.close();
+                Files.delete(Path.of(bundle.getName()));
+            }
+            // Removed entries are not in the merged bundle, and the bundles they were removed from are gone
+            Files.deleteIfExists(new File(folder, REMOVED_FILE).toPath());
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot delete merged archive bundles in " + folder.getName(), e);
+        }
+    }
+
+    private ZipFile writeBundle(long sequence, Collection<UUID> uuids, EntryReader reader) throws IOException {
+        File file = new File(folder, BUNDLE_PREFIX + sequence + BUNDLE_SUFFIX);
+        File temporary = new File(folder, file.getName() + TEMPORARY_SUFFIX);
+        try (FileOutputStream stream = new FileOutputStream(temporary);
+             ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(stream))) {
+            out.setLevel(Deflater.BEST_COMPRESSION);
+            for (UUID uuid : uuids) {
+                byte[] json = reader.read(uuid);
+                out.putNextEntry(new ZipEntry(uuid + ENTRY_SUFFIX));
+                out.write(json);
+                out.closeEntry();
+                IOMetrics.countWritten(json.length);
+            }
+            out.finish();
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        return new ZipFile(file);
+    }
+
+    /**
+     * Reads the times the entries were last accessed
+     *
+     * @return Time in milliseconds of every entry, empty if they were never written
+     */
+    @NotNull
+    Map<UUID, Long> readAccessTimes() {
+        File file = new File(folder, ACCESS_FILE);
+        Map<UUID, Long> times = new HashMap<>();
+        if (!file.isFile()) return times;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                times.put(new UUID(in.readLong(), in.readLong()), in.readLong());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read access times: " + folder.getName(), e);
+        }
+        return times;
+    }
+
+    /**
+     * Replaces the times the entries were last accessed
+     *
+     * @param times Time in milliseconds of every entry
+     */
+    void writeAccessTimes(@NotNull Map<UUID, Long> times) {
+        File file = new File(folder, ACCESS_FILE);
+        File temporary = new File(folder, ACCESS_FILE + TEMPORARY_SUFFIX);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                // Copied first, as the times are updated meanwhile
+                List<Map.Entry<UUID, Long>> entries = new ArrayList<>(times.entrySet());
+                out.writeInt(entries.size());
+                for (Map.Entry<UUID, Long> entry : entries) {
+                    out.writeLong(entry.getKey().getMostSignificantBits());
+                    out.writeLong(entry.getKey().getLeastSignificantBits());
+                    out.writeLong(entry.getValue());
+                }
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot save access times: " + folder.getName(), e);
+        }
+    }
+
+    /**
+     * Closes the bundles
+     */
+    synchronized void close() {
+        for (ZipFile bundle : bundles.values()) {
+            try {
+                bundle.close();
+            } catch (IOException ignored) {
+            }
+        }
+        bundles.clear();
+    }
+
+    @FunctionalInterface
+    private interface EntryReader {
+        byte[] read(UUID uuid) throws IOException;
+    }
+}
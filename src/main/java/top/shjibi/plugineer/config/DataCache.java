@@ -0,0 +1,281 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * A bounded cache of the data which evicts the least recently used entries,
+ * used by {@link Data} when it loads lazily.
+ * The views of this map are read only, entries should be put and removed with the methods of the map itself.
+ * All the methods of the map itself are atomic, evicted entries are passed to the listener while holding the lock,
+ * so the listener must not block.
+ * Pinned entries are never evicted, even if the cache is over its limits.
+ * Missing entries can be loaded without holding the lock with {@link #compute(UUID, Function, BiFunction)}.
+ */
+final class DataCache extends AbstractMap<UUID, JsonObject> {
+
+    private final LinkedHashMap<UUID, Node> map;
+    private final long maximumSize;
+    private final long maximumWeight;
+    @Nullable
+    private final ToIntFunction<JsonObject> weigher;
+    private final BiConsumer<UUID, JsonObject> evictionListener;
+    private final Set<UUID> pinned;
+    // Loads in progress, a load is removed when its key is modified, so an outdated value is never put
+    private final Map<UUID, CompletableFuture<Void>> loads;
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    DataCache(long maximumSize, long maximumWeight, @Nullable ToIntFunction<JsonObject> weigher,
+              @NotNull BiConsumer<UUID, JsonObject> evictionListener) {
+        this.map = new LinkedHashMap<>(16, 0.75f, true);
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        this.evictionListener = evictionListener;
+        this.pinned = new HashSet<>();
+        this.loads = new HashMap<>();
+    }
+
+    @Override
+    public synchronized JsonObject get(Object key) {
+        Node node = map.get(key);
+        return node == null ? null : node.value;
+    }
+
+    @Override
+    public synchronized boolean containsKey(Object key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public synchronized JsonObject put(UUID key, JsonObject value) {
+        JsonObject previous = insert(key, value);
+        evict(key);
+        return previous;
+    }
+
+    @Override
+    public synchronized JsonObject putIfAbsent(UUID key, JsonObject value) {
+        Node node = map.get(key);
+        if (node != null) return node.value;
+        insert(key, value);
+        evict(key);
+        return null;
+    }
+
+    @Override
+    public synchronized JsonObject compute(UUID key, BiFunction<? super UUID, ? super JsonObject, ? extends JsonObject> function) {
+        // The function may have changed what a load of the key would read
+        loads.remove(key);
+        Node node = map.get(key);
+        JsonObject result = function.apply(key, node == null ? null : node.value);
+        if (result == null) {
+            if (node != null) remove(key);
+            return null;
+        }
+        insert(key, result);
+        evict(key);
+        return result;
+    }
+
+    /**
+     * Atomically computes a new value like {@link #compute(UUID, BiFunction)}, but a value which isn't in memory
+     * is loaded first without holding the lock, so a slow load doesn't block the other entries.
+     * Concurrent loads of the same key wait for a single load, and a value loaded while its key was modified
+     * is loaded again, as it may be outdated.
+     *
+     * @param key      The specified key
+     * @param loader   Loads the value if it isn't in memory, called without holding the lock
+     * @param function Receives the value in memory or the loaded value while holding the lock, and returns the value to put
+     * @return The new value
+     */
+    JsonObject compute(UUID key, Function<? super UUID, ? extends JsonObject> loader,
+                       BiFunction<? super UUID, ? super JsonObject, ? extends JsonObject> function) {
+        while (true) {
+            CompletableFuture<Void> load;
+            boolean loading;
+            synchronized (this) {
+                if (map.containsKey(key)) return compute(key, function);
+                load = loads.get(key);
+                loading = load == null;
+                if (loading) {
+                    load = new CompletableFuture<>();
+                    loads.put(key, load);
+                }
+            }
+            if (!loading) {
+                // The value is put by the other load unless it's outdated, either way it's looked up again
+                load.join();
+                continue;
+            }
+            try {
+                JsonObject loaded;
+                try {
+                    loaded = loader.apply(key);
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        loads.remove(key, load);
+                    }
+                    throw e;
+                }
+                synchronized (this) {
+                    if (!loads.remove(key, load)) continue;
+                    JsonObject result = function.apply(key, loaded);
+                    if (result != null) {
+                        insert(key, result);
+                        evict(key);
+                    }
+                    return result;
+                }
+            } finally {
+                load.complete(null);
+            }
+        }
+    }
+
+    @Override
+    public JsonObject computeIfPresent(UUID key, BiFunction<? super UUID, ? super JsonObject, ? extends JsonObject> function) {
+        return compute(key, (uuid, value) -> value == null ? null : function.apply(uuid, value));
+    }
+
+    @Override
+    public synchronized JsonObject remove(Object key) {
+        loads.remove(key);
+        Node node = map.remove(key);
+        if (node == null) return null;
+        weight -= node.weight;
+        return node.value;
+    }
+
+    @Override
+    public synchronized int size() {
+        return map.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        loads.clear();
+        map.clear();
+        weight = 0;
+    }
+
+    /**
+     * The view iterates over a copy of the entries taken while holding the lock,
+     * as even a lookup reorders the entries of the underlying map
+     */
+    @NotNull
+    @Override
+    public Set<Entry<UUID, JsonObject>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<UUID, JsonObject>> iterator() {
+                return Collections.unmodifiableList(entriesSnapshot()).iterator();
+            }
+
+            @Override
+            public int size() {
+                return DataCache.this.size();
+            }
+        };
+    }
+
+    /**
+     * @return Copy of the keys in memory, from the least to the most recently used
+     */
+    @NotNull
+    synchronized List<UUID> keySnapshot() {
+        return new ArrayList<>(map.keySet());
+    }
+
+    /**
+     * @return Copy of the entries in memory, from the least to the most recently used
+     */
+    @NotNull
+    synchronized List<Entry<UUID, JsonObject>> entriesSnapshot() {
+        List<Entry<UUID, JsonObject>> entries = new ArrayList<>(map.size());
+        for (Entry<UUID, Node> entry : map.entrySet()) {
+            entries.add(new SimpleImmutableEntry<>(entry.getKey(), entry.getValue().value));
+        }
+        return entries;
+    }
+
+    /**
+     * Keeps the entry associated with the provided {@link UUID} in memory until it's unpinned
+     *
+     * @param uuid The specified UUID
+     */
+    synchronized void pin(@NotNull UUID uuid) {
+        pinned.add(uuid);
+    }
+
+    /**
+     * Allows the entry associated with the provided {@link UUID} to be evicted again
+     *
+     * @param uuid The specified UUID
+     */
+    synchronized void unpin(@NotNull UUID uuid) {
+        pinned.remove(uuid);
+    }
+
+    /**
+     * @param uuid The specified UUID
+     * @return Whether the entry is pinned
+     */
+    synchronized boolean isPinned(@NotNull UUID uuid) {
+        return pinned.contains(uuid);
+    }
+
+    /**
+     * Records a lookup of {@link Data#getData(UUID)}
+     *
+     * @param hit Whether the entry was in the cache
+     */
+    synchronized void recordLookup(boolean hit) {
+        if (hit) hits++;
+        else misses++;
+    }
+
+    /**
+     * @return Statistics of this cache
+     */
+    @NotNull
+    synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions, map.size(), weight);
+    }
+
+    private JsonObject insert(UUID key, JsonObject value) {
+        loads.remove(key);
+        Node node = new Node(value, weigher == null ? 1 : weigher.applyAsInt(value));
+        Node old = map.put(key, node);
+        weight += node.weight - (old == null ? 0 : old.weight);
+        return old == null ? null : old.value;
+    }
+
+    private void evict(UUID inserted) {
+        if (map.size() <= maximumSize && weight <= maximumWeight) return;
+        Iterator<Entry<UUID, Node>> iterator = map.entrySet().iterator();
+        while ((map.size() > maximumSize || weight > maximumWeight) && iterator.hasNext()) {
+            Entry<UUID, Node> eldest = iterator.next();
+            // The entry which was just put is never evicted, so an entry heavier than the limit can still be saved
+            if (eldest.getKey().equals(inserted) || pinned.contains(eldest.getKey())) continue;
+            iterator.remove();
+            weight -= eldest.getValue().weight;
+            evictions++;
+            evictionListener.accept(eldest.getKey(), eldest.getValue().value);
+        }
+    }
+
+    private record Node(JsonObject value, int weight) {
+    }
+}
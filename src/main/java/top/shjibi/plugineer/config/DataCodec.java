@@ -0,0 +1,233 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.*;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * Reads and writes a record or a class with a no-argument constructor directly from and to a json stream,
+ * without building a {@link JsonObject}. The codec of a type is generated once, with a {@link MethodHandle}
+ * for the constructor and for every component or field, so no reflection happens when a value is read or written.
+ * <p>
+ * The json keys are the names of the components or fields, or the value of their {@link SerializedName}.
+ * Fields which are static or transient are ignored, unknown keys are skipped and missing keys keep their default value.
+ * Values of other types are handled by Gson, nested records and classes get their own codec.
+ *
+ * @param <T> Type of the values
+ */
+public final class DataCodec<T> extends TypeAdapter<T> {
+
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+    // Caches the codec of every type, and resolves the codecs of types which contain themselves
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().serializeNulls()
+            .registerTypeAdapterFactory(new Factory()).create();
+
+    private final Class<T> type;
+    private final Property[] properties;
+    private final Map<String, Property> byName;
+    private final MethodHandle constructor;
+    private final boolean record;
+    @Nullable
+    private final Object[] defaults;
+
+    private DataCodec(Class<T> type, Gson gson) {
+        this.type = type;
+        this.record = type.isRecord();
+        List<Property> list = new ArrayList<>();
+        try {
+            if (record) {
+                RecordComponent[] components = type.getRecordComponents();
+                Class<?>[] parameters = new Class<?>[components.length];
+                defaults = new Object[components.length];
+                for (int i = 0; i < components.length; i++) {
+                    RecordComponent component = components[i];
+                    parameters[i] = component.getType();
+                    defaults[i] = component.getType().isPrimitive() ? Array.get(Array.newInstance(component.getType(), 1), 0) : null;
+                    Method accessor = component.getAccessor();
+                    accessor.setAccessible(true);
+                    String name = nameOf(type.getDeclaredField(component.getName()), component.getName());
+                    list.add(new Property(name, adapter(gson, component.getGenericType()), component.getType().isPrimitive(),
+                            MethodHandles.lookup().unreflect(accessor).asType(GETTER), null, i));
+                }
+                Constructor<T> canonical = type.getDeclaredConstructor(parameters);
+                canonical.setAccessible(true);
+                constructor = MethodHandles.lookup().unreflectConstructor(canonical)
+                        .asSpreader(Object[].class, components.length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            } else {
+                defaults = null;
+                Constructor<T> noArgs = type.getDeclaredConstructor();
+                noArgs.setAccessible(true);
+                constructor = MethodHandles.lookup().unreflectConstructor(noArgs).asType(MethodType.methodType(Object.class));
+                List<Class<?>> hierarchy = new ArrayList<>();
+                for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                    hierarchy.add(0, c);
+                }
+                for (Class<?> c : hierarchy) {
+                    for (Field field : c.getDeclaredFields()) {
+                        if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) continue;
+                        field.setAccessible(true);
+                        list.add(new Property(nameOf(field, field.getName()), adapter(gson, field.getGenericType()), field.getType().isPrimitive(),
+                                MethodHandles.lookup().unreflectGetter(field).asType(GETTER),
+                                MethodHandles.lookup().unreflectSetter(field).asType(SETTER), list.size()));
+                    }
+                }
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            throw new IllegalArgumentException("Cannot generate codec of " + type.getName(), e);
+        }
+        this.properties = list.toArray(new Property[0]);
+        this.byName = new HashMap<>();
+        for (Property property : properties) {
+            if (byName.put(property.name, property) != null)
+                throw new IllegalArgumentException("Duplicate key " + property.name + " in " + type.getName());
+        }
+    }
+
+    /**
+     * Gets the codec of a type, which is generated the first time
+     *
+     * @param type A record, or a class with a no-argument constructor
+     * @param <T>  The type
+     * @return The codec
+     * @throws IllegalArgumentException If the type isn't supported
+     */
+    @NotNull
+    @SuppressWarnings("unchecked")
+    public static <T> DataCodec<T> of(@NotNull Class<T> type) {
+        if (!isSupported(type)) throw new IllegalArgumentException("Type " + type.getName() + " isn't a record or a class with a no-argument constructor");
+        return (DataCodec<T>) GSON.getAdapter(type);
+    }
+
+    /**
+     * Reads a value from a json stream
+     *
+     * @param in The reader, positioned before an object or null
+     * @return The value, or null if the json is null
+     */
+    @Override
+    @Nullable
+    public T read(@NotNull JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        try {
+            Object instance = record ? null : (Object) constructor.invokeExact();
+            Object[] arguments = record ? defaults.clone() : null;
+            in.beginObject();
+            while (in.hasNext()) {
+                Property property = byName.get(in.nextName());
+                if (property == null) {
+                    in.skipValue();
+                    continue;
+                }
+                Object value = property.adapter.read(in);
+                // A null primitive keeps its default value
+                if (value == null && property.primitive) continue;
+                if (record) arguments[property.index] = value;
+                else property.setter.invokeExact(instance, value);
+            }
+            in.endObject();
+            return type.cast(record ? (Object) constructor.invokeExact(arguments) : instance);
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new JsonParseException("Cannot read " + type.getName(), e);
+        }
+    }
+
+    /**
+     * Writes a value to a json stream
+     *
+     * @param out   The writer
+     * @param value The value, or null to write null
+     */
+    @Override
+    public void write(@NotNull JsonWriter out, @Nullable T value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+        try {
+            out.beginObject();
+            for (Property property : properties) {
+                out.name(property.name);
+                property.adapter.write(out, (Object) property.getter.invokeExact((Object) value));
+            }
+            out.endObject();
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new JsonIOException("Cannot write " + type.getName(), e);
+        }
+    }
+
+    /**
+     * @return The type of the values
+     */
+    @NotNull
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public String toString() {
+        return "DataCodec{type: " + type.getName() + ", keys: " + byName.keySet() + "}";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TypeAdapter<Object> adapter(Gson gson, Type type) {
+        return (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(type));
+    }
+
+    private static String nameOf(Field field, String name) {
+        SerializedName serializedName = field.getAnnotation(SerializedName.class);
+        return serializedName == null ? name : serializedName.value();
+    }
+
+    /**
+     * Whether a codec can be generated for the type, types of the JDK, enums, arrays and abstract types are left to Gson
+     */
+    private static boolean isSupported(Class<?> type) {
+        if (type.isPrimitive() || type.isArray() || type.isEnum() || type.isInterface() || Modifier.isAbstract(type.getModifiers())
+                || type.isAnonymousClass() || type.isLocalClass() || JsonElement.class.isAssignableFrom(type)) return false;
+        String name = type.getName();
+        if (name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("jdk.") || name.startsWith("sun.")) return false;
+        if (type.isRecord()) return true;
+        if (type.isMemberClass() && !Modifier.isStatic(type.getModifiers())) return false;
+        try {
+            type.getDeclaredConstructor();
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private record Property(String name, TypeAdapter<Object> adapter, boolean primitive,
+                            MethodHandle getter, @Nullable MethodHandle setter, int index) {
+    }
+
+    private static final class Factory implements TypeAdapterFactory {
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+            @SuppressWarnings("unchecked")
+            Class<T> type = (Class<T>) typeToken.getRawType();
+            // Generic types such as Box<String> get the codec of the raw type, their type variables are read by Gson as plain values
+            return isSupported(type) ? new DataCodec<>(type, gson) : null;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A secondary index over a numeric field of the documents of a {@link Data},
+ * created by {@link Data#createIndex(String, String)} and updated whenever an entry is put, removed, updated or marked dirty.
+ * Entries are kept in a randomized balanced search tree ordered by value and counted per subtree,
+ * so top-N, range and rank queries take logarithmic time plus the count of the returned entries.
+ * Entries whose field is missing or isn't a number are not indexed.
+ */
+public final class DataIndex {
+
+    private final String name;
+    private final String path;
+    private final String[] keys;
+    private final Map<UUID, Double> values;
+    @Nullable
+    private Node root;
+
+    DataIndex(@NotNull String name, @NotNull String path) {
+        this.name = name;
+        this.path = path;
+        this.keys = JsonPaths.split(path);
+        this.values = new HashMap<>();
+    }
+
+    /**
+     * Gets the highest entries
+     *
+     * @param n Maximum count of the entries
+     * @return The entries, from the highest value to the lowest
+     * @throws IllegalArgumentException If the count is negative
+     */
+    @NotNull
+    public synchronized List<Entry> top(int n) {
+        if (n < 0) throw new IllegalArgumentException("Count of the entries can't be negative: " + n);
+        List<Entry> result = new ArrayList<>(Math.min(n, size()));
+        Deque<Node> stack = new ArrayDeque<>();
+        Node node = root;
+        while ((node != null || !stack.isEmpty()) && result.size() < n) {
+            while (node != null) {
+                stack.push(node);
+                node = node.right;
+            }
+            node = stack.pop();
+            result.add(new Entry(node.uuid, node.value));
+            node = node.left;
+        }
+        return result;
+    }
+
+    /**
+     * Gets the entries whose value is between the bounds
+     *
+     * @param min The lower bound, inclusive
+     * @param max The upper bound, inclusive
+     * @return The entries, from the lowest value to the highest
+     */
+    @NotNull
+    public synchronized List<Entry> range(double min, double max) {
+        List<Entry> result = new ArrayList<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        Node node = root;
+        while (node != null || !stack.isEmpty()) {
+            while (node != null) {
+                if (node.value < min) {
+                    node = node.right;
+                } else {
+                    stack.push(node);
+                    node = node.left;
+                }
+            }
+            if (stack.isEmpty()) break;
+            node = stack.pop();
+            if (node.value > max) break;
+            result.add(new Entry(node.uuid, node.value));
+            node = node.right;
+        }
+        return result;
+    }
+
+    /**
+     * Counts the entries whose value is between the bounds
+     *
+     * @param min The lower bound, inclusive
+     * @param max The upper bound, inclusive
+     * @return Count of the entries
+     */
+    public synchronized int count(double min, double max) {
+        if (min > max) return 0;
+        return countBelow(max, true) - countBelow(min, false);
+    }
+
+    /**
+     * Gets the rank of the entry associated with the provided {@link UUID}
+     *
+     * @param uuid The specified UUID
+     * @return 1 for the highest value, or -1 if the entry isn't indexed
+     */
+    public synchronized int rank(@NotNull UUID uuid) {
+        Double value = values.get(uuid);
+        if (value == null) return -1;
+        int greater = 0;
+        Node node = root;
+        while (node != null) {
+            int compare = compare(value, uuid, node);
+            if (compare == 0) return greater + size(node.right) + 1;
+            if (compare < 0) {
+                greater += size(node.right) + 1;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        throw new IllegalStateException("Index " + name + " is missing " + uuid);
+    }
+
+    /**
+     * Gets the entry at the given rank
+     *
+     * @param rank The rank, 1 for the highest value
+     * @return The entry, or null if the rank is out of range
+     */
+    @Nullable
+    public synchronized Entry get(int rank) {
+        if (rank < 1 || rank > size()) return null;
+        Node node = root;
+        while (node != null) {
+            int right = size(node.right);
+            if (rank <= right) {
+                node = node.right;
+            } else if (rank == right + 1) {
+                return new Entry(node.uuid, node.value);
+            } else {
+                rank -= right + 1;
+                node = node.left;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the indexed value of the entry associated with the provided {@link UUID}
+     *
+     * @param uuid The specified UUID
+     * @return The value, or null if the entry isn't indexed
+     */
+    @Nullable
+    public synchronized Double getValue(@NotNull UUID uuid) {
+        return values.get(uuid);
+    }
+
+    /**
+     * @return Count of the indexed entries
+     */
+    public synchronized int size() {
+        return size(root);
+    }
+
+    /**
+     * @return Name of this index
+     */
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Dotted path of the indexed field, such as "stats.kills"
+     */
+    @NotNull
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Updates the entry associated with the provided {@link UUID}
+     *
+     * @param uuid The specified UUID
+     * @param obj  The new value of the entry, or null if it was removed
+     */
+    synchronized void update(@NotNull UUID uuid, @Nullable JsonObject obj) {
+        Double value = valueOf(obj);
+        Double old = value == null ? values.remove(uuid) : values.put(uuid, value);
+        if (Objects.equals(old, value)) return;
+        if (old != null) root = delete(root, old, uuid);
+        if (value != null) root = insert(root, new Node(value, uuid));
+    }
+
+    /**
+     * Indexes the entry only if it isn't indexed yet, used while the index is built
+     * so values loaded from the storage don't replace values updated meanwhile
+     */
+    synchronized void updateIfAbsent(@NotNull UUID uuid, @Nullable JsonObject obj) {
+        if (!values.containsKey(uuid)) update(uuid, obj);
+    }
+
+    @Nullable
+    private Double valueOf(@Nullable JsonObject obj) {
+        JsonElement element = JsonPaths.get(obj, keys);
+        if (!(element instanceof JsonPrimitive primitive) || !primitive.isNumber()) return null;
+        double value = primitive.getAsDouble();
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private int countBelow(double value, boolean inclusive) {
+        int count = 0;
+        Node node = root;
+        while (node != null) {
+            if (node.value < value || (inclusive && node.value == value)) {
+                count += size(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    private static Node insert(@Nullable Node root, Node node) {
+        Node[] parts = split(root, node.value, node.uuid);
+        return merge(merge(parts[0], node), parts[1]);
+    }
+
+    private static Node delete(@Nullable Node node, double value, UUID uuid) {
+        if (node == null) return null;
+        int compare = compare(value, uuid, node);
+        if (compare == 0) return merge(node.left, node.right);
+        if (compare < 0) node.left = delete(node.left, value, uuid);
+        else node.right = delete(node.right, value, uuid);
+        node.size--;
+        return node;
+    }
+
+    /**
+     * Splits a tree into the nodes lower than the key and the rest
+     */
+    private static Node[] split(@Nullable Node node, double value, UUID uuid) {
+        if (node == null) return new Node[2];
+        if (compare(value, uuid, node) > 0) {
+            Node[] parts = split(node.right, value, uuid);
+            node.right = parts[0];
+            node.resize();
+            parts[0] = node;
+            return parts;
+        }
+        Node[] parts = split(node.left, value, uuid);
+        node.left = parts[1];
+        node.resize();
+        parts[1] = node;
+        return parts;
+    }
+
+    /**
+     * Merges two trees, all the nodes of the left tree must be lower than the nodes of the right tree
+     */
+    private static Node merge(@Nullable Node left, @Nullable Node right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            left.resize();
+            return left;
+        }
+        right.left = merge(left, right.left);
+        right.resize();
+        return right;
+    }
+
+    private static int compare(double value, UUID uuid, Node node) {
+        int compare = Double.compare(value, node.value);
+        return compare != 0 ? compare : uuid.compareTo(node.uuid);
+    }
+
+    private static int size(@Nullable Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    @Override
+    public String toString() {
+        return "DataIndex{name: " + name + ", path: " + path + ", size: " + size() + "}";
+    }
+
+    /**
+     * An indexed entry
+     *
+     * @param uuid  UUID of the entry
+     * @param value Value of the indexed field
+     */
+    public record Entry(@NotNull UUID uuid, double value) {
+    }
+
+    private static final class Node {
+
+        private final double value;
+        private final UUID uuid;
+        private final int priority;
+        private Node left;
+        private Node right;
+        private int size;
+
+        private Node(double value, UUID uuid) {
+            this.value = value;
+            this.uuid = uuid;
+            this.priority = ThreadLocalRandom.current().nextInt();
+            this.size = 1;
+        }
+
+        private void resize() {
+            size = 1 + DataIndex.size(left) + DataIndex.size(right);
+        }
+    }
+}
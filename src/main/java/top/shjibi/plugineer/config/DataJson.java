@@ -0,0 +1,177 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streaming json reading and writing shared by the {@link DataStorage} implementations,
+ * documents are parsed from and written to streams without building the whole text as a {@link String}.
+ * <p>
+ * Stored documents may be edited by hand, so they're parsed as leniently as {@link JsonParser} does,
+ * the records only written by this library, such as journal records and imported lines, are parsed strictly.
+ */
+final class DataJson {
+
+    // Writes the same text as JsonElement#toString
+    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().serializeNulls().create();
+    // Reads with the leniency of the reader, unlike JsonParser which always reads leniently
+    private static final TypeAdapter<JsonElement> ELEMENT = GSON.getAdapter(JsonElement.class);
+
+    private DataJson() {
+    }
+
+    /**
+     * Parses a json object from a reader leniently, the reader is not closed
+     *
+     * @param reader The reader
+     * @return The json object, or null if the text is empty or isn't a json object
+     * @throws JsonSyntaxException If the text isn't json, or has another value after the document
+     */
+    @Nullable
+    static JsonObject read(@NotNull Reader reader) {
+        return JsonParser.parseReader(reader) instanceof JsonObject obj ? obj : null;
+    }
+
+    /**
+     * Parses a whole document strictly, a new {@link JsonReader} isn't lenient
+     *
+     * @param reader The reader
+     * @return The json element, or null if the text is empty
+     * @throws JsonSyntaxException If the text isn't strict json, or has content after the document
+     */
+    @Nullable
+    static JsonElement parseStrict(@NotNull Reader reader) {
+        JsonReader json = new JsonReader(reader);
+        try {
+            try {
+                json.peek();
+            } catch (EOFException e) {
+                return null;
+            }
+            JsonElement element = ELEMENT.read(json);
+            if (json.peek() != JsonToken.END_DOCUMENT) throw new JsonSyntaxException("Content after the document at " + json.getPath());
+            return element;
+        } catch (MalformedJsonException | EOFException e) {
+            throw new JsonSyntaxException(e);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    /**
+     * Parses a json object from UTF-8 bytes leniently
+     *
+     * @param bytes The bytes
+     * @return The json object, or null if the text isn't a json object
+     */
+    @Nullable
+    static JsonObject read(byte[] bytes) {
+        return read(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a json object record from UTF-8 bytes strictly
+     *
+     * @param bytes The bytes
+     * @return The json object, or null if the text is empty or isn't a json object
+     * @throws JsonSyntaxException If the text isn't strict json, or has content after the document
+     */
+    @Nullable
+    static JsonObject readStrict(byte[] bytes) {
+        return parseStrict(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)) instanceof JsonObject obj ? obj : null;
+    }
+
+    /**
+     * Parses a json array record from UTF-8 bytes strictly
+     *
+     * @param bytes The bytes
+     * @return The json array, or null if the text isn't a json array
+     * @throws JsonSyntaxException If the text isn't strict json, or has content after the document
+     */
+    @Nullable
+    static JsonArray readArray(byte[] bytes) {
+        return parseStrict(new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)) instanceof JsonArray array ? array : null;
+    }
+
+    /**
+     * Reads an object from a reader leniently with its codec, the reader is not closed
+     *
+     * @param reader The reader
+     * @param codec  The codec of the type of the object
+     * @return The object, or null if the text is empty or null
+     * @throws JsonSyntaxException If the text has another value after the document
+     */
+    @Nullable
+    static <T> T read(@NotNull Reader reader, @NotNull DataCodec<T> codec) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(true);
+        try {
+            json.peek();
+        } catch (EOFException e) {
+            // The first peek of an empty document fails instead of returning the end of it
+            return null;
+        }
+        T value = codec.read(json);
+        if (json.peek() != JsonToken.END_DOCUMENT) throw new JsonSyntaxException("Content after the document at " + json.getPath());
+        return value;
+    }
+
+    /**
+     * Writes an object to a writer with its codec and flushes it, the writer is not closed
+     *
+     * @param value  The object
+     * @param codec  The codec of the type of the object
+     * @param writer The writer
+     */
+    static <T> void write(@NotNull T value, @NotNull DataCodec<T> codec, @NotNull Writer writer) throws IOException {
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        codec.write(jsonWriter, value);
+        jsonWriter.flush();
+    }
+
+    /**
+     * Writes a json element to a writer and flushes it, the writer is not closed
+     *
+     * @param element The element to write
+     * @param writer  The writer
+     */
+    static void write(@NotNull JsonElement element, @NotNull Writer writer) throws IOException {
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        GSON.toJson(element, jsonWriter);
+        jsonWriter.flush();
+    }
+
+    /**
+     * Writes a json element to a json writer without flushing it
+     *
+     * @param element The element to write
+     * @param writer  The json writer
+     */
+    static void write(@NotNull JsonElement element, @NotNull JsonWriter writer) {
+        GSON.toJson(element, writer);
+    }
+
+    /**
+     * Writes a json element as UTF-8 bytes
+     *
+     * @param element The element to write
+     * @return The bytes
+     */
+    static byte[] toBytes(@NotNull JsonElement element) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        try {
+            write(element, new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write json", e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,174 @@
+package top.shjibi.plugineer.config;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binds a {@link Data} which loads lazily to the sessions of the players.
+ * The document of a player is loaded and pinned on the login thread during {@link AsyncPlayerPreLoginEvent},
+ * kept in memory while the player is online, and unloaded on a background thread
+ * once the player has been offline for the grace period, so quick relogs don't load it again.
+ * A document whose login is denied after the pre-login, or which doesn't join in time, is unloaded the same way.
+ */
+public final class DataLifecycle implements Listener {
+
+    // Ticks after the pre-login after which a player who didn't join is released
+    private static final long LOGIN_TIMEOUT = 20 * 60;
+
+    private final Data data;
+    private final long gracePeriod;
+    private final Map<UUID, BukkitTask> pendingUnloads;
+    private final Map<UUID, BukkitTask> pendingLogins;
+
+    private DataLifecycle(Data data, long gracePeriod) {
+        this.data = data;
+        this.gracePeriod = gracePeriod;
+        this.pendingUnloads = new ConcurrentHashMap<>();
+        this.pendingLogins = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Binds the data to the sessions of the players and registers the listener,
+     * the players who are already online are loaded and kept in memory.
+     *
+     * @param data        The data, which must load lazily
+     * @param gracePeriod Ticks to wait after a player quits before unloading the document
+     * @return The registered lifecycle
+     */
+    @NotNull
+    public static DataLifecycle bind(@NotNull Data data, long gracePeriod) {
+        if (!data.getOptions().isLazy()) throw new IllegalArgumentException("Data " + data.getName() + " doesn't load lazily");
+        if (gracePeriod < 0) throw new IllegalArgumentException("Grace period must not be negative: " + gracePeriod);
+        DataLifecycle lifecycle = new DataLifecycle(data, gracePeriod);
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            data.pin(player.getUniqueId());
+            data.getData(player.getUniqueId());
+        }
+        Bukkit.getPluginManager().registerEvents(lifecycle, data.getPlugin());
+        return lifecycle;
+    }
+
+    /**
+     * Unregisters the listener, cancels the pending unloads and unpins the documents of the online and logging in players
+     */
+    public void unbind() {
+        HandlerList.unregisterAll(this);
+        pendingUnloads.values().forEach(BukkitTask::cancel);
+        pendingUnloads.clear();
+        for (UUID uuid : pendingLogins.keySet()) {
+            BukkitTask task = pendingLogins.remove(uuid);
+            if (task != null) task.cancel();
+            data.unpin(uuid);
+        }
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            data.unpin(player.getUniqueId());
+        }
+    }
+
+    /**
+     * Loads the document of a player who is allowed to log in, and pins it so it isn't evicted before the player joins
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+        UUID uuid = event.getUniqueId();
+        cancelUnload(uuid);
+        data.pin(uuid);
+        // A player who never joins, e.g. who disconnected before the login, is released after the timeout
+        BukkitTask[] task = new BukkitTask[1];
+        task[0] = Bukkit.getScheduler().runTaskLater(data.getPlugin(), () -> {
+            if (pendingLogins.remove(uuid, task[0]) && Bukkit.getPlayer(uuid) == null) release(uuid);
+        }, LOGIN_TIMEOUT);
+        BukkitTask previous = pendingLogins.put(uuid, task[0]);
+        if (previous != null) previous.cancel();
+        data.getData(uuid);
+    }
+
+    /**
+     * Releases the document of a player whose login was denied after the pre-login
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent event) {
+        if (event.getResult() == PlayerLoginEvent.Result.ALLOWED) return;
+        UUID uuid = event.getPlayer().getUniqueId();
+        cancelLogin(uuid);
+        // Unless the login was denied as the player is already online
+        if (Bukkit.getPlayer(uuid) == null) release(uuid);
+    }
+
+    /**
+     * Keeps the document of a player who joined in memory
+     */
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        cancelLogin(uuid);
+        cancelUnload(uuid);
+        data.pin(uuid);
+    }
+
+    /**
+     * Schedules the document of a player who quit to be unloaded after the grace period
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        release(event.getPlayer().getUniqueId());
+    }
+
+    /**
+     * Unpins the document of a player and schedules it to be unloaded after the grace period
+     */
+    private void release(UUID uuid) {
+        data.unpin(uuid);
+        if (gracePeriod == 0) {
+            data.unload(uuid);
+            return;
+        }
+        BukkitTask[] task = new BukkitTask[1];
+        task[0] = Bukkit.getScheduler().runTaskLaterAsynchronously(data.getPlugin(), () -> {
+            // A relog which already took the task over keeps the document
+            if (pendingUnloads.remove(uuid, task[0])) data.unload(uuid);
+        }, gracePeriod);
+        BukkitTask previous = pendingUnloads.put(uuid, task[0]);
+        if (previous != null) previous.cancel();
+    }
+
+    private void cancelLogin(UUID uuid) {
+        BukkitTask task = pendingLogins.remove(uuid);
+        if (task != null) task.cancel();
+    }
+
+    private void cancelUnload(UUID uuid) {
+        BukkitTask task = pendingUnloads.remove(uuid);
+        if (task != null) task.cancel();
+    }
+
+    /**
+     * @return The bound data
+     */
+    @NotNull
+    public Data getData() {
+        return data;
+    }
+
+    /**
+     * @return Ticks to wait after a player quits before unloading the document
+     */
+    public long getGracePeriod() {
+        return gracePeriod;
+    }
+}
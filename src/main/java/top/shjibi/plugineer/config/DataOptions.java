@@ -0,0 +1,351 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonObject;
+import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * Options of a {@link Data}, used to choose how the data is stored and saved
+ */
+public final class DataOptions {
+
+    private boolean writeBehind;
+    private boolean lazy;
+    private long maximumSize = Long.MAX_VALUE;
+    private long maximumWeight = Long.MAX_VALUE;
+    @Nullable
+    private ToIntFunction<JsonObject> weigher;
+    private DataStorage.Factory storageFactory = FileDataStorage::new;
+    private int loadParallelism = 1;
+    private boolean concurrent;
+    private boolean groupCommit;
+    private long flushWindow;
+    private int snapshotRetention;
+    private long watchDebounce;
+    private boolean overwriteDirty;
+    private long expiry;
+    @Nullable
+    private String expiryTimestampPath;
+
+    private DataOptions() {
+    }
+
+    /**
+     * Gets the default options, which saves everything synchronously
+     *
+     * @return The default options
+     */
+    @NotNull
+    public static DataOptions defaults() {
+        return new DataOptions();
+    }
+
+    /**
+     * Sets whether to write the data behind, which means only the dirty entries are saved,
+     * and they are written on a background thread.
+     *
+     * @param writeBehind Whether to write the data behind
+     * @return The modified {@link DataOptions}
+     */
+    @NotNull
+    public DataOptions withWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+        return this;
+    }
+
+    /**
+     * Loads the data of a {@link java.util.UUID} when it's accessed for the first time instead of loading all the files,
+     * at most the given count of entries are kept in memory, the least recently used ones are saved and evicted.
+     *
+     * @param maximumSize Maximum count of the entries in memory
+     * @return The modified {@link DataOptions}
+     */
+    @NotNull
+    public DataOptions withLazyLoading(long maximumSize) {
+        if (maximumSize <= 0) throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+        this.lazy = true;
+        this.maximumSize = maximumSize;
+        return this;
+    }
+
+    /**
+     * Loads the data lazily, and limits the total weight of the entries in memory instead of their count.
+     *
+     * @param maximumWeight Maximum total weight of the entries in memory
+     * @param weigher       Function which computes the weight of an entry when it's put, e.g. count of its members
+     * @return The modified {@link DataOptions}
+     */
+    @NotNull
+    public DataOptions withMaximumWeight(long maximumWeight, @NotNull ToIntFunction<JsonObject> weigher) {
+        if (maximumWeight <= 0) throw new IllegalArgumentException("Maximum weight must be positive: " + maximumWeight);
+        this.lazy = true;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        return this;
+    }
+
+    /**
+     * Sets the storage engine of the data, e.g. {@code JournalDataStorage::new} or {@code FileDataStorage.compressed(6)}
+     *
+     * @param storageFactory Factory which creates the storage in the data folder
+     * @return The modified {@link DataOptions}
+     */
+    @NotNull
+    public DataOptions withStorage(@NotNull DataStorage.Factory storageFactory) {
+        this.storageFactory = storageFactory;
+        return this;
+    }
+
+    /**
+     * Sets the storage described by a configuration section, see {@link DataStorages} for the types and their options
+     *
+     * @param section The section, such as the "storage" section of a config
+     * @return The modified {@link DataOptions}
+     */
+    @NotNull
+    public DataOptions withStorage(@NotNull ConfigurationSection section) {
+        return withStorage(DataStorages.fromConfig(section));
+    }
+
+    /**
+     * Loads the files with the given count of threads when the data is created,
+     * which also limits how many files are read at the same time.
+     *
+     * @param parallelism Count of the threads, e.g. {@link Runtime#availableProcessors()}
+     * @return The modified {@link DataOptions}
+     */
+    @NotNull
+    public DataOptions withParallelLoading(int parallelism) {
+        if (parallelism <= 0) throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        this.loadParallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Allows the data to be read and modified from any thread, the entries are kept in a concurrent map
+     * and {@link Data#updateData} updates an entry atomically without blocking the other entries.
+     * When the data loads lazily, the cache is guarded by a single lock instead.
+     *
+     * @param concurrent Whether the data can be accessed from multiple threads
+     * @return The modified {@link DataOptions}
+     */
+    @NotNull
+    public DataOptions withConcurrentAccess(boolean concurrent) {
+        this.concurrent = concurrent;
+        return this;
+    }
+
+    /**
+     * Writes the data behind and commits the writes queued within the flush window together with
+     * {@link DataStorage#commit(java.util.Map)}, so a crash never leaves a half written entry,
+     * while the cost of making the writes durable is shared by the whole batch.
+     *
+     * @param flushWindow Milliseconds to wait after a write is queued for more writes to commit together
+     * @return The modified {@link DataOptions}
+     */
+    @NotNull
+    public DataOptions withGroupCommit(long flushWindow) {
+        if (flushWindow < 0) throw new IllegalArgumentException("Flush window must not be negative: " + flushWindow);
+        this.writeBehind = true;
+        this.groupCommit = true;
+        this.flushWindow = flushWindow;
+        return this;
+    }
+
+    /**
+     * Sets how many snapshots created by {@link Data#snapshot()} are kept, the oldest ones are deleted after a snapshot is created
+     *
+     * @param snapshotRetention Count of the snapshots to keep, or 0 to keep all of them
+     * @return The modified {@link DataOptions}
+     */
+    @NotNull
+    public DataOptions withSnapshotRetention(int snapshotRetention) {
+        if (snapshotRetention < 0) throw new IllegalArgumentException("Snapshot retention must not be negative: " + snapshotRetention);
+        this.snapshotRetention = snapshotRetention;
+        return this;
+    }
+
+    /**
+     * Watches the folder of a {@link FileDataStorage} for files changed by other programs, such as a web panel,
+     * and reloads only the changed entries in the background. Files written by the data itself are recognized and skipped.
+     * Entries modified in memory but not saved yet are kept, and the conflict is logged.
+     *
+     * @param debounce Milliseconds a file must stay unchanged before it's reloaded
+     * @return The modified {@link DataOptions}
+     */
+    @NotNull
+    public DataOptions withWatching(long debounce) {
+        return withWatching(debounce, false);
+    }
+
+    /**
+     * Watches the folder of a {@link FileDataStorage} for files changed by other programs, and reloads only the changed entries.
+     *
+     * @param debounce       Milliseconds a file must stay unchanged before it's reloaded
+     * @param overwriteDirty Whether the changed file replaces an entry modified in memory but not saved yet,
+     *                       instead of the entry being kept and saved over the file later.
+     *                       Writes which are already queued are never replaced.
+     * @return The modified {@link DataOptions}
+     */
+    @NotNull
+    public DataOptions withWatching(long debounce, boolean overwriteDirty) {
+        if (debounce <= 0) throw new IllegalArgumentException("Debounce must be positive: " + debounce);
+        this.watchDebounce = debounce;
+        this.overwriteDirty = overwriteDirty;
+        return this;
+    }
+
+    /**
+     * Moves the entries which weren't accessed for the given time to a compressed archive next to the folder of the data,
+     * so they no longer take memory, slow down the loading or get saved again. Compactions run in the background periodically,
+     * and an archived entry is restored transparently when it's accessed again.
+     * The times the entries were last accessed are kept in the archive folder.
+     *
+     * @param expiry Milliseconds after which an entry which wasn't accessed expires
+     * @return The modified {@link DataOptions}
+     */
+    @NotNull
+    public DataOptions withExpiry(long expiry) {
+        return withExpiry(expiry, null);
+    }
+
+    /**
+     * Moves the expired entries to a compressed archive, an entry expires once it wasn't accessed for the given time
+     * and the timestamp stored in the entry, such as the time the player was last seen, is also older than that.
+     *
+     * @param expiry        Milliseconds after which an entry expires
+     * @param timestampPath Dotted path of a field holding a timestamp in milliseconds, such as "lastSeen",
+     *                      entries without the field expire by their access time only. Null to only use the access time.
+     * @return The modified {@link DataOptions}
+     */
+    @NotNull
+    public DataOptions withExpiry(long expiry, @Nullable String timestampPath) {
+        if (expiry <= 0) throw new IllegalArgumentException("Expiry must be positive: " + expiry);
+        if (timestampPath != null) JsonPaths.split(timestampPath);
+        this.expiry = expiry;
+        this.expiryTimestampPath = timestampPath;
+        return this;
+    }
+
+    /**
+     * @return Whether to write the data behind
+     */
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * @return Whether to load the data lazily
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * @return Maximum count of the entries in memory when the data loads lazily
+     */
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @return Maximum total weight of the entries in memory when the data loads lazily
+     */
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * @return Function which computes the weight of an entry, or null if every entry weighs 1
+     */
+    @Nullable
+    public ToIntFunction<JsonObject> getWeigher() {
+        return weigher;
+    }
+
+    /**
+     * @return Factory which creates the storage of the data
+     */
+    @NotNull
+    public DataStorage.Factory getStorageFactory() {
+        return storageFactory;
+    }
+
+    /**
+     * @return Count of the threads which load the files when the data is created
+     */
+    public int getLoadParallelism() {
+        return loadParallelism;
+    }
+
+    /**
+     * @return Whether the data can be accessed from multiple threads
+     */
+    public boolean isConcurrent() {
+        return concurrent;
+    }
+
+    /**
+     * @return Whether the writes are committed durably
+     */
+    public boolean isGroupCommit() {
+        return groupCommit;
+    }
+
+    /**
+     * @return Milliseconds to wait after a write is queued for more writes to commit together
+     */
+    public long getFlushWindow() {
+        return flushWindow;
+    }
+
+    /**
+     * @return Count of the snapshots to keep, or 0 to keep all of them
+     */
+    public int getSnapshotRetention() {
+        return snapshotRetention;
+    }
+
+    /**
+     * @return Milliseconds a changed file must stay unchanged before it's reloaded, or 0 if the folder isn't watched
+     */
+    public long getWatchDebounce() {
+        return watchDebounce;
+    }
+
+    /**
+     * @return Whether a changed file replaces an entry modified in memory
+     */
+    public boolean isOverwriteDirty() {
+        return overwriteDirty;
+    }
+
+    /**
+     * @return Milliseconds after which an entry expires, or 0 if the entries never expire
+     */
+    public long getExpiry() {
+        return expiry;
+    }
+
+    /**
+     * @return Dotted path of the timestamp field of the entries which is checked before they expire, or null if there isn't one
+     */
+    @Nullable
+    public String getExpiryTimestampPath() {
+        return expiryTimestampPath;
+    }
+
+    @Override
+    public String toString() {
+        return "DataOptions{writeBehind: " + writeBehind + ", lazy: " + lazy
+                + ", maximumSize: " + maximumSize + ", maximumWeight: " + maximumWeight
+                + ", loadParallelism: " + loadParallelism + ", concurrent: " + concurrent
+                + ", groupCommit: " + groupCommit + ", flushWindow: " + flushWindow
+                + ", snapshotRetention: " + snapshotRetention + ", watchDebounce: " + watchDebounce
+                + ", overwriteDirty: " + overwriteDirty + ", expiry: " + expiry
+                + ", expiryTimestampPath: " + expiryTimestampPath + "}";
+    }
+}
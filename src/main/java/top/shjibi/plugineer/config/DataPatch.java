@@ -0,0 +1,246 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Field level changes of a document of a {@link Data}, applied with {@link Data#patchData(java.util.UUID, DataPatch)}.
+ * Only the changes are persisted when the storage supports it, instead of the whole document.
+ * Paths are dotted, such as "stats.kills", missing objects on the path are created.
+ */
+public final class DataPatch {
+
+    private static final String SET = "set";
+    private static final String INCREMENT = "inc";
+    private static final String REMOVE = "del";
+
+    private final List<Operation> operations;
+
+    private DataPatch(List<Operation> operations) {
+        this.operations = operations;
+    }
+
+    /**
+     * Creates an empty patch
+     *
+     * @return The patch
+     */
+    @NotNull
+    public static DataPatch create() {
+        return new DataPatch(new ArrayList<>());
+    }
+
+    /**
+     * Parses a patch written by {@link #toJson()}
+     *
+     * @param json The json array
+     * @return The patch
+     */
+    @NotNull
+    public static DataPatch fromJson(@NotNull JsonArray json) {
+        List<Operation> operations = new ArrayList<>(json.size());
+        for (JsonElement element : json) {
+            JsonArray operation = element.getAsJsonArray();
+            String type = operation.get(0).getAsString();
+            if (!type.equals(SET) && !type.equals(INCREMENT) && !type.equals(REMOVE))
+                throw new IllegalArgumentException("Unknown patch operation: " + type);
+            String path = operation.get(1).getAsString();
+            operations.add(new Operation(type, path, JsonPaths.split(path), operation.size() > 2 ? operation.get(2) : null));
+        }
+        return new DataPatch(operations);
+    }
+
+    /**
+     * Sets the value at a path
+     *
+     * @param path  The path
+     * @param value The value
+     * @return The modified {@link DataPatch}
+     */
+    @NotNull
+    public DataPatch set(@NotNull String path, @NotNull JsonElement value) {
+        operations.add(new Operation(SET, path, JsonPaths.split(path), value.deepCopy()));
+        return this;
+    }
+
+    /**
+     * Sets the number at a path
+     *
+     * @param path  The path
+     * @param value The number
+     * @return The modified {@link DataPatch}
+     */
+    @NotNull
+    public DataPatch set(@NotNull String path, @NotNull Number value) {
+        return set(path, new JsonPrimitive(value));
+    }
+
+    /**
+     * Sets the string at a path
+     *
+     * @param path  The path
+     * @param value The string
+     * @return The modified {@link DataPatch}
+     */
+    @NotNull
+    public DataPatch set(@NotNull String path, @NotNull String value) {
+        return set(path, new JsonPrimitive(value));
+    }
+
+    /**
+     * Sets the boolean at a path
+     *
+     * @param path  The path
+     * @param value The boolean
+     * @return The modified {@link DataPatch}
+     */
+    @NotNull
+    public DataPatch set(@NotNull String path, boolean value) {
+        return set(path, new JsonPrimitive(value));
+    }
+
+    /**
+     * Adds to the number at a path, a missing or non numeric value counts as 0
+     *
+     * @param path  The path
+     * @param delta The number to add
+     * @return The modified {@link DataPatch}
+     */
+    @NotNull
+    public DataPatch increment(@NotNull String path, @NotNull Number delta) {
+        operations.add(new Operation(INCREMENT, path, JsonPaths.split(path), new JsonPrimitive(delta)));
+        return this;
+    }
+
+    /**
+     * Removes the value at a path
+     *
+     * @param path The path
+     * @return The modified {@link DataPatch}
+     */
+    @NotNull
+    public DataPatch remove(@NotNull String path) {
+        operations.add(new Operation(REMOVE, path, JsonPaths.split(path), null));
+        return this;
+    }
+
+    /**
+     * Appends the operations of another patch to this one
+     *
+     * @param patch The other patch
+     * @return The modified {@link DataPatch}
+     */
+    @NotNull
+    public DataPatch append(@NotNull DataPatch patch) {
+        operations.addAll(patch.operations);
+        return this;
+    }
+
+    /**
+     * Applies the operations in order to a document, the document is modified in place
+     *
+     * @param obj The document, or null to apply them to a new one
+     * @return The patched document
+     */
+    @NotNull
+    public JsonObject apply(@Nullable JsonObject obj) {
+        JsonObject result = obj == null ? new JsonObject() : obj;
+        for (Operation operation : operations) {
+            String[] keys = operation.keys;
+            String last = keys[keys.length - 1];
+            JsonObject parent = operation.type.equals(REMOVE) ? find(result, keys) : create(result, keys);
+            if (parent == null) continue;
+            switch (operation.type) {
+                case SET -> parent.add(last, operation.value.deepCopy());
+                case INCREMENT -> parent.add(last, add(parent.get(last), operation.value.getAsBigDecimal()));
+                default -> parent.remove(last);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Count of the operations
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * @return Whether this patch doesn't change anything
+     */
+    public boolean isEmpty() {
+        return operations.isEmpty();
+    }
+
+    /**
+     * Writes this patch as a compact json array, such as [["inc","stats.kills",1]]
+     *
+     * @return The json array
+     */
+    @NotNull
+    public JsonArray toJson() {
+        JsonArray json = new JsonArray(operations.size());
+        for (Operation operation : operations) {
+            JsonArray array = new JsonArray(3);
+            array.add(operation.type);
+            array.add(operation.path);
+            if (operation.value != null) array.add(operation.value);
+            json.add(array);
+        }
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return "DataPatch" + toJson();
+    }
+
+    /**
+     * Gets the parent object of the last key, or null if it doesn't exist
+     */
+    @Nullable
+    private static JsonObject find(JsonObject obj, String[] keys) {
+        JsonObject parent = obj;
+        for (int i = 0; i < keys.length - 1; i++) {
+            if (!(parent.get(keys[i]) instanceof JsonObject child)) return null;
+            parent = child;
+        }
+        return parent;
+    }
+
+    /**
+     * Gets the parent object of the last key, replacing what isn't an object on the path
+     */
+    private static JsonObject create(JsonObject obj, String[] keys) {
+        JsonObject parent = obj;
+        for (int i = 0; i < keys.length - 1; i++) {
+            JsonObject child = parent.get(keys[i]) instanceof JsonObject existing ? existing : null;
+            if (child == null) {
+                child = new JsonObject();
+                parent.add(keys[i], child);
+            }
+            parent = child;
+        }
+        return parent;
+    }
+
+    /**
+     * Adds exactly, whole results are stored as integers so counters don't turn into decimals
+     */
+    private static JsonPrimitive add(@Nullable JsonElement current, BigDecimal delta) {
+        BigDecimal value = current instanceof JsonPrimitive primitive && primitive.isNumber()
+                ? primitive.getAsBigDecimal().add(delta) : delta;
+        BigDecimal stripped = value.stripTrailingZeros();
+        if (stripped.scale() <= 0 && stripped.precision() - stripped.scale() <= 18) return new JsonPrimitive(stripped.longValueExact());
+        return new JsonPrimitive(value.doubleValue());
+    }
+
+    private record Operation(String type, String path, String[] keys, @Nullable JsonElement value) {
+    }
+}
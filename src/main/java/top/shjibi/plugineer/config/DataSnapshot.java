@@ -0,0 +1,33 @@
+package top.shjibi.plugineer.config;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+
+/**
+ * A point-in-time snapshot of the storage of a {@link Data}, created by {@link Data#snapshot()}
+ *
+ * @param folder        The folder which holds the snapshot
+ * @param files         Count of the files in the snapshot
+ * @param changedFiles  Count of the files which changed since the previous snapshot
+ * @param copiedFiles   Count of the files which were copied instead of hard linked
+ * @param copiedBytes   Size of the copied files
+ * @param durationNanos Time spent creating the snapshot
+ */
+public record DataSnapshot(@NotNull File folder, int files, int changedFiles, int copiedFiles, long copiedBytes,
+                           long durationNanos) {
+
+    /**
+     * @return Name of the snapshot, which is the time it was taken at, such as 20240101-120000-000
+     */
+    @NotNull
+    public String name() {
+        return folder.getName();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DataSnapshot{name: %s, files: %d, changed: %d, copied: %d (%d bytes), duration: %.1f ms}",
+                name(), files, changedFiles, copiedFiles, copiedBytes, durationNanos / 1e6);
+    }
+}
@@ -0,0 +1,174 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * A storage engine which persists the entries of a {@link Data}.
+ * Implementations must allow reading while another thread writes.
+ */
+public interface DataStorage {
+
+    /**
+     * Reads the value associated with the provided {@link UUID}
+     *
+     * @param uuid The specified UUID
+     * @return The stored value, or null if it doesn't exist
+     */
+    @Nullable
+    JsonObject read(@NotNull UUID uuid);
+
+    /**
+     * Reads the value associated with the provided {@link UUID} into an object,
+     * storages which can't read the stored json as a stream convert the read {@link JsonObject}
+     *
+     * @param uuid  The specified UUID
+     * @param codec The codec of the type of the object
+     * @param <T>   The type of the object
+     * @return The stored value, or null if it doesn't exist
+     */
+    @Nullable
+    default <T> T read(@NotNull UUID uuid, @NotNull DataCodec<T> codec) {
+        JsonObject obj = read(uuid);
+        return obj == null ? null : codec.fromJsonTree(obj);
+    }
+
+    /**
+     * Writes the value associated with the provided {@link UUID}
+     *
+     * @param uuid The specified UUID
+     * @param obj  The value to write, or null to delete the stored value
+     */
+    void write(@NotNull UUID uuid, @Nullable JsonObject obj);
+
+    /**
+     * Writes a batch of values, storages should write them together when possible.
+     * Storages which can't store patches read the value, apply the patch and write the whole value.
+     *
+     * @param batch The values to write, {@link JsonNull} means the stored value should be deleted,
+     *              and a {@link JsonArray} is a {@link DataPatch} which should be applied to the stored value
+     */
+    default void writeAll(@NotNull Map<UUID, JsonElement> batch) {
+        for (Map.Entry<UUID, JsonElement> entry : batch.entrySet()) {
+            UUID uuid = entry.getKey();
+            if (entry.getValue() instanceof JsonArray patch) {
+                write(uuid, DataPatch.fromJson(patch).apply(read(uuid)));
+            } else {
+                write(uuid, entry.getValue() instanceof JsonObject obj ? obj : null);
+            }
+        }
+    }
+
+    /**
+     * Writes a batch of objects, storages which can't write json as a stream convert them to {@link JsonObject}s
+     *
+     * @param batch The objects to write, a null value means the stored value should be deleted
+     * @param codec The codec of the type of the objects
+     * @param <T>   The type of the objects
+     */
+    default <T> void writeAll(@NotNull Map<UUID, T> batch, @NotNull DataCodec<T> codec) {
+        Map<UUID, JsonElement> json = new HashMap<>();
+        for (Map.Entry<UUID, T> entry : batch.entrySet()) {
+            json.put(entry.getKey(), entry.getValue() == null ? JsonNull.INSTANCE : codec.toJsonTree(entry.getValue()));
+        }
+        writeAll(json);
+    }
+
+    /**
+     * Writes a batch of values durably, once this returns the values survive a crash,
+     * and a crash during the write leaves every value either fully old or fully new.
+     * Storages whose writes are already durable write the batch as usual.
+     *
+     * @param batch The values to write, in the same form as {@link #writeAll(Map)}
+     */
+    default void commit(@NotNull Map<UUID, JsonElement> batch) {
+        writeAll(batch);
+    }
+
+    /**
+     * Creates a consistent point-in-time snapshot of the stored values while writes continue,
+     * files which are unchanged since the previous snapshot are shared with it through hard links.
+     *
+     * @param target   The folder of the snapshot, which must not exist yet
+     * @param previous The folder of the previous snapshot, or null if there is none
+     * @return The created snapshot
+     * @throws UnsupportedOperationException If this storage can't create snapshots
+     */
+    @NotNull
+    default DataSnapshot snapshot(@NotNull File target, @Nullable File previous) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " doesn't support snapshots");
+    }
+
+    /**
+     * Reads all the stored values
+     *
+     * @param consumer Consumer which accepts every stored value
+     * @return Count of the bytes read
+     */
+    long loadAll(@NotNull BiConsumer<UUID, JsonObject> consumer);
+
+    /**
+     * Reads all the stored values with the given count of threads,
+     * the consumer is always called on the calling thread.
+     * Storages which can't read in parallel read sequentially.
+     *
+     * @param consumer    Consumer which accepts every stored value
+     * @param parallelism Maximum count of the threads reading at the same time
+     * @return Count of the bytes read
+     */
+    default long loadAll(@NotNull BiConsumer<UUID, JsonObject> consumer, int parallelism) {
+        return loadAll(consumer);
+    }
+
+    /**
+     * Reads all the stored values into objects with the given count of threads,
+     * the consumer is always called on the calling thread.
+     * Storages which can't read the stored json as a stream convert the read {@link JsonObject}s.
+     *
+     * @param codec       The codec of the type of the objects
+     * @param consumer    Consumer which accepts every stored value
+     * @param parallelism Maximum count of the threads reading at the same time
+     * @param <T>         The type of the objects
+     * @return Count of the bytes read
+     */
+    default <T> long loadAll(@NotNull DataCodec<T> codec, @NotNull BiConsumer<UUID, T> consumer, int parallelism) {
+        return loadAll((uuid, obj) -> consumer.accept(uuid, codec.fromJsonTree(obj)), parallelism);
+    }
+
+    /**
+     * @return All the files which store data
+     */
+    @NotNull
+    File[] getFiles();
+
+    /**
+     * Releases the resources held by this storage
+     */
+    void close();
+
+    /**
+     * Creates the storage of a {@link Data}
+     */
+    @FunctionalInterface
+    interface Factory {
+
+        /**
+         * Creates a storage
+         *
+         * @param folder The folder which stores the data
+         * @return The storage
+         */
+        @NotNull
+        DataStorage create(@NotNull File folder);
+    }
+}
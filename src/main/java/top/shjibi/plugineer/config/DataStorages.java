@@ -0,0 +1,119 @@
+package top.shjibi.plugineer.config;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+
+/**
+ * The registry of the {@link DataStorage} types, so the storage of a {@link Data} can be chosen in a configuration:
+ * <pre>
+ * storage:
+ *   type: sqlite
+ * </pre>
+ * The built-in types are "file" (options: layout, compressed, compression-level), "journal" (options: segment-size,
+ * compaction-interval), "sqlite", and "jdbc" (option: url, such as "jdbc:h2:{folder}/data").
+ * Plugins can register their own types.
+ */
+public final class DataStorages {
+
+    private static final Map<String, Provider> PROVIDERS = new ConcurrentHashMap<>();
+
+    static {
+        register("file", options -> {
+            FileDataStorage.Layout layout = FileDataStorage.Layout.valueOf(getString(options, "layout", "flat").toUpperCase(Locale.ENGLISH));
+            boolean compressed = options != null && options.getBoolean("compressed", false);
+            int level = options == null ? Deflater.DEFAULT_COMPRESSION : options.getInt("compression-level", Deflater.DEFAULT_COMPRESSION);
+            return folder -> new FileDataStorage(folder, layout, compressed, level);
+        });
+        register("journal", options -> {
+            long segmentSize = options == null ? JournalDataStorage.DEFAULT_SEGMENT_SIZE : options.getLong("segment-size", JournalDataStorage.DEFAULT_SEGMENT_SIZE);
+            long interval = options == null ? JournalDataStorage.DEFAULT_COMPACTION_INTERVAL : options.getLong("compaction-interval", JournalDataStorage.DEFAULT_COMPACTION_INTERVAL);
+            return folder -> new JournalDataStorage(folder, segmentSize, interval);
+        });
+        register("sqlite", options -> SqlDataStorage.sqlite());
+        register("jdbc", options -> {
+            String url = getString(options, "url", null);
+            if (url == null) throw new IllegalArgumentException("Storage type jdbc requires an url");
+            return SqlDataStorage.jdbc(url);
+        });
+    }
+
+    private DataStorages() {
+    }
+
+    /**
+     * Registers a storage type, replacing the type with the same name
+     *
+     * @param type     Name of the type, case-insensitive
+     * @param provider Provider of the factories of the type
+     */
+    public static void register(@NotNull String type, @NotNull Provider provider) {
+        PROVIDERS.put(type.toLowerCase(Locale.ENGLISH), provider);
+    }
+
+    /**
+     * Gets the factory of a storage type with its default options
+     *
+     * @param type Name of the type
+     * @return The factory
+     * @throws IllegalArgumentException If the type doesn't exist
+     */
+    @NotNull
+    public static DataStorage.Factory get(@NotNull String type) {
+        return get(type, null);
+    }
+
+    /**
+     * Gets the factory of the storage described by a configuration section,
+     * whose "type" key names the type and whose other keys are the options of the type
+     *
+     * @param section The section, the type is "file" if it's not set
+     * @return The factory
+     * @throws IllegalArgumentException If the type doesn't exist or an option is invalid
+     */
+    @NotNull
+    public static DataStorage.Factory fromConfig(@NotNull ConfigurationSection section) {
+        return get(getString(section, "type", "file"), section);
+    }
+
+    private static DataStorage.Factory get(String type, @Nullable ConfigurationSection options) {
+        Provider provider = PROVIDERS.get(type.toLowerCase(Locale.ENGLISH));
+        if (provider == null) throw new IllegalArgumentException("Unknown storage type: " + type + ", expected one of " + getTypes());
+        return provider.create(options);
+    }
+
+    /**
+     * @return Names of the registered types
+     */
+    @NotNull
+    public static Set<String> getTypes() {
+        return new TreeSet<>(PROVIDERS.keySet());
+    }
+
+    private static String getString(@Nullable ConfigurationSection options, String key, @Nullable String defaultValue) {
+        return options == null ? defaultValue : options.getString(key, defaultValue);
+    }
+
+    /**
+     * Creates the factories of a storage type from their options
+     */
+    @FunctionalInterface
+    public interface Provider {
+
+        /**
+         * Creates a factory
+         *
+         * @param options The section which configures the storage, or null to use the default options
+         * @return The factory
+         */
+        @NotNull
+        DataStorage.Factory create(@Nullable ConfigurationSection options);
+    }
+}
@@ -0,0 +1,109 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonWriter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The format of the archives written by {@link Data#exportTo(File)}: newline-delimited json, one entry per line
+ * as {"uuid": "...", "data": {...}}, gzip compressed if the name of the file ends with ".gz".
+ * Lines are written and read one at a time, so an archive of any size is processed with bounded memory.
+ */
+final class DataTransfer {
+
+    /**
+     * Suffix of the compressed archives
+     */
+    static final String GZIP_SUFFIX = ".gz";
+
+    private static final String UUID_KEY = "uuid";
+    private static final String DATA_KEY = "data";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private DataTransfer() {
+    }
+
+    /**
+     * @return Whether the archive is compressed, i.e. its name ends with ".gz"
+     */
+    static boolean isCompressed(@NotNull File file) {
+        return file.getName().endsWith(GZIP_SUFFIX);
+    }
+
+    /**
+     * Opens a writer of an archive
+     *
+     * @param file       The file to write, which may be a temporary file
+     * @param compressed Whether the archive is compressed
+     */
+    @NotNull
+    static Writer newWriter(@NotNull File file, boolean compressed) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            if (compressed) out = new GZIPOutputStream(out, BUFFER_SIZE);
+            else out = new BufferedOutputStream(out, BUFFER_SIZE);
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Opens a reader of an archive, decompressed if the name of the file ends with ".gz"
+     */
+    @NotNull
+    static BufferedReader newReader(@NotNull File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            if (isCompressed(file)) in = new GZIPInputStream(in, BUFFER_SIZE);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * Writes an entry as a line, the writer isn't flushed
+     */
+    static void write(@NotNull Writer writer, @NotNull UUID uuid, @NotNull JsonObject obj) throws IOException {
+        JsonObject line = new JsonObject();
+        line.addProperty(UUID_KEY, uuid.toString());
+        line.add(DATA_KEY, obj);
+        // A new json writer for every line, as a json writer only writes one top-level value
+        DataJson.write(line, new JsonWriter(writer));
+        writer.write('\n');
+    }
+
+    /**
+     * Parses a line of an archive
+     *
+     * @param line   The line
+     * @param number Number of the line, used in the error message
+     * @return The entry
+     * @throws IllegalArgumentException If the line isn't an entry
+     */
+    @NotNull
+    static Map.Entry<UUID, JsonObject> parse(@NotNull String line, long number) {
+        try {
+            JsonElement element = DataJson.parseStrict(new StringReader(line));
+            if (element instanceof JsonObject obj && obj.get(UUID_KEY) != null
+                    && obj.get(DATA_KEY) instanceof JsonObject data) {
+                return Map.entry(UUID.fromString(obj.get(UUID_KEY).getAsString()), data);
+            }
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid entry at line " + number, e);
+        }
+        throw new IllegalArgumentException("Invalid entry at line " + number);
+    }
+}
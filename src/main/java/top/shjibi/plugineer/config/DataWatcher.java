@@ -0,0 +1,161 @@
+package top.shjibi.plugineer.config;
+
+import org.jetbrains.annotations.NotNull;
+import top.shjibi.plugineer.util.ThreadUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.stream.Stream;
+
+/**
+ * Watches the folder of a {@link FileDataStorage} for files changed by other programs, and reloads the changed entries
+ * of the {@link Data} on a background thread. An entry is reloaded once its file wasn't changed for the debounce time,
+ * so a file which is being written is read only once it's complete.
+ */
+final class DataWatcher {
+
+    private final Data data;
+    private final File folder;
+    private final long debounceNanos;
+    private final WatchService service;
+    // Only used by the thread of the watcher
+    private final Map<WatchKey, Path> folders = new HashMap<>();
+    private final Map<UUID, Long> deadlines = new LinkedHashMap<>();
+    private final Thread thread;
+
+    DataWatcher(@NotNull Data data, @NotNull FileDataStorage storage, long debounceMillis) {
+        this.data = data;
+        this.folder = storage.folder;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        try {
+            this.service = FileSystems.getDefault().newWatchService();
+            register(folder.toPath(), false);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot watch folder: " + folder.getName(), e);
+        }
+        this.thread = ThreadUtil.newThreadFactory("Plugineer-Watcher-" + data.getName()).newThread(this::run);
+    }
+
+    /**
+     * Starts reloading the changed entries, called once the {@link Data} is fully constructed,
+     * as the changes are applied to it from the thread of the watcher
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops watching, changes which are still waiting for the debounce time are dropped
+     */
+    void close() {
+        try {
+            service.close();
+        } catch (IOException e) {
+            data.getPlugin().getLogger().log(Level.WARNING, "Cannot stop watching folder: " + folder.getName(), e);
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = deadlines.isEmpty() ? service.take() : service.poll(nextDeadline() - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (key != null) handle(key);
+                reloadDue();
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Closed
+        }
+    }
+
+    private void handle(WatchKey key) {
+        Path parent = folders.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Deletions can't be found without comparing all the entries, they're picked up by the next change of the file
+                data.getPlugin().getLogger().warning("Missed changes of files in " + folder.getName() + ", reloading all the files");
+                for (File file : data.storage.getFiles()) {
+                    changed(file.toPath());
+                }
+                continue;
+            }
+            if (parent == null) continue;
+            Path path = parent.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                // A new shard, files may have been created in it before it was registered
+                try {
+                    register(path, true);
+                } catch (IOException | UncheckedIOException e) {
+                    data.getPlugin().getLogger().log(Level.WARNING, "Cannot watch folder: " + path, e);
+                }
+                continue;
+            }
+            changed(path);
+        }
+        if (!key.reset()) folders.remove(key);
+    }
+
+    private void changed(Path path) {
+        UUID uuid = FileDataStorage.getUUID(path);
+        if (uuid == null) return;
+        // Every change postpones the reload
+        deadlines.remove(uuid);
+        deadlines.put(uuid, System.nanoTime() + debounceNanos);
+    }
+
+    private long nextDeadline() {
+        // Deadlines are in insertion order, and every deadline is the insertion time plus the same debounce time
+        return deadlines.values().iterator().next();
+    }
+
+    private void reloadDue() {
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<UUID, Long>> iterator = deadlines.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<UUID, Long> entry = iterator.next();
+            if (entry.getValue() - now > 0) break;
+            iterator.remove();
+            try {
+                data.onExternalChange(entry.getKey());
+            } catch (RuntimeException e) {
+                data.getPlugin().getLogger().log(Level.WARNING, "Cannot reload entry " + entry.getKey() + " of " + data.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Registers the folder and its subfolders, which are the shards of the sharded layout.
+     * A folder is registered before it's listed, so a file or folder created meanwhile is either listed or reported.
+     *
+     * @param changed Whether the files in the folders are reloaded, as they may have been created before the folder was registered
+     */
+    private void register(Path folder, boolean changed) throws IOException {
+        folders.put(folder.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE), folder);
+        try (Stream<Path> paths = Files.list(folder)) {
+            for (Path path : paths.toList()) {
+                if (Files.isDirectory(path)) register(path, changed);
+                else if (changed) changed(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,940 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.shjibi.plugineer.util.ThreadUtil;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A {@link DataStorage} which stores every entry in its own file,
+ * either plain uuid.json files or zlib compressed uuid.json.z files.
+ * Both formats are always readable, so a folder can be switched to the other format and migrated gradually.
+ * Compressed files may use a preset dictionary trained from the stored documents,
+ * which holds the keys and values shared by most documents so every file doesn't have to repeat them.
+ * <p>
+ * The files are either all in the folder itself, or sharded into two levels of subfolders named after
+ * the first four hex digits of the {@link UUID}, e.g. ab/cd/abcd1234-....json, so no folder holds more than a few files
+ * even with hundreds of thousands of entries. The path of an entry is always resolved directly, without listing any folder.
+ * Files in the other layout are moved when the storage is created.
+ * <p>
+ * Files are never modified in place by the storage, a new version is written to a temporary file which replaces the old one,
+ * so a reader never sees a half written file. Other programs may still edit them in place, so snapshots copy them,
+ * and only share the unchanged files with the previous snapshot through hard links.
+ */
+public class FileDataStorage implements DataStorage {
+
+    /**
+     * Suffix of the plain json files
+     */
+    public static final String JSON_SUFFIX = ".json";
+    /**
+     * Suffix of the compressed files
+     */
+    public static final String COMPRESSED_SUFFIX = ".json.z";
+
+    private static final String DICTIONARY_PREFIX = "dictionary-";
+    private static final String DICTIONARY_SUFFIX = ".bin";
+    // Deflate can't refer further back than its 32 KB window
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    // Limits the count of the files open at the same time during a commit
+    private static final int COMMIT_GROUP_SIZE = 256;
+    // Count of the files a loading thread reads before handing them over, which bounds the memory used by a parallel load
+    private static final int LOAD_CHUNK_SIZE = 1024;
+
+    protected final File folder;
+    protected final Layout layout;
+    protected final boolean compressed;
+    protected final int compressionLevel;
+    private final Map<Integer, byte[]> dictionaries;
+    @Nullable
+    private volatile byte[] dictionary;
+    private final LongAdder encoded = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder decoded = new LongAdder();
+    private final LongAdder decodeNanos = new LongAdder();
+    private final long created = System.currentTimeMillis();
+    // Writers hold the read lock, so a snapshot starts between two writes
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    @Nullable
+    private volatile Snapshot snapshot;
+
+    /**
+     * Creates a {@link FileDataStorage} in the given folder which writes plain json files
+     *
+     * @param folder The folder which stores the files
+     */
+    public FileDataStorage(@NotNull File folder) {
+        this(folder, Layout.FLAT, false, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a {@link FileDataStorage} in the given folder which writes compressed files
+     *
+     * @param folder           The folder which stores the files
+     * @param compressionLevel Deflate compression level, from 1 (fastest) to 9 (smallest)
+     */
+    public FileDataStorage(@NotNull File folder, int compressionLevel) {
+        this(folder, Layout.FLAT, true, compressionLevel);
+    }
+
+    /**
+     * Creates a {@link FileDataStorage} in the given folder
+     *
+     * @param folder           The folder which stores the files
+     * @param layout           Layout of the files in the folder
+     * @param compressed       Whether to write compressed files
+     * @param compressionLevel Deflate compression level, from 1 (fastest) to 9 (smallest), ignored if the files aren't compressed
+     */
+    public FileDataStorage(@NotNull File folder, @NotNull Layout layout, boolean compressed, int compressionLevel) {
+        if (compressionLevel != Deflater.DEFAULT_COMPRESSION && (compressionLevel < 1 || compressionLevel > 9))
+            throw new IllegalArgumentException("Compression level must be between 1 and 9: " + compressionLevel);
+        this.folder = folder;
+        this.layout = layout;
+        this.compressed = compressed;
+        this.compressionLevel = compressionLevel;
+        this.dictionaries = new HashMap<>();
+        loadDictionaries();
+        migrateLayout();
+    }
+
+    /**
+     * Gets a factory of storages which write compressed files, used with {@link DataOptions#withStorage(Factory)}
+     *
+     * @param compressionLevel Deflate compression level, from 1 (fastest) to 9 (smallest)
+     * @return The factory
+     */
+    @NotNull
+    public static Factory compressed(int compressionLevel) {
+        return folder -> new FileDataStorage(folder, compressionLevel);
+    }
+
+    /**
+     * Gets a factory of storages which write plain json files in the sharded layout, used with {@link DataOptions#withStorage(Factory)}
+     *
+     * @return The factory
+     */
+    @NotNull
+    public static Factory sharded() {
+        return folder -> new FileDataStorage(folder, Layout.SHARDED, false, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    @Override
+    @Nullable
+    public JsonObject read(@NotNull UUID uuid) {
+        File file = getFile(uuid);
+        if (!file.isFile()) file = getLegacyFile(uuid);
+        if (!file.isFile()) return null;
+        return read(file);
+    }
+
+    /**
+     * Reads the file directly into an object, without building a {@link JsonObject}
+     */
+    @Override
+    @Nullable
+    public <T> T read(@NotNull UUID uuid, @NotNull DataCodec<T> codec) {
+        File file = getFile(uuid);
+        if (!file.isFile()) file = getLegacyFile(uuid);
+        if (!file.isFile()) return null;
+        return read(file, null, reader -> DataJson.read(reader, codec));
+    }
+
+    @Override
+    public void write(@NotNull UUID uuid, @Nullable JsonObject obj) {
+        write(uuid, obj == null ? null : writer -> DataJson.write(obj, writer));
+    }
+
+    /**
+     * Writes every object directly to its file, without building a {@link JsonObject}
+     */
+    @Override
+    public <T> void writeAll(@NotNull Map<UUID, T> batch, @NotNull DataCodec<T> codec) {
+        for (Map.Entry<UUID, T> entry : batch.entrySet()) {
+            T value = entry.getValue();
+            write(entry.getKey(), value == null ? null : writer -> DataJson.write(value, codec, writer));
+        }
+    }
+
+    private void write(UUID uuid, @Nullable Encoder encoder) {
+        File file = getFile(uuid);
+        snapshotLock.readLock().lock();
+        try {
+            preserve(file);
+            preserve(getLegacyFile(uuid));
+            if (encoder != null) {
+                try {
+                    write(file, encoder);
+                } catch (NoSuchFileException e) {
+                    // First file of its shard
+                    Files.createDirectories(file.getParentFile().toPath());
+                    write(file, encoder);
+                }
+            } else {
+                Files.deleteIfExists(file.toPath());
+            }
+            // The file of the other format is deleted only after the new file is written
+            Files.deleteIfExists(getLegacyFile(uuid).toPath());
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot save file: " + file.getName(), e);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the document to a temporary file which then replaces the file
+     */
+    private void write(File file, Encoder encoder) throws IOException {
+        Path temporary = temporary(file.toPath());
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                encode(channel, encoder);
+            }
+            Files.move(temporary, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Writes a document in the format of this storage, the channel is left open
+     */
+    private void encode(FileChannel channel, Encoder encoder) throws IOException {
+        long start = System.nanoTime();
+        long raw;
+        if (compressed) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+            encoder.encode(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+            byte[] json = out.toByteArray();
+            ByteBuffer buffer = ByteBuffer.wrap(compress(json));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            raw = json.length;
+        } else {
+            // Unbuffered, the encoder would allocate for every token written
+            encoder.encode(new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8)));
+            raw = channel.position();
+        }
+        encodeNanos.add(System.nanoTime() - start);
+        encoded.increment();
+        rawBytes.add(raw);
+        storedBytes.add(channel.position());
+        IOMetrics.countWritten(channel.position());
+    }
+
+    /**
+     * Commits the batch in groups of files: every file of a group is written to a temporary file,
+     * then all of them are synced, renamed over the live files, and their folders are synced,
+     * so the disk is waited for once per group instead of once per file.
+     */
+    @Override
+    public void commit(@NotNull Map<UUID, JsonElement> batch) {
+        List<Map.Entry<UUID, JsonElement>> entries = new ArrayList<>(batch.entrySet());
+        for (int from = 0; from < entries.size(); from += COMMIT_GROUP_SIZE) {
+            commit(entries.subList(from, Math.min(from + COMMIT_GROUP_SIZE, entries.size())));
+        }
+    }
+
+    private void commit(List<Map.Entry<UUID, JsonElement>> group) {
+        List<FileChannel> channels = new ArrayList<>(group.size());
+        // Entry to its temporary file, which is deleted in the end if it wasn't moved
+        Map<UUID, Path> temporaries = new HashMap<>();
+        Set<Path> folders = new HashSet<>();
+        snapshotLock.readLock().lock();
+        try {
+            for (Map.Entry<UUID, JsonElement> entry : group) {
+                if (!(entry.getValue() instanceof JsonObject obj)) continue;
+                Path file = getFile(entry.getKey()).toPath();
+                Path temporary;
+                try {
+                    temporary = temporary(file);
+                } catch (NoSuchFileException e) {
+                    // First file of its shard
+                    Files.createDirectories(file.getParent());
+                    temporary = temporary(file);
+                }
+                temporaries.put(entry.getKey(), temporary);
+                FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+                channels.add(channel);
+                encode(channel, writer -> DataJson.write(obj, writer));
+            }
+            for (FileChannel channel : channels) {
+                channel.force(false);
+                channel.close();
+            }
+            for (Map.Entry<UUID, JsonElement> entry : group) {
+                UUID uuid = entry.getKey();
+                Path file = getFile(uuid).toPath();
+                preserve(file.toFile());
+                preserve(getLegacyFile(uuid));
+                if (entry.getValue() instanceof JsonObject) {
+                    Files.move(temporaries.get(uuid), file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } else if (entry.getValue() instanceof JsonArray patch) {
+                    // Patches are rare in this storage, they're written whole through the temporary file
+                    JsonObject obj = DataPatch.fromJson(patch).apply(read(uuid));
+                    Files.createDirectories(file.getParent());
+                    Path temporary = temporary(file);
+                    temporaries.put(uuid, temporary);
+                    try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                        encode(channel, writer -> DataJson.write(obj, writer));
+                        channel.force(false);
+                    }
+                    Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    Files.deleteIfExists(file);
+                }
+                Files.deleteIfExists(getLegacyFile(uuid).toPath());
+                folders.add(file.getParent());
+            }
+            for (Path folder : folders) {
+                syncFolder(folder);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot commit " + group.size() + " files in " + folder.getName(), e);
+        } finally {
+            snapshotLock.readLock().unlock();
+            for (FileChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            for (Path temporary : temporaries.values()) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a new temporary file next to the file, so concurrent writes of the same file never share one
+     * and it can be moved over the file atomically
+     */
+    private static Path temporary(Path file) throws IOException {
+        return Files.createTempFile(file.getParent(), file.getFileName().toString(), TEMPORARY_SUFFIX);
+    }
+
+    /**
+     * Creates a snapshot without blocking the writes: every file is added to the snapshot,
+     * and a write which replaces or deletes a file that isn't added yet adds the old file first,
+     * so the snapshot holds the files as they were when it started. Dictionaries, which are never modified, are linked.
+     *
+     * @param target   The folder of the snapshot, which must not exist yet
+     * @param previous The folder of the previous snapshot, or null if there is none
+     * @return The created snapshot
+     */
+    @Override
+    @NotNull
+    public DataSnapshot snapshot(@NotNull File target, @Nullable File previous) {
+        if (target.exists()) throw new IllegalArgumentException("Snapshot folder already exists: " + target);
+        Snapshot state = new Snapshot(new SnapshotBuilder(target, previous), new ConcurrentHashMap<>());
+        snapshotLock.writeLock().lock();
+        try {
+            if (snapshot != null) throw new IllegalStateException("A snapshot of " + folder.getName() + " is already being created");
+            snapshot = state;
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        try {
+            for (File file : listDictionaries()) {
+                state.builder.link(file.toPath(), file.getName());
+            }
+            for (File file : getFiles()) {
+                preserve(state, file.toPath());
+            }
+        } catch (IOException e) {
+            state.failure.compareAndSet(null, e);
+        } finally {
+            snapshotLock.writeLock().lock();
+            try {
+                snapshot = null;
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+        }
+        IOException failure = state.failure.get();
+        if (failure != null) throw new RuntimeException("Cannot create snapshot of " + folder.getName(), failure);
+        return state.builder.build();
+    }
+
+    /**
+     * Adds the file to the snapshot being created before it's replaced or deleted, must hold the read lock
+     */
+    private void preserve(File file) {
+        Snapshot state = snapshot;
+        if (state != null) preserve(state, file.toPath());
+    }
+
+    /**
+     * Adds the file to the snapshot unless it was already handled, files which don't exist are only marked as handled,
+     * so the walk of the snapshot doesn't add them once they're created
+     */
+    private void preserve(Snapshot state, Path file) {
+        state.handled.computeIfAbsent(file, path -> {
+            try {
+                if (Files.exists(path)) state.builder.add(path, folder.toPath().relativize(path).toString());
+            } catch (IOException e) {
+                state.failure.compareAndSet(null, e);
+            }
+            return Boolean.TRUE;
+        });
+    }
+
+    /**
+     * Syncs a folder so the renames in it survive a crash, which isn't supported on every platform
+     */
+    private static void syncFolder(Path folder) {
+        try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Rewrites all the files which are not in the format of this storage, or compressed with an older dictionary
+     *
+     * @return Count of the rewritten files
+     */
+    public int migrate() {
+        byte[] current = dictionary;
+        int currentId = current == null ? 0 : adler(current);
+        int count = 0;
+        long before = 0;
+        long after = 0;
+        long start = System.nanoTime();
+        for (File file : getFiles()) {
+            boolean isCompressed = file.getName().endsWith(COMPRESSED_SUFFIX);
+            if (isCompressed == compressed && (!compressed || dictionaryId(file) == currentId)) continue;
+            JsonObject obj = read(file);
+            if (obj == null) continue;
+            UUID uuid = parseUUID(file);
+            before += file.length();
+            write(uuid, obj);
+            after += getFile(uuid).length();
+            count++;
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        Bukkit.getLogger().info("Migrated " + count + " files in " + folder.getName() + " from " + before + " to " + after
+                + " bytes in " + millis + " ms");
+        return count;
+    }
+
+    /**
+     * Trains a preset dictionary from a sample of the stored documents and uses it for the files written from now on.
+     * The dictionary is made of the keys and values found in most of the documents, the most common ones last,
+     * as deflate encodes nearer matches with fewer bits. Older dictionaries are kept so older files stay readable.
+     *
+     * @param samples Maximum count of the documents to sample
+     * @return Size of the dictionary in bytes, or 0 if the documents share nothing to put in a dictionary
+     */
+    public int trainDictionary(int samples) {
+        File[] files = getFiles();
+        if (files.length == 0 || samples <= 0) return 0;
+        int step = Math.max(1, files.length / samples);
+        int sampled = 0;
+        Map<String, Integer> frequency = new HashMap<>();
+        for (int i = 0; i < files.length && sampled < samples; i += step, sampled++) {
+            JsonObject obj = read(files[i]);
+            if (obj == null) continue;
+            Set<String> fragments = new HashSet<>();
+            collectFragments(obj, fragments);
+            for (String fragment : fragments) {
+                frequency.merge(fragment, 1, Integer::sum);
+            }
+        }
+        int minimum = Math.max(2, sampled / 10);
+        List<Map.Entry<String, Integer>> common = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : frequency.entrySet()) {
+            if (entry.getValue() >= minimum) common.add(entry);
+        }
+        // The fragments which save the most bytes are kept, and put at the end of the dictionary
+        common.sort(Comparator.comparingLong(e -> -(long) e.getValue() * e.getKey().length()));
+        List<byte[]> selected = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> entry : common) {
+            byte[] bytes = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length > MAX_DICTIONARY_SIZE) continue;
+            selected.add(bytes);
+            size += bytes.length;
+        }
+        if (size == 0) return 0;
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        for (int i = selected.size() - 1; i >= 0; i--) {
+            out.writeBytes(selected.get(i));
+        }
+        byte[] trained = out.toByteArray();
+        int id = adler(trained);
+        try {
+            Files.write(new File(folder, DICTIONARY_PREFIX + String.format("%08x", id) + DICTIONARY_SUFFIX).toPath(), trained);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot save dictionary in " + folder.getName(), e);
+        }
+        synchronized (dictionaries) {
+            dictionaries.put(id, trained);
+        }
+        dictionary = trained;
+        return trained.length;
+    }
+
+    /**
+     * @return Statistics of the files written and read by this storage
+     */
+    @NotNull
+    public CompressionStats getCompressionStats() {
+        return new CompressionStats(encoded.sum(), rawBytes.sum(), storedBytes.sum(), encodeNanos.sum(),
+                decoded.sum(), decodeNanos.sum());
+    }
+
+    /**
+     * Adds the keys and the key value pairs of a document to the fragments, as they appear in the written json
+     */
+    private static void collectFragments(JsonObject obj, Set<String> fragments) {
+        for (Map.Entry<String, JsonElement> entry : obj.entrySet()) {
+            String key = new String(DataJson.toBytes(new JsonPrimitive(entry.getKey())), StandardCharsets.UTF_8) + ":";
+            JsonElement value = entry.getValue();
+            if (value instanceof JsonObject child) {
+                fragments.add(key + "{");
+                collectFragments(child, fragments);
+            } else if (value.isJsonPrimitive() || value.isJsonNull()) {
+                fragments.add(key);
+                fragments.add(key + new String(DataJson.toBytes(value), StandardCharsets.UTF_8));
+            } else {
+                fragments.add(key);
+            }
+        }
+    }
+
+    private byte[] compress(byte[] json) {
+        Deflater deflater = new Deflater(compressionLevel);
+        try {
+            byte[] preset = dictionary;
+            if (preset != null) deflater.setDictionary(preset);
+            deflater.setInput(json);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, json.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] decompress(byte[] bytes, String name) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && inflater.needsDictionary()) {
+                    inflater.setDictionary(getDictionary(inflater.getAdler(), name));
+                } else if (count == 0 && inflater.needsInput()) {
+                    throw new EOFException("Truncated file: " + name);
+                }
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (DataFormatException | IOException e) {
+            throw new RuntimeException("Cannot load file: " + name, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private byte[] getDictionary(int id, String name) {
+        synchronized (dictionaries) {
+            byte[] bytes = dictionaries.get(id);
+            if (bytes == null) throw new IllegalStateException("Missing dictionary " + String.format("%08x", id) + " of file " + name);
+            return bytes;
+        }
+    }
+
+    /**
+     * Gets the id of the dictionary a compressed file was written with, from its zlib header
+     *
+     * @return The id, or 0 if it has no dictionary
+     */
+    private static int dictionaryId(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readByte();
+            byte flags = in.readByte();
+            return (flags & 0x20) == 0 ? 0 : in.readInt();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private File[] listDictionaries() {
+        File[] files = folder.listFiles(f -> f.isFile() && f.getName().startsWith(DICTIONARY_PREFIX) && f.getName().endsWith(DICTIONARY_SUFFIX));
+        return files == null ? new File[0] : files;
+    }
+
+    private void loadDictionaries() {
+        File[] files = listDictionaries();
+        long latest = Long.MIN_VALUE;
+        for (File file : files) {
+            try {
+                byte[] bytes = Files.readAllBytes(file.toPath());
+                dictionaries.put(adler(bytes), bytes);
+                if (file.lastModified() > latest) {
+                    latest = file.lastModified();
+                    dictionary = bytes;
+                }
+            } catch (IOException e) {
+                Bukkit.getLogger().log(Level.WARNING, "Cannot load dictionary " + file.getName(), e);
+            }
+        }
+    }
+
+    private static int adler(byte[] bytes) {
+        Adler32 adler = new Adler32();
+        adler.update(bytes);
+        return (int) adler.getValue();
+    }
+
+
+    @Override
+    public long loadAll(@NotNull BiConsumer<UUID, JsonObject> consumer) {
+        return loadAll(consumer, 1);
+    }
+
+    /**
+     * Reads and parses the files on a pool of the given count of threads, the files are split into chunks
+     * which are handed over to the calling thread in order, at most two chunks per thread are held in memory.
+     * Files are streamed to the consumer directly if the parallelism is 1.
+     */
+    @Override
+    public long loadAll(@NotNull BiConsumer<UUID, JsonObject> consumer, int parallelism) {
+        return loadAll(consumer, parallelism, DataJson::read);
+    }
+
+    /**
+     * Reads the files directly into objects, without building {@link JsonObject}s
+     */
+    @Override
+    public <T> long loadAll(@NotNull DataCodec<T> codec, @NotNull BiConsumer<UUID, T> consumer, int parallelism) {
+        return loadAll(consumer, parallelism, reader -> DataJson.read(reader, codec));
+    }
+
+    private <R> long loadAll(BiConsumer<UUID, R> consumer, int parallelism, Decoder<R> decoder) {
+        File[] files = getFiles();
+        int threads = Math.min(parallelism, files.length);
+        LongAdder bytes = new LongAdder();
+        if (threads <= 1) {
+            load(files, 0, files.length, bytes, decoder, consumer);
+            IOMetrics.countRead(bytes.sum());
+            return bytes.sum();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, ThreadUtil.newThreadFactory("Plugineer-Loader-" + folder.getName()));
+        try {
+            Deque<Future<Map<UUID, R>>> chunks = new ArrayDeque<>();
+            int chunkSize = Math.min(LOAD_CHUNK_SIZE, (files.length + threads - 1) / threads);
+            for (int start = 0; start < files.length; start += chunkSize) {
+                int from = start;
+                int to = Math.min(start + chunkSize, files.length);
+                chunks.add(pool.submit(() -> {
+                    Map<UUID, R> values = new HashMap<>();
+                    load(files, from, to, bytes, decoder, values::put);
+                    return values;
+                }));
+                if (chunks.size() >= threads * 2) chunks.poll().get().forEach(consumer);
+            }
+            while (!chunks.isEmpty()) {
+                chunks.poll().get().forEach(consumer);
+            }
+            IOMetrics.countRead(bytes.sum());
+            return bytes.sum();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading files in " + folder.getName(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new RuntimeException("Cannot load files in " + folder.getName(), e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private <R> void load(File[] files, int from, int to, LongAdder bytes, Decoder<R> decoder, BiConsumer<UUID, R> consumer) {
+        for (int i = from; i < to; i++) {
+            File file = files[i];
+            R value = read(file, bytes, decoder);
+            if (value != null) consumer.accept(parseUUID(file), value);
+        }
+    }
+
+    /**
+     * Reads the data from a file
+     *
+     * @param file The file which stores the data
+     * @return The data, or null if the file doesn't contain a json object
+     */
+    @Nullable
+    protected JsonObject read(@NotNull File file) {
+        return read(file, null, DataJson::read);
+    }
+
+    /**
+     * Parses a plain file while it's being read from a buffered channel, so the content never exists as a whole {@link String},
+     * compressed files are small enough to be read and inflated at once
+     */
+    @Nullable
+    private <R> R read(File file, @Nullable LongAdder bytes, Decoder<R> decoder) {
+        long start = System.nanoTime();
+        R value;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // Loading threads add to the shared counter, which is counted once on the calling thread
+            if (bytes != null) bytes.add(channel.size());
+            else IOMetrics.countRead(channel.size());
+            if (file.getName().endsWith(COMPRESSED_SUFFIX)) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) throw new EOFException();
+                }
+                byte[] json = decompress(buffer.array(), file.getName());
+                value = decoder.decode(new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8));
+            } else {
+                value = decoder.decode(Channels.newReader(channel, StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot load file: " + file.getName(), e);
+        }
+        decodeNanos.add(System.nanoTime() - start);
+        decoded.increment();
+        return value;
+    }
+
+    /**
+     * Gets the file which stores the data associated with the provided {@link UUID} in the format of this storage
+     *
+     * @param uuid The specified UUID
+     * @return The file
+     */
+    @NotNull
+    public File getFile(@NotNull UUID uuid) {
+        return new File(getShard(uuid, layout), uuid + (compressed ? COMPRESSED_SUFFIX : JSON_SUFFIX));
+    }
+
+    /**
+     * Gets the file which would store the data associated with the provided {@link UUID} in the other format
+     */
+    private File getLegacyFile(UUID uuid) {
+        return new File(getShard(uuid, layout), uuid + (compressed ? JSON_SUFFIX : COMPRESSED_SUFFIX));
+    }
+
+    private File getShard(UUID uuid, Layout layout) {
+        if (layout == Layout.FLAT) return folder;
+        String name = uuid.toString();
+        return new File(new File(folder, name.substring(0, 2)), name.substring(2, 4));
+    }
+
+    /**
+     * Moves the files which are in the other layout, this lists the folder once when a layout is changed
+     */
+    private void migrateLayout() {
+        List<File> misplaced = new ArrayList<>();
+        if (layout == Layout.SHARDED) {
+            File[] files = folder.listFiles(FileDataStorage::isDataFile);
+            if (files != null) misplaced.addAll(List.of(files));
+        } else {
+            for (File shard : listShards(folder)) {
+                for (File subShard : listShards(shard)) {
+                    File[] files = subShard.listFiles(FileDataStorage::isDataFile);
+                    if (files != null) misplaced.addAll(List.of(files));
+                }
+            }
+        }
+        if (misplaced.isEmpty()) return;
+        int moved = 0;
+        for (File file : misplaced) {
+            File target = new File(getShard(parseUUID(file), layout), file.getName());
+            try {
+                if (target.exists()) {
+                    Bukkit.getLogger().warning("Cannot move " + file + " as " + target + " already exists");
+                    continue;
+                }
+                Files.createDirectories(target.getParentFile().toPath());
+                Files.move(file.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                moved++;
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot move file: " + file.getName(), e);
+            }
+        }
+        if (layout == Layout.FLAT) {
+            for (File shard : listShards(folder)) {
+                for (File subShard : listShards(shard)) {
+                    subShard.delete();
+                }
+                shard.delete();
+            }
+        }
+        Bukkit.getLogger().info("Moved " + moved + " files in " + folder.getName() + " to the " + layout.name().toLowerCase(Locale.ENGLISH) + " layout");
+    }
+
+    private static File[] listShards(File folder) {
+        File[] shards = folder.listFiles(f -> f.isDirectory() && f.getName().length() == 2
+                && Character.digit(f.getName().charAt(0), 16) >= 0 && Character.digit(f.getName().charAt(1), 16) >= 0);
+        return shards == null ? new File[0] : shards;
+    }
+
+    private static boolean isDataFile(File file) {
+        return file.isFile() && (file.getName().endsWith(JSON_SUFFIX) || file.getName().endsWith(COMPRESSED_SUFFIX));
+    }
+
+    /**
+     * Gets the {@link UUID} of the entry stored in a file, used by {@link DataWatcher}
+     *
+     * @param file The file
+     * @return The UUID, or null if the file isn't a data file of either format
+     */
+    @Nullable
+    static UUID getUUID(@NotNull Path file) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(JSON_SUFFIX) && !name.endsWith(COMPRESSED_SUFFIX)) return null;
+        try {
+            return parseUUID(file.toFile());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static UUID parseUUID(File file) {
+        String name = file.getName();
+        int end = name.endsWith(COMPRESSED_SUFFIX) ? name.length() - COMPRESSED_SUFFIX.length() : name.length() - JSON_SUFFIX.length();
+        return UUID.fromString(name.substring(0, end));
+    }
+
+    /**
+     * Gets the files of both formats, if an entry has a file of each format, only the file in the format of this storage
+     * is returned, as it's written before the other one is deleted
+     */
+    @Override
+    @NotNull
+    public File[] getFiles() {
+        List<File> files = new ArrayList<>();
+        if (layout == Layout.FLAT) {
+            addFiles(folder, files);
+        } else {
+            for (File shard : listShards(folder)) {
+                for (File subShard : listShards(shard)) {
+                    addFiles(subShard, files);
+                }
+            }
+        }
+        return files.toArray(new File[0]);
+    }
+
+    /**
+     * Adds the data files of a folder, and deletes the temporary files left by a write which was interrupted
+     * before this storage was created, as the live files are only replaced once their temporary files are complete
+     */
+    private void addFiles(File folder, List<File> result) {
+        File[] files = folder.listFiles(f -> isDataFile(f) || f.getName().endsWith(TEMPORARY_SUFFIX));
+        if (files == null) return;
+        String legacy = compressed ? JSON_SUFFIX : COMPRESSED_SUFFIX;
+        for (File file : files) {
+            if (file.getName().endsWith(TEMPORARY_SUFFIX)) {
+                // Newer temporary files may be being written
+                if (file.lastModified() < created && !file.delete()) Bukkit.getLogger().warning("Cannot delete temporary file " + file);
+                continue;
+            }
+            if (file.getName().endsWith(legacy) && getFile(parseUUID(file)).isFile()) continue;
+            result.add(file);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Layout of the files in the folder of a {@link FileDataStorage}
+     */
+    public enum Layout {
+        /**
+         * All the files are in the folder itself
+         */
+        FLAT,
+        /**
+         * The files are in two levels of subfolders named after the first four hex digits of the {@link UUID}
+         */
+        SHARDED
+    }
+
+    /**
+     * Writes a document as json text
+     */
+    @FunctionalInterface
+    private interface Encoder {
+        void encode(Writer writer) throws IOException;
+    }
+
+    /**
+     * Reads a document from json text
+     */
+    @FunctionalInterface
+    private interface Decoder<R> {
+        @Nullable
+        R decode(Reader reader) throws IOException;
+    }
+
+    /**
+     * A snapshot being created, with the files which were already added or marked as created after it started
+     */
+    private record Snapshot(SnapshotBuilder builder, Map<Path, Boolean> handled, AtomicReference<IOException> failure) {
+        private Snapshot(SnapshotBuilder builder, Map<Path, Boolean> handled) {
+            this(builder, handled, new AtomicReference<>());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FileDataStorage{folder: " + folder + ", layout: " + layout + ", compressed: " + compressed + "}";
+    }
+}
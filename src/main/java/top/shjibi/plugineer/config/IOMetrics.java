@@ -0,0 +1,306 @@
+package top.shjibi.plugineer.config;
+
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * I/O metrics of a {@link Configurable}, every load, save and reload is recorded with its latency,
+ * the count of the files and bytes it read and wrote, and the thread it ran on, so I/O on the main thread can be spotted.
+ * <p>
+ * Bytes are counted by the storages on the thread doing the I/O with {@link #countRead(long)} and {@link #countWritten(long)},
+ * and attributed to the {@link Measurement} which is running on that thread.
+ */
+public final class IOMetrics {
+
+    /**
+     * Count of the buckets of the latency histograms, bucket i holds the latencies below 2^i microseconds
+     */
+    private static final int BUCKETS = 40;
+
+    private static final Set<IOMetrics> ALL = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private static final ThreadLocal<long[]> BYTES = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final Configurable<?> owner;
+    private final Map<Operation, Recorder> recorders = new EnumMap<>(Operation.class);
+
+    IOMetrics(@NotNull Configurable<?> owner) {
+        this.owner = owner;
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new Recorder());
+        }
+    }
+
+    /**
+     * Lists these metrics in {@link #getAll()}, once the owner is fully constructed
+     */
+    void register() {
+        ALL.add(this);
+    }
+
+    /**
+     * Gets the metrics of all the {@link Configurable}s which are still in use
+     *
+     * @return The metrics, in no particular order
+     */
+    @NotNull
+    public static List<IOMetrics> getAll() {
+        synchronized (ALL) {
+            return new ArrayList<>(ALL);
+        }
+    }
+
+    /**
+     * Counts the bytes read by the current thread, called by the storages
+     *
+     * @param bytes Count of the bytes
+     */
+    public static void countRead(long bytes) {
+        BYTES.get()[0] += bytes;
+    }
+
+    /**
+     * Counts the bytes written by the current thread, called by the storages
+     *
+     * @param bytes Count of the bytes
+     */
+    public static void countWritten(long bytes) {
+        BYTES.get()[1] += bytes;
+    }
+
+    /**
+     * Starts measuring an operation on the current thread, it must be finished on the same thread
+     *
+     * @param operation The operation to measure
+     * @return The running measurement
+     */
+    @NotNull
+    public Measurement start(@NotNull Operation operation) {
+        return new Measurement(recorders.get(operation));
+    }
+
+    /**
+     * Gets the statistics of an operation
+     *
+     * @param operation The operation
+     * @return The statistics since the creation or the last reset
+     */
+    @NotNull
+    public Stats get(@NotNull Operation operation) {
+        return recorders.get(operation).stats();
+    }
+
+    /**
+     * Gets the count of the entries waiting to be written
+     *
+     * @return The count of the dirty and queued entries
+     */
+    public int getPending() {
+        return owner.getPendingCount();
+    }
+
+    /**
+     * @return The {@link Configurable} which is measured
+     */
+    @NotNull
+    public Configurable<?> getOwner() {
+        return owner;
+    }
+
+    /**
+     * Clears all the recorded statistics
+     */
+    public void reset() {
+        recorders.values().forEach(Recorder::reset);
+    }
+
+    /**
+     * Formats the statistics as lines of text
+     *
+     * @return The header line followed by a line for every operation which was recorded
+     */
+    @NotNull
+    public List<String> dump() {
+        List<String> lines = new ArrayList<>();
+        lines.add(owner.getPlugin().getName() + " / " + owner.getName() + " (" + owner.getClass().getSimpleName()
+                + "), pending: " + getPending());
+        for (Operation operation : Operation.values()) {
+            Stats stats = get(operation);
+            if (stats.count() == 0) continue;
+            lines.add("  " + operation.name().toLowerCase(Locale.ENGLISH) + ": " + stats);
+        }
+        return lines;
+    }
+
+    @Override
+    public String toString() {
+        return "IOMetrics{owner: " + owner.getName() + ", pending: " + getPending() + ", load: " + get(Operation.LOAD)
+                + ", save: " + get(Operation.SAVE) + ", reload: " + get(Operation.RELOAD) + "}";
+    }
+
+    private static boolean isMainThread() {
+        // There's no server outside a running server, e.g. in tests
+        return Bukkit.getServer() != null && Bukkit.isPrimaryThread();
+    }
+
+    /**
+     * An operation which is measured
+     */
+    public enum Operation {
+        /**
+         * Reading the data from the files or the storage
+         */
+        LOAD,
+        /**
+         * Writing the data to the files or the storage
+         */
+        SAVE,
+        /**
+         * Reading a {@link Config} again
+         */
+        RELOAD
+    }
+
+    /**
+     * A running measurement of an operation
+     */
+    public static final class Measurement {
+
+        private final Recorder recorder;
+        private final long start;
+        private final long read;
+        private final long written;
+
+        private Measurement(Recorder recorder) {
+            long[] bytes = BYTES.get();
+            this.recorder = recorder;
+            this.read = bytes[0];
+            this.written = bytes[1];
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Records the operation, bytes counted by the current thread since the start are attributed to it
+         *
+         * @param files Count of the files or entries the operation touched
+         */
+        public void finish(long files) {
+            long nanos = System.nanoTime() - start;
+            long[] bytes = BYTES.get();
+            recorder.record(nanos, files, bytes[0] - read, bytes[1] - written);
+        }
+    }
+
+    /**
+     * Statistics of an operation, the percentiles are the upper bounds of the power-of-two buckets the latencies fall into
+     *
+     * @param count        Count of the recorded operations
+     * @param mainThread   Count of the operations which ran on the main thread
+     * @param files        Count of the files or entries touched
+     * @param bytesRead    Count of the bytes read
+     * @param bytesWritten Count of the bytes written
+     * @param p50Nanos     Median latency in nanoseconds
+     * @param p95Nanos     95th percentile latency in nanoseconds
+     * @param p99Nanos     99th percentile latency in nanoseconds
+     * @param maxNanos     Maximum latency in nanoseconds
+     * @param totalNanos   Sum of the latencies in nanoseconds
+     * @param lastThread   Name of the thread of the last operation, or null if none was recorded
+     */
+    public record Stats(long count, long mainThread, long files, long bytesRead, long bytesWritten,
+                        long p50Nanos, long p95Nanos, long p99Nanos, long maxNanos, long totalNanos,
+                        @Nullable String lastThread) {
+
+        @Override
+        public String toString() {
+            if (count == 0) return "none";
+            return count + " ops (" + (mainThread > 0 ? mainThread + " ON MAIN THREAD" : "off main thread")
+                    + ", last on " + lastThread + "), " + files + " files, " + bytesRead + " bytes read, "
+                    + bytesWritten + " bytes written, p50 " + millis(p50Nanos) + " ms, p95 " + millis(p95Nanos)
+                    + " ms, p99 " + millis(p99Nanos) + " ms, max " + millis(maxNanos) + " ms";
+        }
+
+        private static String millis(long nanos) {
+            return String.format("%.2f", nanos / 1_000_000.0);
+        }
+    }
+
+    private static final class Recorder {
+        private final LongAdder[] histogram = new LongAdder[BUCKETS];
+        private final LongAdder count = new LongAdder();
+        private final LongAdder mainThread = new LongAdder();
+        private final LongAdder files = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private volatile String lastThread;
+
+        private Recorder() {
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        private void record(long nanos, long files, long read, long written) {
+            int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos / 1000));
+            histogram[bucket].increment();
+            count.increment();
+            if (isMainThread()) mainThread.increment();
+            this.files.add(files);
+            bytesRead.add(read);
+            bytesWritten.add(written);
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            lastThread = Thread.currentThread().getName();
+        }
+
+        private Stats stats() {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram[i].sum();
+                total += counts[i];
+            }
+            long max = maxNanos.get();
+            return new Stats(count.sum(), mainThread.sum(), files.sum(), bytesRead.sum(), bytesWritten.sum(),
+                    percentile(counts, total, 0.50, max), percentile(counts, total, 0.95, max),
+                    percentile(counts, total, 0.99, max), max, totalNanos.sum(), lastThread);
+        }
+
+        private static long percentile(long[] counts, long total, double percentile, long max) {
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(total * percentile);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(max, (1L << i) * 1000);
+            }
+            return max;
+        }
+
+        private void reset() {
+            for (LongAdder bucket : histogram) {
+                bucket.reset();
+            }
+            count.reset();
+            mainThread.reset();
+            files.reset();
+            bytesRead.reset();
+            bytesWritten.reset();
+            totalNanos.reset();
+            maxNanos.set(0);
+            lastThread = null;
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import org.bukkit.Bukkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.shjibi.plugineer.util.ThreadUtil;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link DataStorage} which appends the changed entries to segmented journal files,
+ * and keeps the location of the latest record of every entry in memory.
+ * A {@link DataPatch} is appended as its own record and applied to the previous records of the entry when it's read,
+ * the whole value is written again once an entry has too many patches.
+ * Segments which are mostly made of outdated records are compacted in the background.
+ * <p>
+ * Every record is written as: type (1 byte), most and least significant bits of the {@link UUID} (16 bytes),
+ * payload length (4 bytes), payload (UTF-8 json), CRC32 of everything before (4 bytes).
+ * The type is 1 for a value, 2 for a deletion and 3 for a patch.
+ */
+public class JournalDataStorage implements DataStorage {
+
+    /**
+     * Default maximum size of a segment in bytes
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+    /**
+     * Default delay between two compactions in seconds
+     */
+    public static final long DEFAULT_COMPACTION_INTERVAL = 300;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final byte PATCH = 3;
+    private static final int MAX_PATCHES = 16;
+    private static final int HEADER_SIZE = 21;
+    private static final int TRAILER_SIZE = 4;
+    private static final double COMPACTION_THRESHOLD = 0.5;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".log";
+
+    protected final File folder;
+    protected final long maxSegmentSize;
+    private final ReentrantReadWriteLock lock;
+    private final TreeMap<Long, Segment> segments;
+    private final Map<UUID, Location> index;
+    private final ScheduledExecutorService compactor;
+    private volatile boolean indexed;
+    private Segment active;
+
+    /**
+     * Creates a {@link JournalDataStorage} in the given folder with the default segment size and compaction interval
+     *
+     * @param folder The folder which stores the journal
+     */
+    public JournalDataStorage(@NotNull File folder) {
+        this(folder, DEFAULT_SEGMENT_SIZE, DEFAULT_COMPACTION_INTERVAL);
+    }
+
+    /**
+     * Creates a {@link JournalDataStorage} in the given folder
+     *
+     * @param folder             The folder which stores the journal
+     * @param maxSegmentSize     Size in bytes after which a new segment is started
+     * @param compactionInterval Delay between two compactions in seconds
+     */
+    public JournalDataStorage(@NotNull File folder, long maxSegmentSize, long compactionInterval) {
+        this.folder = folder;
+        this.maxSegmentSize = maxSegmentSize;
+        this.lock = new ReentrantReadWriteLock();
+        this.segments = new TreeMap<>();
+        this.index = new HashMap<>();
+        this.compactor = Executors.newSingleThreadScheduledExecutor(ThreadUtil.newThreadFactory("Plugineer-Journal-" + folder.getName()));
+        compactor.scheduleWithFixedDelay(this::compact, compactionInterval, compactionInterval, TimeUnit.SECONDS);
+    }
+
+    @Override
+    @Nullable
+    public JsonObject read(@NotNull UUID uuid) {
+        ensureIndexed();
+        lock.readLock().lock();
+        try {
+            Location location = index.get(uuid);
+            if (location == null) return null;
+            return materialize(location);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void write(@NotNull UUID uuid, @Nullable JsonObject obj) {
+        Map<UUID, JsonElement> batch = new HashMap<>();
+        batch.put(uuid, obj == null ? JsonNull.INSTANCE : obj);
+        writeAll(batch);
+    }
+
+    /**
+     * Appends all the values with a single write to the active segment,
+     * patches are appended as they are unless the entry doesn't exist or already has too many patches
+     *
+     * @param batch The values to write, {@link JsonNull} means the stored value should be deleted,
+     *              and a {@link JsonArray} is a {@link DataPatch} which should be applied to the stored value
+     */
+    @Override
+    public void writeAll(@NotNull Map<UUID, JsonElement> batch) {
+        if (batch.isEmpty()) return;
+        List<PendingRecord> records = new ArrayList<>(batch.size());
+        for (Map.Entry<UUID, JsonElement> entry : batch.entrySet()) {
+            JsonElement value = entry.getValue();
+            if (value instanceof JsonObject || value instanceof JsonArray) {
+                records.add(new PendingRecord(value instanceof JsonObject ? PUT : PATCH, entry.getKey(), DataJson.toBytes(value)));
+            } else {
+                records.add(new PendingRecord(DELETE, entry.getKey(), new byte[0]));
+            }
+        }
+        ensureIndexed();
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < records.size(); i++) {
+                PendingRecord record = records.get(i);
+                if (record.type != PATCH) continue;
+                Location location = index.get(record.uuid);
+                // Every chain of patches starts with a value, so deletions and compactions never have to reorder patches
+                if (location == null || location.depth() >= MAX_PATCHES) {
+                    JsonObject base = location == null ? null : materialize(location);
+                    JsonObject obj = patch(record.payload).apply(base);
+                    records.set(i, new PendingRecord(PUT, record.uuid, DataJson.toBytes(obj)));
+                }
+            }
+            append(records);
+            active.channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write journal: " + active.file.getName(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reads all the stored values, the entries are listed under the lock and then read one at a time,
+     * so the consumer is never called while holding the lock and writes can go on meanwhile.
+     * An entry written meanwhile is read with its latest value, and an entry deleted meanwhile is skipped.
+     */
+    @Override
+    public long loadAll(@NotNull BiConsumer<UUID, JsonObject> consumer) {
+        ensureIndexed();
+        List<UUID> uuids;
+        lock.readLock().lock();
+        try {
+            uuids = new ArrayList<>(index.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+        long bytes = 0;
+        for (UUID uuid : uuids) {
+            JsonObject obj;
+            lock.readLock().lock();
+            try {
+                Location latest = index.get(uuid);
+                if (latest == null) continue;
+                for (Location location = latest; location != null; location = location.previous) {
+                    bytes += location.length;
+                }
+                obj = materialize(latest);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (obj != null) consumer.accept(uuid, obj);
+        }
+        return bytes;
+    }
+
+    /**
+     * Rewrites the live records of the segments which are mostly made of outdated records into the active segment
+     */
+    public void compact() {
+        if (!indexed) return;
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                if (segment == active || segment.liveBytes >= segment.size * COMPACTION_THRESHOLD) continue;
+                compact(segment);
+            }
+        } catch (IOException | RuntimeException e) {
+            Bukkit.getLogger().log(Level.SEVERE, "Cannot compact journal in " + folder.getName(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Creates a snapshot while holding the lock only to link the full segments, which are never modified again,
+     * the records appended to the active segment before the snapshot started are copied afterwards,
+     * or the copy of the previous snapshot is linked if it holds the same bytes.
+     *
+     * @param target   The folder of the snapshot, which must not exist yet
+     * @param previous The folder of the previous snapshot, or null if there is none
+     * @return The created snapshot
+     */
+    @Override
+    @NotNull
+    public DataSnapshot snapshot(@NotNull File target, @Nullable File previous) {
+        if (target.exists()) throw new IllegalArgumentException("Snapshot folder already exists: " + target);
+        ensureIndexed();
+        SnapshotBuilder builder = new SnapshotBuilder(target, previous);
+        Segment last;
+        long size;
+        FileChannel channel;
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                if (segment != active) builder.link(segment.file.toPath(), segment.file.getName());
+            }
+            last = active;
+            size = active.size;
+            // Opened before unlocking, so the copy can still be read if the segment is compacted and deleted meanwhile
+            channel = FileChannel.open(active.file.toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot create snapshot of " + folder.getName(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try (channel) {
+            builder.copy(channel, size, last.file.getName());
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot create snapshot of " + folder.getName(), e);
+        }
+        return builder.build();
+    }
+
+    @Override
+    @NotNull
+    public File[] getFiles() {
+        File[] files = folder.listFiles(f -> f.isFile() && f.getName().startsWith(PREFIX) && f.getName().endsWith(SUFFIX));
+        return files == null ? new File[0] : files;
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(30, TimeUnit.SECONDS)) compactor.shutdownNow();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+            segments.clear();
+            index.clear();
+            indexed = false;
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot close journal in " + folder.getName(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureIndexed() {
+        if (indexed) return;
+        lock.writeLock().lock();
+        try {
+            if (!indexed) IOMetrics.countRead(open());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Opens all the segments and builds the index, must hold the write lock
+     *
+     * @return Count of the bytes read
+     */
+    private long open() {
+        long bytes = 0;
+        try {
+            File[] files = getFiles();
+            Arrays.sort(files, Comparator.comparing(File::getName));
+            for (int i = 0; i < files.length; i++) {
+                String name = files[i].getName();
+                long id = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+                Segment segment = openSegment(id);
+                long valid = scan(segment, (record, offset) -> {
+                    if (record.type == PUT || record.type == PATCH) {
+                        putLocation(record.uuid, new Location(segment, offset, record.payload.length, record.type == PATCH, null));
+                    } else {
+                        removeLocation(record.uuid);
+                    }
+                });
+                bytes += valid;
+                if (valid < segment.size) {
+                    Bukkit.getLogger().log(Level.WARNING, "Journal " + name + " is corrupted after byte " + valid + ", discarding the rest");
+                    if (i == files.length - 1) {
+                        segment.channel.truncate(valid);
+                        segment.size = valid;
+                    }
+                }
+            }
+            active = segments.isEmpty() ? openSegment(1) : segments.lastEntry().getValue();
+            indexed = true;
+            return bytes;
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open journal in " + folder.getName(), e);
+        }
+    }
+
+    private Segment openSegment(long id) throws IOException {
+        File file = new File(folder, PREFIX + String.format("%010d", id) + SUFFIX);
+        FileChannel channel = openChannel(file.toPath());
+        Segment segment = new Segment(id, file, channel);
+        segment.size = channel.size();
+        segments.put(id, segment);
+        return segment;
+    }
+
+    /**
+     * Opens the channel of a segment, overridden by the tests to simulate crashes
+     */
+    FileChannel openChannel(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Reads the records of a segment in order
+     *
+     * @return Size of the valid part of the segment
+     */
+    private long scan(Segment segment, RecordVisitor visitor) throws IOException {
+        long position = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.file.toPath()), 1 << 16))) {
+            byte[] header = new byte[HEADER_SIZE];
+            while (position + HEADER_SIZE + TRAILER_SIZE <= segment.size) {
+                in.readFully(header);
+                ByteBuffer buffer = ByteBuffer.wrap(header);
+                byte type = buffer.get();
+                UUID uuid = new UUID(buffer.getLong(), buffer.getLong());
+                int length = buffer.getInt();
+                if (type < PUT || type > PATCH || length < 0
+                        || position + HEADER_SIZE + length + TRAILER_SIZE > segment.size) break;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(header);
+                crc.update(payload);
+                if ((int) crc.getValue() != in.readInt()) break;
+                visitor.visit(new PendingRecord(type, uuid, payload), position + HEADER_SIZE);
+                position += HEADER_SIZE + length + TRAILER_SIZE;
+            }
+        } catch (EOFException ignored) {
+        }
+        return position;
+    }
+
+    private void compact(Segment segment) throws IOException {
+        boolean oldest = segments.firstKey() == segment.id;
+        List<PendingRecord> live = new ArrayList<>();
+        Set<UUID> patched = new LinkedHashSet<>();
+        scan(segment, (record, offset) -> {
+            if (record.type == DELETE) {
+                // Older segments may still contain the deleted entry, so the deletion must survive
+                if (!oldest && !index.containsKey(record.uuid)) live.add(record);
+                return;
+            }
+            Location location = index.get(record.uuid);
+            if (location == null || !location.contains(segment, offset)) return;
+            if (location.previous == null && !location.patch) live.add(record);
+            else patched.add(record.uuid);
+        });
+        // Entries with patches are rewritten as a single value, which replaces the whole chain
+        for (UUID uuid : patched) {
+            live.add(new PendingRecord(PUT, uuid, DataJson.toBytes(materialize(index.get(uuid)))));
+        }
+        append(live);
+        // The copied records must be durable before their only other copy is deleted
+        active.channel.force(false);
+        segments.remove(segment.id);
+        segment.channel.close();
+        Files.deleteIfExists(segment.file.toPath());
+    }
+
+    /**
+     * Appends the records to the active segment with a single write, must hold the write lock
+     */
+    private void append(List<PendingRecord> records) throws IOException {
+        if (records.isEmpty()) return;
+        int total = 0;
+        for (PendingRecord record : records) {
+            total += HEADER_SIZE + record.payload.length + TRAILER_SIZE;
+        }
+        if (active.size > 0 && active.size + total > maxSegmentSize) {
+            active = openSegment(segments.lastKey() + 1);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(total);
+        long base = active.size;
+        long[] offsets = new long[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            PendingRecord record = records.get(i);
+            int start = buffer.position();
+            buffer.put(record.type)
+                    .putLong(record.uuid.getMostSignificantBits())
+                    .putLong(record.uuid.getLeastSignificantBits())
+                    .putInt(record.payload.length)
+                    .put(record.payload);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), start, HEADER_SIZE + record.payload.length);
+            buffer.putInt((int) crc.getValue());
+            offsets[i] = base + start + HEADER_SIZE;
+        }
+        buffer.flip();
+        long position = base;
+        while (buffer.hasRemaining()) {
+            position += active.channel.write(buffer, position);
+        }
+        active.size += total;
+        IOMetrics.countWritten(total);
+        for (int i = 0; i < records.size(); i++) {
+            PendingRecord record = records.get(i);
+            if (record.type == DELETE) removeLocation(record.uuid);
+            else putLocation(record.uuid, new Location(active, offsets[i], record.payload.length, record.type == PATCH, null));
+        }
+    }
+
+    /**
+     * Indexes the latest record of an entry, a patch is chained to the previous records of the entry
+     */
+    private void putLocation(UUID uuid, Location location) {
+        location.segment.liveBytes += location.recordSize();
+        if (location.patch) {
+            Location previous = index.get(uuid);
+            index.put(uuid, new Location(location.segment, location.offset, location.length, true, previous));
+            return;
+        }
+        release(index.put(uuid, location));
+    }
+
+    private void removeLocation(UUID uuid) {
+        release(index.remove(uuid));
+    }
+
+    private static void release(@Nullable Location location) {
+        for (; location != null; location = location.previous) {
+            location.segment.liveBytes -= location.recordSize();
+        }
+    }
+
+    /**
+     * Reads the value of an entry and applies its patches in order, must hold a lock
+     */
+    @Nullable
+    private JsonObject materialize(Location location) {
+        if (!location.patch) return parse(readPayload(location));
+        JsonObject base = location.previous == null ? null : materialize(location.previous);
+        return patch(readPayload(location)).apply(base);
+    }
+
+    private byte[] readPayload(Location location) {
+        ByteBuffer buffer = ByteBuffer.allocate(location.length);
+        try {
+            long position = location.offset;
+            while (buffer.hasRemaining()) {
+                int read = location.segment.channel.read(buffer, position);
+                if (read < 0) throw new EOFException();
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot read journal: " + location.segment.file.getName(), e);
+        }
+        IOMetrics.countRead(location.length);
+        return buffer.array();
+    }
+
+    @Nullable
+    private static JsonObject parse(byte[] payload) {
+        return DataJson.readStrict(payload);
+    }
+
+    private static DataPatch patch(byte[] payload) {
+        JsonArray json = DataJson.readArray(payload);
+        if (json == null) throw new IllegalStateException("Journal contains a patch which isn't a json array");
+        return DataPatch.fromJson(json);
+    }
+
+    @Override
+    public String toString() {
+        return "JournalDataStorage{folder: " + folder + ", segments: " + segments.size() + ", entries: " + index.size() + "}";
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final File file;
+        private final FileChannel channel;
+        private long size;
+        private long liveBytes;
+
+        private Segment(long id, File file, FileChannel channel) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Location of a record, a patch also links to the previous records of the same entry
+     */
+    private record Location(Segment segment, long offset, int length, boolean patch, @Nullable Location previous) {
+        private long recordSize() {
+            return HEADER_SIZE + length + TRAILER_SIZE;
+        }
+
+        private int depth() {
+            int depth = 0;
+            for (Location location = this; location != null && location.patch; location = location.previous) {
+                depth++;
+            }
+            return depth;
+        }
+
+        private boolean contains(Segment segment, long offset) {
+            for (Location location = this; location != null; location = location.previous) {
+                if (location.segment == segment && location.offset == offset) return true;
+            }
+            return false;
+        }
+    }
+
+    private record PendingRecord(byte type, UUID uuid, byte[] payload) {
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(PendingRecord record, long offset) throws IOException;
+    }
+}
@@ -0,0 +1,45 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Resolves dotted paths such as "stats.kills" inside the documents of a {@link Data}
+ */
+final class JsonPaths {
+
+    private JsonPaths() {
+    }
+
+    /**
+     * Splits a dotted path into its keys
+     *
+     * @param path The path
+     * @return The keys of the path
+     */
+    @NotNull
+    static String[] split(@NotNull String path) {
+        if (path.isEmpty() || path.startsWith(".") || path.endsWith(".") || path.contains(".."))
+            throw new IllegalArgumentException("Invalid path: " + path);
+        return path.split("\\.");
+    }
+
+    /**
+     * Gets the element at a path
+     *
+     * @param obj  The document
+     * @param keys The keys of the path
+     * @return The element, or null if any part of the path doesn't exist
+     */
+    @Nullable
+    static JsonElement get(@Nullable JsonObject obj, @NotNull String[] keys) {
+        JsonElement element = obj;
+        for (String key : keys) {
+            if (!(element instanceof JsonObject parent)) return null;
+            element = parent.get(key);
+        }
+        return element;
+    }
+}
@@ -0,0 +1,337 @@
+package top.shjibi.plugineer.config;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A read-only configuration split across several yaml files which are layered on top of each other:
+ * the default config in the plugin jar, the config file, then the overlay files in the given order,
+ * e.g. {@code new LayeredConfig(plugin, "items", null, "worlds/world_nether.yml")}.
+ * A value of a higher layer replaces the value of the same path in the lower layers, and sections are merged.
+ * <p>
+ * The files are only split into their top-level sections when they're loaded, a section is parsed and merged across
+ * the layers the first time a path in it is read, into an index of all its paths, so reading a value is a map lookup
+ * however many layers there are. Values can be read from any thread, a reload replaces all the layers at once.
+ */
+public class LayeredConfig extends Configurable<ConfigSnapshot> {
+
+    protected final JavaPlugin plugin;
+    protected final File folder;
+    protected final File[] files;
+    protected final String name;
+    private volatile Layers layers;
+
+    /**
+     * Creates a {@link LayeredConfig} with the specified name and overlays
+     *
+     * @param plugin     {@link Plugin} that the {@link LayeredConfig} belongs to.
+     * @param name       Name of the config, will be used to create the config file and to find the default config
+     * @param folderPath Folder which stores the config files.
+     * @param overlays   Paths of the overlay files relative to the folder, from the lowest to the highest priority.
+     *                   Overlay files which don't exist are skipped.
+     */
+    public LayeredConfig(@NotNull JavaPlugin plugin, @NotNull String name, @Nullable String folderPath, @NotNull String... overlays) {
+        this.plugin = plugin;
+        this.name = name;
+        this.folder = mkdirs(plugin, folderPath);
+        this.files = new File[overlays.length + 1];
+        files[0] = new File(folder, name + ".yml");
+        for (int i = 0; i < overlays.length; i++) {
+            files[i + 1] = new File(folder, overlays[i]);
+        }
+        IOMetrics.Measurement measurement = getMetrics().start(IOMetrics.Operation.LOAD);
+        this.layers = readLayers(0);
+        measurement.finish(files.length);
+        registerMetrics();
+    }
+
+    private Layers readLayers(long version) {
+        List<ConfigLayer> layers = new ArrayList<>();
+        byte[] defaults = readDefault();
+        if (defaults != null) {
+            layers.add(ConfigLayer.of("default " + name, new String(defaults, StandardCharsets.UTF_8)));
+            if (!files[0].exists()) {
+                try {
+                    Files.write(files[0].toPath(), defaults);
+                } catch (IOException e) {
+                    throw new RuntimeException("Cannot save default config: " + name, e);
+                }
+            }
+        }
+        for (File file : files) {
+            if (file.isFile()) layers.add(readLayer(file));
+        }
+        return new Layers(List.copyOf(layers), version);
+    }
+
+    @Nullable
+    private byte[] readDefault() {
+        try (InputStream in = plugin.getResource(name + ".yml")) {
+            return in == null ? null : in.readAllBytes();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot load default config: " + name, e);
+        }
+    }
+
+    private static ConfigLayer readLayer(File file) {
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot load config: " + file.getName(), e);
+        }
+        IOMetrics.countRead(bytes.length);
+        return ConfigLayer.of(file.getName(), new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Gets the value of a provided path, merged across the layers
+     *
+     * @param path The provided path
+     * @return The value with sections as unmodifiable maps, or null if the provided path doesn't exist
+     */
+    @Nullable
+    public Object get(@NotNull String path) {
+        int dot = path.indexOf('.');
+        return layers.index(dot < 0 ? path : path.substring(0, dot)).get(path);
+    }
+
+    /**
+     * Gets the value of a provided path as a {@link String}
+     *
+     * @param path The provided path
+     * @return Value as a {@link String}, or null if the provided path doesn't exist
+     */
+    @Nullable
+    public String getConfig(@NotNull String path) {
+        Object o = get(path);
+        if (o == null) return null;
+        return o.toString();
+    }
+
+    /**
+     * Gets the value of a provided path cast to the given class.
+     *
+     * @param clazz The given class.
+     * @param path  The provided path
+     * @return Value cast to the given class, or null if the value can't be cast to the given class.
+     */
+    @Nullable
+    public <T> T getConfig(@NotNull Class<T> clazz, @NotNull String path) {
+        Object value = get(path);
+        return clazz.isInstance(value) ? clazz.cast(value) : null;
+    }
+
+    /**
+     * @return Whether the provided path exists in any layer
+     */
+    public boolean contains(@NotNull String path) {
+        int dot = path.indexOf('.');
+        return layers.index(dot < 0 ? path : path.substring(0, dot)).containsKey(path);
+    }
+
+    /**
+     * @return The top-level keys of all the layers, without parsing their sections
+     */
+    @NotNull
+    public Set<String> getKeys() {
+        return layers.keys;
+    }
+
+    /**
+     * Gets all the values merged across the layers, which parses all the sections
+     *
+     * @return The snapshot, which is the same until the config is reloaded
+     */
+    @NotNull
+    public ConfigSnapshot getSnapshot() {
+        return layers.snapshot();
+    }
+
+    /**
+     * Binds the values to a new instance of a class like {@link Config#bind(Class)}, the default config being a layer already.
+     * The instance is created once until the config is reloaded, which parses all the sections.
+     *
+     * @param type The class to bind to
+     * @return The bound instance, which should be treated as immutable
+     */
+    @NotNull
+    public <T> T bind(@NotNull Class<T> type) {
+        Layers current = layers;
+        return type.cast(current.bound.computeIfAbsent(type,
+                key -> ConfigBinder.of(type).bind(current.snapshot(), new ConfigSnapshot(Map.of(), 0))));
+    }
+
+    /**
+     * Loads all the layers again and replaces them at once, the sections are parsed again when they're read
+     *
+     * @throws RuntimeException If a file can't be read, the current layers are kept
+     */
+    public void reload() {
+        IOMetrics.Measurement measurement = getMetrics().start(IOMetrics.Operation.RELOAD);
+        synchronized (this) {
+            layers = readLayers(layers.version + 1);
+        }
+        measurement.finish(files.length);
+    }
+
+    /**
+     * @return Count of the sections which are parsed in all the layers
+     */
+    public int getParsedCount() {
+        int count = 0;
+        for (ConfigLayer layer : layers.layers) {
+            count += layer.getParsedCount();
+        }
+        return count;
+    }
+
+    /**
+     * Does nothing, layered configs are read only and have nothing to save, edit the files and reload them instead.
+     * Code which saves every {@link Configurable} of a plugin can call it like on the others.
+     */
+    @Override
+    public void save() {
+    }
+
+    /**
+     * Loads a single file as a config without layers
+     */
+    @Override
+    @NotNull
+    protected ConfigSnapshot load(@NotNull File file) {
+        return new Layers(List.of(readLayer(file)), 0).snapshot();
+    }
+
+    /**
+     * @return The config file followed by the overlay files, some of which may not exist
+     */
+    @Override
+    @NotNull
+    public File[] getFiles() {
+        return files;
+    }
+
+    @Override
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    @NotNull
+    public File getFolder() {
+        return folder;
+    }
+
+    @Override
+    @NotNull
+    public Plugin getPlugin() {
+        return plugin;
+    }
+
+    /**
+     * @return All the values merged across the layers, see {@link #getSnapshot()}
+     */
+    @Override
+    @NotNull
+    public ConfigSnapshot getData() {
+        return getSnapshot();
+    }
+
+    @Override
+    public String toString() {
+        return "LayeredConfig{name: " + name + ", files: " + Arrays.toString(files) + ", parsed: " + getParsedCount() + "}";
+    }
+
+    /**
+     * The loaded layers, from the lowest to the highest priority, and the indexes of the sections read so far
+     */
+    private static final class Layers {
+        private final List<ConfigLayer> layers;
+        private final long version;
+        private final Set<String> keys;
+        // Top-level key to the paths in its section merged across the layers
+        private final Map<String, Map<String, Object>> indexes = new ConcurrentHashMap<>();
+        private final Map<Class<?>, Object> bound = new ConcurrentHashMap<>();
+        @Nullable
+        private volatile ConfigSnapshot snapshot;
+
+        private Layers(List<ConfigLayer> layers, long version) {
+            this.layers = layers;
+            this.version = version;
+            Set<String> keys = new LinkedHashSet<>();
+            for (ConfigLayer layer : layers) {
+                keys.addAll(layer.getKeys());
+            }
+            this.keys = Collections.unmodifiableSet(keys);
+        }
+
+        private Map<String, Object> index(String key) {
+            // Not cached, so looking up missing keys doesn't grow the indexes
+            if (!keys.contains(key)) return Map.of();
+            Map<String, Object> index = indexes.get(key);
+            if (index != null) return index;
+            return indexes.computeIfAbsent(key, this::createIndex);
+        }
+
+        private Map<String, Object> createIndex(String key) {
+            Map<String, Object> index = new HashMap<>();
+            Object merged = null;
+            boolean found = false;
+            for (ConfigLayer layer : layers) {
+                if (!layer.getKeys().contains(key)) continue;
+                merged = found ? merge(merged, layer.get(key)) : layer.get(key);
+                found = true;
+            }
+            flatten(key, merged, index);
+            return index;
+        }
+
+        private ConfigSnapshot snapshot() {
+            ConfigSnapshot current = snapshot;
+            if (current != null) return current;
+            Map<String, Object> values = new LinkedHashMap<>();
+            for (String key : keys) {
+                index(key).forEach((path, value) -> {
+                    if (value != null) values.put(path, value);
+                });
+            }
+            current = new ConfigSnapshot(Collections.unmodifiableMap(values), version);
+            snapshot = current;
+            return current;
+        }
+
+        /**
+         * Merges a value of a higher layer into the value of a lower one, maps are merged and other values replaced
+         */
+        @Nullable
+        private static Object merge(@Nullable Object lower, @Nullable Object higher) {
+            if (!(lower instanceof Map<?, ?> lowerMap) || !(higher instanceof Map<?, ?> higherMap)) return higher;
+            Map<Object, Object> merged = new LinkedHashMap<>(lowerMap);
+            for (Map.Entry<?, ?> entry : higherMap.entrySet()) {
+                merged.put(entry.getKey(), merge(merged.get(entry.getKey()), entry.getValue()));
+            }
+            return Collections.unmodifiableMap(merged);
+        }
+
+        private static void flatten(String path, @Nullable Object value, Map<String, Object> index) {
+            index.put(path, value);
+            if (value instanceof Map<?, ?> map) {
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    flatten(path + "." + entry.getKey(), entry.getValue(), index);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package top.shjibi.plugineer.config;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fills the folder of a snapshot with the files of a storage, and counts the files which differ from the previous snapshot.
+ * Files which are never modified in place are hard linked, the others are copied, or linked to their copy
+ * in the previous snapshot if they're unchanged. Files are copied where links aren't supported.
+ */
+final class SnapshotBuilder {
+
+    private final Path target;
+    @Nullable
+    private final Path previous;
+    private final long start;
+    private final AtomicInteger files = new AtomicInteger();
+    private final AtomicInteger changedFiles = new AtomicInteger();
+    private final AtomicInteger copiedFiles = new AtomicInteger();
+    private final AtomicLong copiedBytes = new AtomicLong();
+
+    SnapshotBuilder(@NotNull File target, @Nullable File previous) {
+        this.target = target.toPath();
+        this.previous = previous == null ? null : previous.toPath();
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Links a file of the storage into the snapshot, a file unchanged since the previous snapshot is the same file.
+     * Only for files which nothing ever modifies in place, as the snapshot would be modified with them.
+     *
+     * @param file     The file
+     * @param relative Path of the file relative to the folder of the storage
+     */
+    void link(@NotNull Path file, @NotNull String relative) throws IOException {
+        Path link = prepare(relative);
+        Path old = previous == null ? null : previous.resolve(relative);
+        if (old == null || !Files.exists(old) || !Files.isSameFile(old, file)) changedFiles.incrementAndGet();
+        try {
+            Files.createLink(link, file);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            // Hard links need a file system which supports them, with the snapshot on the same volume
+            Files.copy(file, link, StandardCopyOption.COPY_ATTRIBUTES);
+            copiedFiles.incrementAndGet();
+            copiedBytes.addAndGet(Files.size(link));
+        }
+        files.incrementAndGet();
+    }
+
+    /**
+     * Adds a file of the storage which other programs may modify in place, so the snapshot never shares it.
+     * It's copied, unless its copy in the previous snapshot has the same size and modification time, which is linked instead.
+     *
+     * @param file     The file
+     * @param relative Path of the file relative to the folder of the storage
+     */
+    void add(@NotNull Path file, @NotNull String relative) throws IOException {
+        Path copy = prepare(relative);
+        Path old = previous == null ? null : previous.resolve(relative);
+        if (old != null && Files.isRegularFile(old)) {
+            BasicFileAttributes current = Files.readAttributes(file, BasicFileAttributes.class);
+            BasicFileAttributes copied = Files.readAttributes(old, BasicFileAttributes.class);
+            // Copies keep the modification time of the file, though not always with its full precision,
+            // and a file replaced or modified since has another one
+            if (current.size() == copied.size() && current.lastModifiedTime().toMillis() == copied.lastModifiedTime().toMillis()) {
+                try {
+                    Files.createLink(copy, old);
+                    files.incrementAndGet();
+                    return;
+                } catch (UnsupportedOperationException | FileSystemException ignored) {
+                }
+            }
+        }
+        Files.copy(file, copy, StandardCopyOption.COPY_ATTRIBUTES);
+        files.incrementAndGet();
+        changedFiles.incrementAndGet();
+        copiedFiles.incrementAndGet();
+        copiedBytes.addAndGet(Files.size(copy));
+    }
+
+    /**
+     * Copies the beginning of a file which is appended to in place,
+     * or links the copy of the previous snapshot if it holds the same bytes.
+     * The bytes are compared, as a file cut after a crash may be appended to the same size again with other records.
+     *
+     * @param source   Channel of the file, positioned anywhere
+     * @param size     Count of the bytes to copy
+     * @param relative Path of the file relative to the folder of the storage
+     */
+    void copy(@NotNull FileChannel source, long size, @NotNull String relative) throws IOException {
+        Path copy = prepare(relative);
+        Path old = previous == null ? null : previous.resolve(relative);
+        if (old != null && Files.isRegularFile(old) && Files.size(old) == size && startsWith(source, old, size)) {
+            try {
+                Files.createLink(copy, old);
+                files.incrementAndGet();
+                return;
+            } catch (UnsupportedOperationException | FileSystemException ignored) {
+            }
+        }
+        try (FileChannel out = FileChannel.open(copy, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long position = 0;
+            while (position < size) {
+                long count = source.transferTo(position, size - position, out);
+                if (count <= 0) throw new EOFException("File is shorter than " + size + " bytes: " + relative);
+                position += count;
+            }
+        }
+        files.incrementAndGet();
+        changedFiles.incrementAndGet();
+        copiedFiles.incrementAndGet();
+        copiedBytes.addAndGet(size);
+    }
+
+    /**
+     * Checks whether the first bytes of a channel are the bytes of a file
+     */
+    private static boolean startsWith(FileChannel source, Path file, long size) throws IOException {
+        ByteBuffer expected = ByteBuffer.allocate(1 << 16);
+        ByteBuffer actual = ByteBuffer.allocate(1 << 16);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < size) {
+                expected.clear().limit((int) Math.min(expected.capacity(), size - position));
+                actual.clear().limit(expected.limit());
+                while (expected.hasRemaining()) {
+                    if (channel.read(expected, position + expected.position()) < 0) return false;
+                }
+                while (actual.hasRemaining()) {
+                    if (source.read(actual, position + actual.position()) < 0) return false;
+                }
+                if (!expected.flip().equals(actual.flip())) return false;
+                position += expected.limit();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Counts a file which was written into the snapshot by the storage itself, after {@link #prepare(String)}
+     *
+     * @param relative Path of the file relative to the folder of the snapshot
+     */
+    void copied(@NotNull String relative) throws IOException {
+        files.incrementAndGet();
+        changedFiles.incrementAndGet();
+        copiedFiles.incrementAndGet();
+        copiedBytes.addAndGet(Files.size(target.resolve(relative)));
+    }
+
+    /**
+     * Creates the parent folders of a file of the snapshot
+     *
+     * @param relative Path of the file relative to the folder of the snapshot
+     * @return Path of the file
+     */
+    @NotNull
+    Path prepare(@NotNull String relative) throws IOException {
+        Path path = target.resolve(relative);
+        Files.createDirectories(path.getParent());
+        return path;
+    }
+
+    @NotNull
+    DataSnapshot build() {
+        return new DataSnapshot(target.toFile(), files.get(), changedFiles.get(), copiedFiles.get(), copiedBytes.get(),
+                System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,291 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link DataStorage} which stores the entries in a table of an embedded SQL database, such as SQLite or H2,
+ * keyed by the {@link UUID} so a single entry is read through the primary key index.
+ * Batches are written in one transaction with batched prepared statements.
+ * The JDBC driver isn't shipped with this library, SQLite's is bundled with the server.
+ * <p>
+ * The database has its own connection for reading, so reads aren't blocked by a batch being written,
+ * SQLite databases are switched to write-ahead logging for this.
+ */
+public class SqlDataStorage implements DataStorage {
+
+    /**
+     * Placeholder of the data folder in a JDBC url
+     */
+    public static final String FOLDER_PLACEHOLDER = "{folder}";
+    /**
+     * Name of the database files in the data folder
+     */
+    public static final String DATABASE_NAME = "data";
+
+    private static final String TABLE = "data";
+    // Count of the rows read at once by loadAll
+    private static final int LOAD_PAGE_SIZE = 512;
+
+    protected final File folder;
+    protected final String url;
+    private final boolean sqlite;
+    private final Connection reader;
+    private final Connection writer;
+    private final PreparedStatement select;
+    private final PreparedStatement selectPage;
+    private final PreparedStatement selectForWrite;
+    private final PreparedStatement delete;
+    private final PreparedStatement insert;
+
+    /**
+     * Creates a {@link SqlDataStorage} which connects to the given database
+     *
+     * @param folder The data folder, which stores the files of an embedded database
+     * @param url    JDBC url of the database, {@value #FOLDER_PLACEHOLDER} is replaced with the path of the folder
+     */
+    public SqlDataStorage(@NotNull File folder, @NotNull String url) {
+        this.folder = folder;
+        this.url = url.replace(FOLDER_PLACEHOLDER, folder.getAbsolutePath());
+        this.sqlite = this.url.startsWith("jdbc:sqlite:");
+        try {
+            if (sqlite) loadDriver("org.sqlite.JDBC");
+            this.writer = DriverManager.getConnection(this.url);
+            if (sqlite) {
+                try (Statement statement = writer.createStatement()) {
+                    statement.execute("PRAGMA journal_mode=WAL");
+                    // Committed batches must survive a power loss, which write-ahead logging only ensures with full syncs
+                    statement.execute("PRAGMA synchronous=FULL");
+                }
+            }
+            try (Statement statement = writer.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (uuid CHAR(36) NOT NULL PRIMARY KEY, value TEXT NOT NULL)");
+            }
+            writer.setAutoCommit(false);
+            writer.commit();
+            this.reader = DriverManager.getConnection(this.url);
+            this.select = reader.prepareStatement("SELECT value FROM " + TABLE + " WHERE uuid = ?");
+            this.selectPage = reader.prepareStatement("SELECT uuid, value FROM " + TABLE + " WHERE uuid > ? ORDER BY uuid LIMIT " + LOAD_PAGE_SIZE);
+            this.selectForWrite = writer.prepareStatement("SELECT value FROM " + TABLE + " WHERE uuid = ?");
+            this.delete = writer.prepareStatement("DELETE FROM " + TABLE + " WHERE uuid = ?");
+            this.insert = writer.prepareStatement("INSERT INTO " + TABLE + " (uuid, value) VALUES (?, ?)");
+        } catch (SQLException e) {
+            throw new RuntimeException("Cannot open database: " + this.url, e);
+        }
+    }
+
+    /**
+     * Gets a factory of storages which store the entries in a SQLite database in the data folder,
+     * used with {@link DataOptions#withStorage(Factory)}
+     *
+     * @return The factory
+     */
+    @NotNull
+    public static Factory sqlite() {
+        return jdbc("jdbc:sqlite:" + FOLDER_PLACEHOLDER + File.separator + DATABASE_NAME + ".db");
+    }
+
+    /**
+     * Gets a factory of storages which store the entries in the given database, used with {@link DataOptions#withStorage(Factory)}
+     *
+     * @param url JDBC url of the database, {@value #FOLDER_PLACEHOLDER} is replaced with the path of the data folder,
+     *            such as "jdbc:h2:{folder}/data"
+     * @return The factory
+     */
+    @NotNull
+    public static Factory jdbc(@NotNull String url) {
+        return folder -> new SqlDataStorage(folder, url);
+    }
+
+    @Override
+    @Nullable
+    public JsonObject read(@NotNull UUID uuid) {
+        synchronized (reader) {
+            return read(select, uuid);
+        }
+    }
+
+    @Nullable
+    private JsonObject read(PreparedStatement statement, UUID uuid) {
+        try {
+            statement.setString(1, uuid.toString());
+            try (ResultSet result = statement.executeQuery()) {
+                if (!result.next()) return null;
+                byte[] value = result.getString(1).getBytes(StandardCharsets.UTF_8);
+                IOMetrics.countRead(value.length);
+                return DataJson.read(value);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Cannot load entry " + uuid + " from " + url, e);
+        }
+    }
+
+    @Override
+    public void write(@NotNull UUID uuid, @Nullable JsonObject obj) {
+        Map<UUID, JsonElement> batch = new HashMap<>();
+        batch.put(uuid, obj == null ? JsonNull.INSTANCE : obj);
+        writeAll(batch);
+    }
+
+    /**
+     * Writes all the values in one transaction, the old rows are deleted and the new ones inserted with two batched statements,
+     * which every database supports, unlike upserts. Patches are applied to the value read in the same transaction.
+     *
+     * @param batch The values to write, {@link JsonNull} means the stored value should be deleted,
+     *              and a {@link JsonArray} is a {@link DataPatch} which should be applied to the stored value
+     */
+    @Override
+    public void writeAll(@NotNull Map<UUID, JsonElement> batch) {
+        if (batch.isEmpty()) return;
+        synchronized (writer) {
+            try {
+                for (Map.Entry<UUID, JsonElement> entry : batch.entrySet()) {
+                    String uuid = entry.getKey().toString();
+                    JsonElement value = entry.getValue();
+                    if (value instanceof JsonArray patch) {
+                        value = DataPatch.fromJson(patch).apply(read(selectForWrite, entry.getKey()));
+                    }
+                    delete.setString(1, uuid);
+                    delete.addBatch();
+                    if (value instanceof JsonObject obj) {
+                        insert.setString(1, uuid);
+                        byte[] json = DataJson.toBytes(obj);
+                        insert.setString(2, new String(json, StandardCharsets.UTF_8));
+                        insert.addBatch();
+                        IOMetrics.countWritten(json.length);
+                    }
+                }
+                delete.executeBatch();
+                insert.executeBatch();
+                writer.commit();
+            } catch (SQLException | RuntimeException e) {
+                try {
+                    delete.clearBatch();
+                    insert.clearBatch();
+                    writer.rollback();
+                } catch (SQLException rollback) {
+                    e.addSuppressed(rollback);
+                }
+                throw new RuntimeException("Cannot save " + batch.size() + " entries to " + url, e);
+            }
+        }
+    }
+
+    /**
+     * Reads all the stored values in pages ordered by {@link UUID}, the reading connection is only held while a page is read,
+     * so the consumer is never called while holding it and reads can go on meanwhile.
+     * Rows which don't hold a json object, such as empty ones, are skipped.
+     */
+    @Override
+    public long loadAll(@NotNull BiConsumer<UUID, JsonObject> consumer) {
+        long bytes = 0;
+        String last = "";
+        List<String> uuids = new ArrayList<>(LOAD_PAGE_SIZE);
+        List<byte[]> values = new ArrayList<>(LOAD_PAGE_SIZE);
+        do {
+            uuids.clear();
+            values.clear();
+            synchronized (reader) {
+                try {
+                    selectPage.setString(1, last);
+                    try (ResultSet result = selectPage.executeQuery()) {
+                        while (result.next()) {
+                            uuids.add(result.getString(1));
+                            values.add(result.getString(2).getBytes(StandardCharsets.UTF_8));
+                        }
+                    }
+                } catch (SQLException e) {
+                    throw new RuntimeException("Cannot load entries from " + url, e);
+                }
+            }
+            for (int i = 0; i < uuids.size(); i++) {
+                bytes += values.get(i).length;
+                JsonObject obj = DataJson.read(values.get(i));
+                if (obj != null) consumer.accept(UUID.fromString(uuids.get(i)), obj);
+            }
+            if (!uuids.isEmpty()) last = uuids.get(uuids.size() - 1);
+        } while (uuids.size() == LOAD_PAGE_SIZE);
+        IOMetrics.countRead(bytes);
+        return bytes;
+    }
+
+    /**
+     * Creates a snapshot of a SQLite database with VACUUM INTO, which copies a consistent state of the database
+     * from the reading connection without blocking the writes. Other databases don't support snapshots.
+     *
+     * @param target   The folder of the snapshot, which must not exist yet
+     * @param previous The folder of the previous snapshot, or null if there is none
+     * @return The created snapshot
+     */
+    @Override
+    @NotNull
+    public DataSnapshot snapshot(@NotNull File target, @Nullable File previous) {
+        if (!sqlite) return DataStorage.super.snapshot(target, previous);
+        if (target.exists()) throw new IllegalArgumentException("Snapshot folder already exists: " + target);
+        SnapshotBuilder builder = new SnapshotBuilder(target, previous);
+        synchronized (reader) {
+            try (PreparedStatement statement = reader.prepareStatement("VACUUM INTO ?")) {
+                statement.setString(1, builder.prepare(DATABASE_NAME + ".db").toString());
+                statement.execute();
+                builder.copied(DATABASE_NAME + ".db");
+            } catch (SQLException | IOException e) {
+                throw new RuntimeException("Cannot create snapshot of " + url, e);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return The files of the database in the data folder, or none if the database isn't embedded
+     */
+    @Override
+    @NotNull
+    public File[] getFiles() {
+        File[] files = folder.listFiles(f -> f.isFile() && f.getName().startsWith(DATABASE_NAME + "."));
+        return files == null ? new File[0] : files;
+    }
+
+    @Override
+    public void close() {
+        try {
+            synchronized (reader) {
+                reader.close();
+            }
+            synchronized (writer) {
+                writer.close();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Cannot close database: " + url, e);
+        }
+    }
+
+    /**
+     * Loads a driver which may not be registered with {@link DriverManager}, as plugins have their own class loaders
+     */
+    private static void loadDriver(String name) {
+        try {
+            Class.forName(name);
+        } catch (ClassNotFoundException ignored) {
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SqlDataStorage{url: " + url + "}";
+    }
+}
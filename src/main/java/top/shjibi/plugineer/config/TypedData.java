@@ -0,0 +1,251 @@
+package top.shjibi.plugineer.config;
+
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import top.shjibi.plugineer.util.UUIDMap;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Data of a plugin whose entries are records or plain objects instead of {@link com.google.gson.JsonObject}s.
+ * Entries are read from and written to the storage with the {@link DataCodec} of their type,
+ * which streams the json directly into the objects when the storage supports it, such as {@link FileDataStorage}.
+ * All the entries are loaded when it's created and saved on the calling thread.
+ *
+ * @param <T> Type of the entries
+ */
+public class TypedData<T> extends Configurable<Map<UUID, T>> {
+
+    protected final Plugin plugin;
+    protected final File folder;
+    protected final File[] files;
+    protected final Map<UUID, T> data;
+    protected final String name;
+    protected final DataOptions options;
+    protected final DataCodec<T> codec;
+    protected final Set<UUID> dirty;
+    protected final DataStorage storage;
+
+    /**
+     * Creates a {@link TypedData} with the specified name and type
+     *
+     * @param plugin     {@link Plugin} that the {@link TypedData} belongs to.
+     * @param name       Name of the data
+     * @param folderPath Folder which stores all the data files.
+     * @param type       Type of the entries, a record or a class with a no-argument constructor
+     */
+    public TypedData(@NotNull Plugin plugin, @NotNull String name, @NotNull String folderPath, @NotNull Class<T> type) {
+        this(plugin, name, folderPath, type, DataOptions.defaults());
+    }
+
+    /**
+     * Creates a {@link TypedData} with the specified name, type and options,
+     * the options which load lazily or write behind are not supported
+     *
+     * @param plugin     {@link Plugin} that the {@link TypedData} belongs to.
+     * @param name       Name of the data
+     * @param folderPath Folder which stores all the data files.
+     * @param type       Type of the entries, a record or a class with a no-argument constructor
+     * @param options    Options of the data
+     */
+    public TypedData(@NotNull Plugin plugin, @NotNull String name, @NotNull String folderPath, @NotNull Class<T> type, @NotNull DataOptions options) {
+        if (options.isLazy() || options.isWriteBehind())
+            throw new IllegalArgumentException("TypedData " + name + " can't load lazily or write behind");
+        this.plugin = plugin;
+        this.name = name;
+        this.options = options;
+        this.codec = DataCodec.of(type);
+        this.folder = mkdirs(plugin, folderPath);
+        this.dirty = ConcurrentHashMap.newKeySet();
+        this.storage = options.getStorageFactory().create(folder);
+        this.files = storage.getFiles();
+        Map<UUID, T> loaded = load(folder);
+        this.data = options.isConcurrent() ? new ConcurrentHashMap<>(loaded) : loaded;
+        registerMetrics();
+    }
+
+    /**
+     * Gets the value associated with the provided {@link UUID}
+     *
+     * @param uuid The specified UUID
+     * @return The value, or null if it doesn't exist
+     */
+    @Nullable
+    public T get(@NotNull UUID uuid) {
+        return data.get(uuid);
+    }
+
+    /**
+     * Puts the {@link UUID} and value
+     *
+     * @param uuid  The specified UUID
+     * @param value The value to put
+     * @return The previous value associated with the specified UUID.
+     */
+    @Nullable
+    public T put(@NotNull UUID uuid, @NotNull T value) {
+        T previous = data.put(uuid, value);
+        dirty.add(uuid);
+        return previous;
+    }
+
+    /**
+     * Removes the value associated with the provided {@link UUID}
+     *
+     * @param uuid The specified UUID
+     * @return The removed value, or null if it didn't exist
+     */
+    @Nullable
+    public T remove(@NotNull UUID uuid) {
+        T previous = data.remove(uuid);
+        if (previous != null) dirty.add(uuid);
+        return previous;
+    }
+
+    /**
+     * Atomically replaces the value associated with the provided {@link UUID} and marks it dirty,
+     * which suits immutable types such as records
+     *
+     * @param uuid     The specified UUID
+     * @param function Function which receives the current value (or null if it doesn't exist)
+     *                 and returns the new value (or null to remove it)
+     * @return The new value associated with the provided UUID
+     */
+    @Nullable
+    public T update(@NotNull UUID uuid, @NotNull UnaryOperator<T> function) {
+        return data.compute(uuid, (key, value) -> {
+            T result = function.apply(value);
+            dirty.add(key);
+            return result;
+        });
+    }
+
+    /**
+     * Marks the value associated with the provided {@link UUID} as modified, call this after modifying a mutable value
+     *
+     * @param uuid The specified UUID
+     */
+    public void markDirty(@NotNull UUID uuid) {
+        dirty.add(uuid);
+    }
+
+    /**
+     * Checks whether the value associated with the provided {@link UUID} was modified since it was last saved
+     *
+     * @param uuid The specified UUID
+     * @return Whether the value is dirty
+     */
+    public boolean isDirty(@NotNull UUID uuid) {
+        return dirty.contains(uuid);
+    }
+
+    @Override
+    public int getPendingCount() {
+        return dirty.size();
+    }
+
+    /**
+     * Saves all the data
+     */
+    @Override
+    public void save() {
+        Set<UUID> uuids = new HashSet<>(data.keySet());
+        uuids.addAll(dirty);
+        saveAll(uuids);
+    }
+
+    /**
+     * Saves only the entries which were modified since they were last saved
+     */
+    public void saveDirty() {
+        saveAll(new ArrayList<>(dirty));
+    }
+
+    /**
+     * Saves the values associated with the provided {@link UUID}s as one batch, removed values are deleted
+     *
+     * @param uuids The specified UUIDs
+     */
+    protected void saveAll(@NotNull Collection<UUID> uuids) {
+        Map<UUID, T> batch = new HashMap<>();
+        for (UUID uuid : uuids) {
+            dirty.remove(uuid);
+            batch.put(uuid, data.get(uuid));
+        }
+        IOMetrics.Measurement measurement = getMetrics().start(IOMetrics.Operation.SAVE);
+        storage.writeAll(batch, codec);
+        measurement.finish(batch.size());
+    }
+
+    /**
+     * Saves the dirty entries and closes the storage. Should be called when the plugin is disabled.
+     */
+    public void close() {
+        saveDirty();
+        storage.close();
+    }
+
+    /**
+     * @return The codec of the entries
+     */
+    @NotNull
+    public DataCodec<T> getCodec() {
+        return codec;
+    }
+
+    /**
+     * @return The storage which persists this data
+     */
+    @NotNull
+    public DataStorage getStorage() {
+        return storage;
+    }
+
+    @Override
+    @NotNull
+    public Plugin getPlugin() {
+        return plugin;
+    }
+
+    @Override
+    @NotNull
+    public Map<UUID, T> getData() {
+        return data;
+    }
+
+    @Override
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    @NotNull
+    public File getFolder() {
+        return folder;
+    }
+
+    @Override
+    @NotNull
+    public File[] getFiles() {
+        return files;
+    }
+
+    @Override
+    @NotNull
+    protected Map<UUID, T> load(@NotNull File folder) {
+        long start = System.nanoTime();
+        IOMetrics.Measurement measurement = getMetrics().start(IOMetrics.Operation.LOAD);
+        Map<UUID, T> map = new UUIDMap<>(files.length);
+        long bytes = storage.loadAll(codec, map::put, options.getLoadParallelism());
+        measurement.finish(files.length);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        plugin.getLogger().info("Loaded " + map.size() + " entries of '" + name + "' from " + files.length
+                + " files (" + bytes + " bytes) in " + millis + " ms");
+        return map;
+    }
+}
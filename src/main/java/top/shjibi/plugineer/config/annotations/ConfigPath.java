@@ -0,0 +1,21 @@
+package top.shjibi.plugineer.config.annotations;
+
+import top.shjibi.plugineer.config.Config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Path of the value which {@link Config#bind(Class)} binds to a field or a record component.
+ * Record components without it are bound to the path of their name.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.RECORD_COMPONENT})
+public @interface ConfigPath {
+    /**
+     * The full path of the value, such as "settings.max-players"
+     */
+    String value();
+}
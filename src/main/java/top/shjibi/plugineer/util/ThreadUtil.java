@@ -0,0 +1,31 @@
+package top.shjibi.plugineer.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A utility class for threads used by background tasks
+ */
+public final class ThreadUtil {
+
+    private ThreadUtil() {
+    }
+
+    /**
+     * Creates a {@link ThreadFactory} which creates daemon threads with the given name
+     *
+     * @param name Name prefix of the threads
+     * @return The thread factory
+     */
+    @NotNull
+    public static ThreadFactory newThreadFactory(@NotNull String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
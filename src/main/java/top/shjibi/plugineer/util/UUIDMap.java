@@ -0,0 +1,307 @@
+package top.shjibi.plugineer.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * A map keyed by {@link UUID}s which stores the two halves of every key in primitive arrays with linear probing,
+ * so entries cost neither a {@link UUID} object nor a node object, and a lookup reads adjacent memory.
+ * {@link UUID}s are only created when the keys are iterated. Removed entries are filled by shifting the following entries back,
+ * so the map never contains tombstones. Null values are not allowed. This map is not thread-safe.
+ *
+ * @param <V> Type of the values
+ */
+public final class UUIDMap<V> extends AbstractMap<UUID, V> {
+
+    private static final int MINIMUM_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.7f;
+    // The key array holds two longs per slot, so twice the capacity must still be a valid array length
+    private static final int MAXIMUM_CAPACITY = 1 << 29;
+
+    // The halves of the key of slot i at 2i and 2i + 1, so both are read from the same cache line
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int threshold;
+    private int modCount;
+    private Set<Entry<UUID, V>> entrySet;
+
+    /**
+     * Creates an empty map
+     */
+    public UUIDMap() {
+        this(MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Creates an empty map which can hold the given count of entries without growing
+     *
+     * @param expectedSize Expected count of the entries
+     */
+    public UUIDMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Gets the value of the key with the given halves
+     *
+     * @param mostSignificantBits  Most significant bits of the key
+     * @param leastSignificantBits Least significant bits of the key
+     * @return The value, or null if the key doesn't exist
+     */
+    @Nullable
+    public V get(long mostSignificantBits, long leastSignificantBits) {
+        int index = indexOf(mostSignificantBits, leastSignificantBits);
+        return index < 0 ? null : value(index);
+    }
+
+    @Override
+    public V get(Object key) {
+        if (!(key instanceof UUID uuid)) return null;
+        return get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof UUID uuid && indexOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) >= 0;
+    }
+
+    @Override
+    public V put(@NotNull UUID key, @NotNull V value) {
+        Objects.requireNonNull(value, "value");
+        long most = key.getMostSignificantBits();
+        long least = key.getLeastSignificantBits();
+        int index = hash(most, least) & mask;
+        while (values[index] != null) {
+            if (keys[index << 1] == most && keys[(index << 1) + 1] == least) {
+                V previous = value(index);
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index << 1] = most;
+        keys[(index << 1) + 1] = least;
+        values[index] = value;
+        modCount++;
+        if (++size > threshold && values.length < MAXIMUM_CAPACITY) allocate(values.length << 1);
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        if (!(key instanceof UUID uuid)) return null;
+        int index = indexOf(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        if (index < 0) return null;
+        V previous = value(index);
+        removeAt(index, -1, null);
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        if (size == 0) return;
+        Arrays.fill(values, null);
+        size = 0;
+        modCount++;
+    }
+
+    @NotNull
+    @Override
+    public Set<Entry<UUID, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<UUID, V>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public void clear() {
+                    UUIDMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private int indexOf(long most, long least) {
+        int index = hash(most, least) & mask;
+        while (values[index] != null) {
+            if (keys[index << 1] == most && keys[(index << 1) + 1] == least) return index;
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the entry at the index and shifts the following entries of the same run back into the gap
+     *
+     * @param index     Index of the entry
+     * @param iterated  Index an iterator going from the last slot to the first is at, or -1
+     * @param forgotten Collects the entries the iterator would skip, as they're shifted from before its index to after it
+     */
+    private void removeAt(int index, int iterated, @Nullable List<Entry<UUID, V>> forgotten) {
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = hash(keys[next << 1], keys[(next << 1) + 1]) & mask;
+            // The entry can fill the gap if its home slot isn't between the gap and itself
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                if (forgotten != null && next < iterated && gap >= iterated) {
+                    forgotten.add(new SimpleImmutableEntry<>(new UUID(keys[next << 1], keys[(next << 1) + 1]), value(next)));
+                }
+                keys[gap << 1] = keys[next << 1];
+                keys[(gap << 1) + 1] = keys[(next << 1) + 1];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+        size--;
+        modCount++;
+    }
+
+    private void allocate(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity << 1];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+        if (oldValues == null) return;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) continue;
+            long most = oldKeys[i << 1];
+            long least = oldKeys[(i << 1) + 1];
+            int index = hash(most, least) & mask;
+            while (values[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index << 1] = most;
+            keys[(index << 1) + 1] = least;
+            values[index] = oldValues[i];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int index) {
+        return (V) values[index];
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MINIMUM_CAPACITY;
+        while (capacity < MAXIMUM_CAPACITY && capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(long most, long least) {
+        long hash = most * 0x9E3779B97F4A7C15L ^ least;
+        hash ^= hash >>> 33;
+        hash *= 0xC2B2AE3D27D4EB4FL;
+        return (int) (hash ^ hash >>> 29);
+    }
+
+    /**
+     * Iterates from the last slot to the first, so entries shifted back by a removal were either already returned,
+     * or wrapped around from the start of the arrays and are returned at the end.
+     * The next slot is only searched once it's needed, as a removal can move the entries below the current slot.
+     */
+    private final class EntryIterator implements Iterator<Entry<UUID, V>> {
+
+        // Slot of the last returned entry, the slots from it to the end were visited
+        private int index = values.length;
+        // Slot of the next entry, or -1 if it wasn't searched since the last move
+        private int next = -1;
+        private int current = -1;
+        private int expectedModCount = modCount;
+        @Nullable
+        private List<Entry<UUID, V>> forgotten;
+        @Nullable
+        private Entry<UUID, V> currentForgotten;
+
+        private int findNext() {
+            if (next < 0) {
+                for (int i = index - 1; i >= 0; i--) {
+                    if (values[i] != null) {
+                        next = i;
+                        break;
+                    }
+                }
+            }
+            return next;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return findNext() >= 0 || (forgotten != null && !forgotten.isEmpty());
+        }
+
+        @Override
+        public Entry<UUID, V> next() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (findNext() >= 0) {
+                current = next;
+                index = next;
+                next = -1;
+                currentForgotten = null;
+                return new MapEntry(current);
+            }
+            if (forgotten == null || forgotten.isEmpty()) throw new NoSuchElementException();
+            current = -1;
+            currentForgotten = forgotten.remove(forgotten.size() - 1);
+            return currentForgotten;
+        }
+
+        @Override
+        public void remove() {
+            if (modCount != expectedModCount) throw new ConcurrentModificationException();
+            if (current >= 0) {
+                if (forgotten == null) forgotten = new ArrayList<>();
+                removeAt(current, current, forgotten);
+                current = -1;
+                // Entries below the removed slot may have been shifted
+                next = -1;
+            } else if (currentForgotten != null) {
+                UUIDMap.this.remove(currentForgotten.getKey());
+                currentForgotten = null;
+                next = -1;
+            } else {
+                throw new IllegalStateException();
+            }
+            expectedModCount = modCount;
+        }
+    }
+
+    /**
+     * An entry which writes its value through to the map
+     */
+    private final class MapEntry extends SimpleEntry<UUID, V> {
+
+        private MapEntry(int index) {
+            super(new UUID(keys[index << 1], keys[(index << 1) + 1]), value(index));
+        }
+
+        @Override
+        public V setValue(V value) {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package top.shjibi.plugineer.config;
+
+import org.junit.jupiter.api.Test;
+import top.shjibi.plugineer.config.annotations.ConfigPath;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigBinderTest {
+
+    private static final ConfigSnapshot EMPTY = new ConfigSnapshot(Map.of(), 0);
+
+    private static ConfigSnapshot snapshot(Map<String, Object> values) {
+        return new ConfigSnapshot(values, 0);
+    }
+
+    record Spawn(@ConfigPath("spawn.world") String world, @ConfigPath("spawn.radius") int radius, double scale, List<?> worlds) {
+    }
+
+    static class Base {
+        @ConfigPath("base")
+        private String base;
+    }
+
+    static class Settings extends Base {
+        @ConfigPath("name")
+        private final String name;
+        @ConfigPath("limits.players")
+        private final int players;
+        @ConfigPath("limits.rate")
+        private long rate = 20;
+        @ConfigPath("enabled")
+        private boolean enabled;
+
+        Settings() {
+            // Not constants, so reads of the fields aren't folded by the compiler
+            this.name = String.valueOf("initial");
+            this.players = Integer.parseInt("10");
+        }
+    }
+
+    static class NoConstructor {
+        @ConfigPath("a")
+        private int a;
+
+        NoConstructor(int a) {
+            this.a = a;
+        }
+    }
+
+    @Test
+    void recordComponentsAreBoundFromValuesThenDefaults() {
+        ConfigSnapshot values = snapshot(Map.of("spawn.world", "nether", "scale", 1.5, "worlds", List.of("a", "b")));
+        ConfigSnapshot defaults = snapshot(Map.of("spawn.world", "world", "spawn.radius", 48));
+        Spawn spawn = ConfigBinder.of(Spawn.class).bind(values, defaults);
+        assertEquals(new Spawn("nether", 48, 1.5, List.of("a", "b")), spawn);
+    }
+
+    @Test
+    void missingPrimitiveComponentIsRejected() {
+        ConfigSnapshot values = snapshot(Map.of("spawn.world", "world", "scale", 1.0));
+        assertThrows(IllegalArgumentException.class, () -> ConfigBinder.of(Spawn.class).bind(values, EMPTY));
+        // Can't be converted either
+        ConfigSnapshot wrongType = snapshot(Map.of("spawn.radius", "far", "scale", 1.0));
+        assertThrows(IllegalArgumentException.class, () -> ConfigBinder.of(Spawn.class).bind(wrongType, EMPTY));
+    }
+
+    @Test
+    void fieldsAreSetIncludingFinalAndInheritedOnes() {
+        ConfigSnapshot values = snapshot(Map.of("name", "server", "limits.players", 64L, "enabled", true, "base", "b"));
+        Settings settings = ConfigBinder.of(Settings.class).bind(values, EMPTY);
+        assertEquals("server", settings.name);
+        assertEquals(64, settings.players);
+        assertTrue(settings.enabled);
+        assertEquals("b", ((Base) settings).base);
+        // Missing in both, so it keeps the value of the constructor
+        assertEquals(20, settings.rate);
+    }
+
+    @Test
+    void missingFieldsKeepTheirInitialValues() {
+        Settings settings = ConfigBinder.of(Settings.class).bind(EMPTY, snapshot(Map.of("limits.rate", 5)));
+        assertEquals("initial", settings.name);
+        assertEquals(10, settings.players);
+        assertEquals(5, settings.rate);
+        assertFalse(settings.enabled);
+    }
+
+    @Test
+    void bindersAreCompiledOnce() {
+        assertSame(ConfigBinder.of(Settings.class), ConfigBinder.of(Settings.class));
+        assertThrows(IllegalArgumentException.class, () -> ConfigBinder.of(NoConstructor.class));
+    }
+}
@@ -0,0 +1,114 @@
+package top.shjibi.plugineer.config;
+
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigLayerTest {
+
+    /**
+     * Parses the content as a whole, as the sections of a layer must read
+     */
+    private static Map<String, Object> parse(String content) throws InvalidConfigurationException {
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.loadFromString(content);
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String key : yaml.getKeys(false)) {
+            values.put(key, ConfigSnapshot.copy(yaml.get(key)));
+        }
+        return values;
+    }
+
+    private static Map<String, Object> read(ConfigLayer layer) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String key : layer.getKeys()) {
+            values.put(key, layer.get(key));
+        }
+        return values;
+    }
+
+    /**
+     * Checks that the layer reads what parsing the whole content reads, or fails like it
+     *
+     * @return The layer, before any of its sections is read
+     */
+    private static ConfigLayer assertSplitLikeParse(String content) {
+        Map<String, Object> expected;
+        try {
+            expected = parse(content);
+        } catch (InvalidConfigurationException e) {
+            assertThrows(RuntimeException.class, () -> read(ConfigLayer.of("test", content)), content);
+            return null;
+        }
+        ConfigLayer layer = ConfigLayer.of("test", content);
+        // Read from another layer, so the returned one tells whether the content was split
+        assertEquals(expected, read(ConfigLayer.of("test", content)), content);
+        assertEquals(expected.keySet(), layer.getKeys(), content);
+        return layer;
+    }
+
+    private static boolean isSplit(ConfigLayer layer) {
+        return layer.getParsedCount() == 0;
+    }
+
+    @Test
+    void sectionsAreParsedWhenRead() {
+        ConfigLayer layer = assertSplitLikeParse("a: 1\nb:\n  c: [1, 2]\n  d: x\n");
+        assertNotNull(layer);
+        assertTrue(isSplit(layer));
+        assertEquals(Map.of("c", List.of(1, 2), "d", "x"), layer.get("b"));
+        assertEquals(1, layer.getParsedCount());
+    }
+
+    @Test
+    void multiLineQuotedScalars() {
+        assertTrue(isSplit(assertSplitLikeParse("a: \"first\n  b: not a key\"\nc: 'it''s\n  d: x'\ne: 1\n")));
+        assertSplitLikeParse("a: \"first\nb: not a key\"\ne: 1\n");
+        assertSplitLikeParse("a: 'first\nb: not a key'\ne: 1\n");
+        assertSplitLikeParse("a: \"escaped \\\" quote\n  b: 1\"\nc: 2\n");
+        assertSplitLikeParse("a: plain \"not quoted\nb: 1\n");
+    }
+
+    @Test
+    void blockScalars() {
+        assertTrue(isSplit(assertSplitLikeParse("text: |\n  line\n  key: not a key\n\n  # not a comment\nnext: 1\n")));
+        assertTrue(isSplit(assertSplitLikeParse("folded: >-\n  some\n\n  more\nafter: [1]\n")));
+        assertSplitLikeParse("nested:\n  text: |+\n    a: 1\n\n  other: 2\nlast: 3\n");
+        assertSplitLikeParse("list:\n- |\n  a: 1\n- b\nnext: 2\n");
+    }
+
+    @Test
+    void flowCollectionsAcrossLines() {
+        assertTrue(isSplit(assertSplitLikeParse("flow: {a: 1,\n  b: [2, 3]}\nnext: 2\n")));
+        assertSplitLikeParse("flow: {a: 1,\nb: 2}\nnext: 3\n");
+        assertSplitLikeParse("flow: [1,\n2]\nnext: 3\n");
+        assertSplitLikeParse("flow: {a: \"}\",\n  b: '['}\nnext: 3\n");
+    }
+
+    @Test
+    void anchorsAreParsedAsAWhole() {
+        ConfigLayer layer = assertSplitLikeParse("base: &base\n  x: 1\nderived:\n  <<: *base\n  y: 2\nlist: &l [1, 2]\ncopy: *l\n");
+        assertNotNull(layer);
+        assertFalse(isSplit(layer));
+        assertSplitLikeParse("a:\n  - &item x\nb:\n  - *item\n");
+    }
+
+    @Test
+    void comments() {
+        assertTrue(isSplit(assertSplitLikeParse("# header\na: 1 # inline: not a key\n# b: commented\nc:\n  # d: nested comment\n  e: \"# not a comment\"\n")));
+        assertSplitLikeParse("a: x#not a comment\nb: 'x # quoted'\n#c: 1\n");
+    }
+
+    @Test
+    void duplicateKeys() {
+        assertSplitLikeParse("a: 1\nb: 2\na: 3\n");
+        assertSplitLikeParse("a:\n  x: 1\n  x: 2\nb: 3\n");
+        assertSplitLikeParse("a: 1\nb:\n  a: 2\n");
+    }
+}
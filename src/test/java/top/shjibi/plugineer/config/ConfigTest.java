@@ -0,0 +1,180 @@
+package top.shjibi.plugineer.config;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigTest {
+
+    @TempDir
+    File folder;
+    private TestPlugin plugin;
+
+    @BeforeEach
+    void setUp() {
+        TestServer.install();
+        plugin = new TestPlugin(folder);
+    }
+
+    /**
+     * Creates a config whose file holds the content
+     */
+    private Config config(String content) throws IOException {
+        Config config = new Config(plugin, "config");
+        write(config, content);
+        config.reload();
+        return config;
+    }
+
+    private static void write(Config config, String content) throws IOException {
+        Files.writeString(config.getFiles()[0].toPath(), content);
+    }
+
+    private static <T> T onOtherThread(Callable<T> task) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            return executor.submit(task).get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void modificationsArePublishedOncePerTick() throws Exception {
+        plugin.enable();
+        Config config = config("a: 1\n");
+        ConfigSnapshot published = config.getSnapshot();
+        config.setConfig("a", 2);
+        config.setConfig("b.c", 3);
+        // Other threads keep reading the published snapshot, they never copy the configuration
+        assertSame(published, onOtherThread(config::getSnapshot));
+        assertEquals(1, TestServer.tick());
+        ConfigSnapshot next = onOtherThread(config::getSnapshot);
+        assertEquals(published.getVersion() + 1, next.getVersion());
+        assertEquals(2, next.get("a"));
+        assertEquals(3, next.get("b.c"));
+        // A snapshot never changes once it's taken
+        assertEquals(1, published.get("a"));
+        assertFalse(published.contains("b.c"));
+    }
+
+    @Test
+    void mainThreadSeesItsOwnModifications() throws Exception {
+        plugin.enable();
+        Config config = config("a: 1\n");
+        config.setConfig("a", 2);
+        assertEquals("2", config.getConfig("a"));
+        ConfigSnapshot published = config.getSnapshot();
+        assertSame(published, onOtherThread(config::getSnapshot));
+        TestServer.tick();
+        assertSame(published, config.getSnapshot(), "Nothing is left to publish");
+    }
+
+    @Test
+    void modificationsArePublishedAtOnceWithoutATick() throws Exception {
+        // A disabled plugin can't schedule the publication
+        Config config = config("a: 1\n");
+        config.setConfig("a", 2);
+        assertEquals(2, onOtherThread(() -> config.getSnapshot().get("a")));
+        assertEquals(0, TestServer.tick());
+    }
+
+    @Test
+    void reloadReplacesTheSnapshot() throws Exception {
+        Config config = config("a: 1\nb: x\n");
+        ConfigSnapshot before = config.getSnapshot();
+        write(config, "a: 2\n");
+        ConfigSnapshot after = config.reloadAsync().get(10, TimeUnit.SECONDS);
+        assertSame(after, config.getSnapshot());
+        assertTrue(after.getVersion() > before.getVersion());
+        assertEquals(2, after.get("a"));
+        assertFalse(after.contains("b"));
+        assertEquals(1, before.get("a"));
+        assertEquals("x", before.get("b"));
+    }
+
+    @Test
+    void keysAreResolvedAgainAfterModifications() throws Exception {
+        Config config = config("a: 1\n");
+        ConfigKey<Integer> a = config.getKey("a", Integer.class);
+        ConfigKey<Long> asLong = config.getKey("a", Long.class);
+        ConfigKey<Integer> missing = config.getKey("missing", Integer.class, 7);
+        assertEquals(1, a.get());
+        assertEquals(1L, asLong.get());
+        assertEquals(7, missing.get());
+        config.setConfig("a", 2);
+        assertEquals(2, a.get());
+        assertEquals(2L, asLong.get());
+        write(config, "a: 3\nmissing: 4\n");
+        config.reload();
+        assertEquals(3, a.get());
+        assertEquals(4, missing.get());
+        // Can't be converted, and there's no default value
+        config.setConfig("a", "text");
+        assertNull(a.get());
+        assertEquals(7, config.getKey("a", Integer.class, 7).get());
+    }
+
+    @Test
+    void boundInstanceIsReplacedWithTheSnapshot() throws Exception {
+        Config config = config("spawn:\n  world: nether\n  radius: 8\nscale: 2.0\nworlds: [a]\n");
+        ConfigBinderTest.Spawn spawn = config.bind(ConfigBinderTest.Spawn.class);
+        assertEquals(new ConfigBinderTest.Spawn("nether", 8, 2.0, List.of("a")), spawn);
+        assertSame(spawn, config.bind(ConfigBinderTest.Spawn.class));
+        config.setConfig("spawn.radius", 16);
+        assertEquals(16, config.bind(ConfigBinderTest.Spawn.class).radius());
+        assertEquals(8, spawn.radius());
+    }
+
+    @Test
+    void savesWithinTheWindowAreCoalesced() throws Exception {
+        Config config = config("a: 1\n");
+        config.setConfig("a", 2);
+        CompletableFuture<Void> save = config.saveAsync();
+        config.setConfig("b", 3);
+        assertSame(save, config.saveAsync());
+        config.flush();
+        assertTrue(save.isDone());
+        assertEquals(1, config.getMetrics().get(IOMetrics.Operation.SAVE).count());
+        YamlConfiguration saved = new YamlConfiguration();
+        saved.load(config.getFiles()[0]);
+        assertEquals(2, saved.get("a"));
+        assertEquals(3, saved.get("b"));
+        // Requested after the write started, so it writes again
+        CompletableFuture<Void> next = config.saveAsync();
+        assertNotSame(save, next);
+        next.get(10, TimeUnit.SECONDS);
+        assertEquals(2, config.getMetrics().get(IOMetrics.Operation.SAVE).count());
+    }
+
+    @Test
+    void flushWritesTheModificationsOfTheTick() throws Exception {
+        plugin.enable();
+        Config config = config("a: 1\n");
+        config.setConfig("a", 2);
+        config.saveAsync();
+        // Before the end of the tick which would publish the modification
+        config.flush();
+        YamlConfiguration saved = new YamlConfiguration();
+        saved.load(config.getFiles()[0]);
+        assertEquals(2, saved.get("a"));
+    }
+
+    @Test
+    void failedReloadKeepsTheSnapshot() throws Exception {
+        Config config = config("a: 1\n");
+        ConfigSnapshot before = config.getSnapshot();
+        write(config, "a: [1\n");
+        assertThrows(RuntimeException.class, config::reload);
+        assertSame(before, config.getSnapshot());
+    }
+}
@@ -0,0 +1,217 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataCacheTest {
+
+    private final Map<UUID, JsonObject> evicted = new LinkedHashMap<>();
+
+    private DataCache cache(long maximumSize) {
+        return new DataCache(maximumSize, Long.MAX_VALUE, null, evicted::put);
+    }
+
+    private static JsonObject value(int n) {
+        JsonObject obj = new JsonObject();
+        obj.addProperty("n", n);
+        return obj;
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void slowLoadDoesNotBlockOtherEntries() throws Exception {
+        DataCache cache = cache(100);
+        UUID loaded = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        cache.put(other, value(1));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<JsonObject> load = executor.submit(() -> cache.compute(loaded, key -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return value(2);
+            }, (key, obj) -> obj));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // Would wait for the load if it held the lock
+            assertEquals(value(1), cache.get(other));
+            cache.put(UUID.randomUUID(), value(3));
+            assertFalse(cache.containsKey(loaded));
+            release.countDown();
+            assertEquals(value(2), await(load));
+            assertEquals(value(2), cache.get(loaded));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentLoadsOfAKeyLoadOnce() throws Exception {
+        DataCache cache = cache(100);
+        UUID uuid = UUID.randomUUID();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<JsonObject>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> cache.compute(uuid, key -> {
+                    loads.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return value(1);
+                }, (key, obj) -> obj)));
+            }
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<JsonObject> future : futures) {
+                assertEquals(value(1), await(future));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void valueLoadedWhileModifiedIsLoadedAgain() throws Exception {
+        DataCache cache = cache(100);
+        UUID uuid = UUID.randomUUID();
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<JsonObject> load = executor.submit(() -> cache.compute(uuid, key -> {
+                if (loads.incrementAndGet() > 1) return value(2);
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return value(1);
+            }, (key, obj) -> obj));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // E.g. a removal which isn't written yet, the first load may have read the stored value before it
+            cache.compute(uuid, (key, obj) -> null);
+            release.countDown();
+            assertEquals(value(2), await(load));
+            assertEquals(2, loads.get());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        DataCache cache = cache(100);
+        UUID uuid = UUID.randomUUID();
+        assertThrows(IllegalStateException.class, () -> cache.compute(uuid, key -> {
+            throw new IllegalStateException("Cannot read");
+        }, (key, obj) -> obj));
+        assertEquals(value(1), cache.compute(uuid, key -> value(1), (key, obj) -> obj));
+    }
+
+    @Test
+    void iterationIsNotAffectedByAccesses() {
+        DataCache cache = cache(100);
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            UUID uuid = UUID.randomUUID();
+            uuids.add(uuid);
+            cache.put(uuid, value(i));
+        }
+        List<UUID> iterated = new ArrayList<>();
+        // A lookup reorders the entries, and an insertion may evict one
+        for (UUID uuid : cache.keySet()) {
+            cache.get(uuid);
+            cache.put(UUID.randomUUID(), value(-1));
+            iterated.add(uuid);
+        }
+        assertEquals(uuids, iterated);
+        assertEquals(20, cache.keySnapshot().size());
+        assertTrue(cache.keySnapshot().containsAll(uuids));
+    }
+
+    @Test
+    void leastRecentlyUsedEntriesAreEvicted() {
+        DataCache cache = cache(3);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID(), d = UUID.randomUUID();
+        cache.put(a, value(1));
+        cache.put(b, value(2));
+        cache.put(c, value(3));
+        // Now b is the least recently used
+        cache.get(a);
+        cache.put(d, value(4));
+        assertEquals(Map.of(b, value(2)), evicted);
+        assertEquals(List.of(c, a, d), cache.keySnapshot());
+        assertEquals(new CacheStats(0, 0, 1, 3, 3), cache.stats());
+    }
+
+    @Test
+    void entriesAreEvictedOverTheWeight() {
+        DataCache cache = new DataCache(100, 10, obj -> obj.get("n").getAsInt(), evicted::put);
+        UUID a = UUID.randomUUID(), b = UUID.randomUUID(), c = UUID.randomUUID();
+        cache.put(a, value(4));
+        cache.put(b, value(4));
+        cache.put(c, value(5));
+        assertEquals(Set.of(a), evicted.keySet());
+        // Heavier than the limit, it's kept as it was just put
+        UUID heavy = UUID.randomUUID();
+        cache.put(heavy, value(20));
+        assertEquals(List.of(heavy), cache.keySnapshot());
+        assertEquals(20, cache.stats().weight());
+        // Replacing a value replaces its weight
+        cache.put(heavy, value(2));
+        assertEquals(2, cache.stats().weight());
+    }
+
+    @Test
+    void pinnedEntriesAreNeverEvicted() {
+        DataCache cache = cache(2);
+        UUID pinned = UUID.randomUUID();
+        cache.pin(pinned);
+        cache.put(pinned, value(0));
+        List<UUID> others = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            UUID uuid = UUID.randomUUID();
+            others.add(uuid);
+            cache.put(uuid, value(i));
+        }
+        assertTrue(cache.containsKey(pinned));
+        assertFalse(evicted.containsKey(pinned));
+        assertEquals(List.of(others.get(0), others.get(1)), List.copyOf(evicted.keySet()));
+        // Over the limit while every other entry is pinned or was just put
+        cache.pin(others.get(2));
+        UUID next = UUID.randomUUID();
+        cache.put(next, value(4));
+        assertEquals(3, cache.size());
+        cache.unpin(pinned);
+        assertFalse(cache.isPinned(pinned));
+        cache.put(UUID.randomUUID(), value(5));
+        assertTrue(evicted.containsKey(pinned));
+        assertTrue(evicted.containsKey(next));
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,120 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataIndexTest {
+
+    private static JsonObject kills(Number kills) {
+        JsonObject stats = new JsonObject();
+        stats.addProperty("kills", kills);
+        JsonObject obj = new JsonObject();
+        obj.add("stats", stats);
+        return obj;
+    }
+
+    private static DataIndex index() {
+        return new DataIndex("kills", "stats.kills");
+    }
+
+    /**
+     * @return UUIDs whose order is the order of the numbers, so ties are predictable
+     */
+    private static UUID uuid(int n) {
+        return new UUID(0, n);
+    }
+
+    @Test
+    void queriesFollowTheValues() {
+        DataIndex index = index();
+        index.update(uuid(1), kills(5));
+        index.update(uuid(2), kills(12.5));
+        index.update(uuid(3), kills(-1));
+        index.update(uuid(4), kills(5));
+        assertEquals(List.of(new DataIndex.Entry(uuid(2), 12.5), new DataIndex.Entry(uuid(4), 5)), index.top(2));
+        assertEquals(4, index.top(10).size());
+        assertEquals(List.of(), index.top(0));
+        assertEquals(List.of(new DataIndex.Entry(uuid(1), 5), new DataIndex.Entry(uuid(4), 5)), index.range(0, 5));
+        assertEquals(List.of(), index.range(6, 12));
+        assertEquals(3, index.count(-1, 5));
+        assertEquals(0, index.count(5, -1));
+        assertEquals(1, index.rank(uuid(2)));
+        assertEquals(4, index.rank(uuid(3)));
+        assertEquals(new DataIndex.Entry(uuid(3), -1), index.get(4));
+        assertNull(index.get(0));
+        assertNull(index.get(5));
+    }
+
+    @Test
+    void updatesMoveAndRemoveEntries() {
+        DataIndex index = index();
+        index.update(uuid(1), kills(1));
+        index.update(uuid(2), kills(2));
+        index.update(uuid(1), kills(3));
+        assertEquals(1, index.rank(uuid(1)));
+        assertEquals(2, index.size());
+        index.update(uuid(1), null);
+        assertEquals(-1, index.rank(uuid(1)));
+        assertNull(index.getValue(uuid(1)));
+        // Not a number, or missing
+        JsonObject text = new JsonObject();
+        text.addProperty("stats", "none");
+        index.update(uuid(2), text);
+        index.update(uuid(3), new JsonObject());
+        index.update(uuid(4), kills(Double.NaN));
+        assertEquals(0, index.size());
+        assertEquals(List.of(), index.top(1));
+    }
+
+    @Test
+    void valuesOfTheStorageDoNotReplaceUpdates() {
+        DataIndex index = index();
+        index.update(uuid(1), kills(10));
+        index.updateIfAbsent(uuid(1), kills(1));
+        index.updateIfAbsent(uuid(2), kills(2));
+        assertEquals(10, index.getValue(uuid(1)));
+        assertEquals(2, index.getValue(uuid(2)));
+    }
+
+    @Test
+    void negativeCountIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> index().top(-1));
+    }
+
+    @Test
+    void matchesASortedList() {
+        DataIndex index = index();
+        Map<UUID, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            UUID uuid = uuid(random.nextInt(300));
+            if (random.nextInt(4) == 0) {
+                index.update(uuid, null);
+                expected.remove(uuid);
+            } else {
+                int value = random.nextInt(100);
+                index.update(uuid, kills(value));
+                expected.put(uuid, value);
+            }
+        }
+        List<DataIndex.Entry> sorted = new ArrayList<>();
+        expected.forEach((uuid, value) -> sorted.add(new DataIndex.Entry(uuid, value)));
+        sorted.sort(Comparator.comparingDouble(DataIndex.Entry::value).thenComparing(DataIndex.Entry::uuid));
+        List<DataIndex.Entry> descending = new ArrayList<>(sorted);
+        Collections.reverse(descending);
+        assertEquals(sorted.size(), index.size());
+        assertEquals(descending, index.top(sorted.size()));
+        assertEquals(descending.subList(0, 10), index.top(10));
+        assertEquals(sorted.stream().filter(e -> e.value() >= 20 && e.value() <= 40).toList(), index.range(20, 40));
+        assertEquals(sorted.stream().filter(e -> e.value() >= 20 && e.value() <= 40).count(), index.count(20, 40));
+        for (int rank = 1; rank <= descending.size(); rank++) {
+            DataIndex.Entry entry = descending.get(rank - 1);
+            assertEquals(entry, index.get(rank));
+            assertEquals(rank, index.rank(entry.uuid()));
+        }
+    }
+}
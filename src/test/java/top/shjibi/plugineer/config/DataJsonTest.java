@@ -0,0 +1,86 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataJsonTest {
+
+    private static JsonObject read(String json) {
+        return DataJson.read(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JsonObject readStrict(String json) {
+        return DataJson.readStrict(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void writtenDocumentsAreReadBack() {
+        JsonObject obj = new JsonObject();
+        obj.addProperty("name", "<a & b>");
+        obj.add("missing", null);
+        obj.addProperty("n", 1.5);
+        assertEquals(obj.toString(), new String(DataJson.toBytes(obj), StandardCharsets.UTF_8));
+        assertEquals(obj, DataJson.read(DataJson.toBytes(obj)));
+    }
+
+    @Test
+    void emptyOrOtherDocumentsAreNull() {
+        assertNull(read(""));
+        assertNull(read("  \n"));
+        assertNull(read("[1, 2]"));
+        assertNotNull(DataJson.readArray("[1, 2]".getBytes(StandardCharsets.UTF_8)));
+        assertNotNull(read(" {\"a\": 1}\n"));
+    }
+
+    @Test
+    void trailingContentIsRejected() {
+        assertThrows(JsonSyntaxException.class, () -> read("{\"a\": 1}garbage"));
+        assertThrows(JsonSyntaxException.class, () -> read("{\"a\": 1} {\"b\": 2}"));
+        assertThrows(JsonSyntaxException.class, () -> readStrict("{\"a\": 1}garbage"));
+        assertThrows(JsonSyntaxException.class, () -> DataJson.readArray("[1] ]".getBytes(StandardCharsets.UTF_8)));
+        DataCodec<Point> codec = DataCodec.of(Point.class);
+        assertThrows(JsonSyntaxException.class, () -> DataJson.read(new StringReader("{\"x\": 1, \"y\": 2} 3"), codec));
+    }
+
+    /**
+     * Files edited by hand are read like JsonParser read them
+     */
+    @Test
+    void documentsAreReadLeniently() {
+        for (String json : new String[]{"{a: 1}", "{\"a\": 1 // comment\n}", "# comment\n{\"a\": 'b'}"}) {
+            assertEquals(JsonParser.parseString(json), read(json), json);
+        }
+        assertThrows(JsonSyntaxException.class, () -> read("{\"a\": 1"));
+    }
+
+    @Test
+    void recordsAreReadStrictly() {
+        assertThrows(JsonSyntaxException.class, () -> readStrict("{a: 1}"));
+        assertThrows(JsonSyntaxException.class, () -> readStrict("{\"a\": 1 // comment\n}"));
+        assertThrows(JsonSyntaxException.class, () -> readStrict("{\"a\": 'b'}"));
+        assertThrows(JsonSyntaxException.class, () -> readStrict("{\"a\": 1"));
+        assertThrows(JsonSyntaxException.class, () -> DataJson.readArray("[1,]".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(IllegalArgumentException.class, () -> DataTransfer.parse("{uuid: 1}", 1));
+        assertEquals(read("{\"a\": 1}"), readStrict("{\"a\": 1}"));
+    }
+
+    @Test
+    void codecReadsEmptyAndLenientDocuments() throws IOException {
+        DataCodec<Point> codec = DataCodec.of(Point.class);
+        assertNull(DataJson.read(new StringReader(""), codec));
+        assertNull(DataJson.read(new StringReader(" \n"), codec));
+        assertNull(DataJson.read(new StringReader("null"), codec));
+        assertEquals(new Point(1, 2), DataJson.read(new StringReader("{x: 1, 'y': 2} // edited"), codec));
+    }
+
+    record Point(int x, int y) {
+    }
+}
@@ -0,0 +1,117 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataPatchTest {
+
+    private static final String[] PATHS = {"a", "a.b", "a.b.c", "a.d", "e", "e.f"};
+
+    private static JsonObject parse(String json) {
+        return DataJson.read(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes a patch the way a storage persists it and reads it back
+     */
+    private static DataPatch replay(DataPatch patch) {
+        JsonArray json = DataJson.readArray(DataJson.toBytes(patch.toJson()));
+        assertNotNull(json);
+        return DataPatch.fromJson(json);
+    }
+
+    private static DataPatch randomPatch(Random random) {
+        DataPatch patch = DataPatch.create();
+        int operations = 1 + random.nextInt(4);
+        for (int i = 0; i < operations; i++) {
+            String path = PATHS[random.nextInt(PATHS.length)];
+            switch (random.nextInt(6)) {
+                case 0 -> patch.set(path, random.nextInt(100));
+                case 1 -> patch.set(path, "s" + random.nextInt(10));
+                case 2 -> patch.set(path, random.nextInt(8) / 4.0);
+                case 3 -> patch.increment(path, random.nextInt(10) - 3);
+                case 4 -> patch.increment(path, random.nextInt(10) / 10.0);
+                default -> patch.remove(path);
+            }
+        }
+        return patch;
+    }
+
+    @Test
+    void operationsApplyInOrder() {
+        JsonObject obj = parse("{\"stats\":{\"kills\":4},\"name\":\"a\",\"rank\":\"x\"}");
+        DataPatch.create()
+                .increment("stats.kills", 1)
+                .set("stats.deaths", 2)
+                .set("home.world", "nether")
+                .remove("rank")
+                .remove("missing.path")
+                .set("name", "b")
+                .apply(obj);
+        assertEquals(parse("{\"stats\":{\"kills\":5,\"deaths\":2},\"name\":\"b\",\"home\":{\"world\":\"nether\"}}"), obj);
+    }
+
+    @Test
+    void incrementsAreExact() {
+        JsonObject obj = new JsonObject();
+        DataPatch.create().increment("n", 0.1).increment("n", 0.2).increment("count", 3).increment("count", 2.0).apply(obj);
+        assertEquals(new JsonPrimitive(0.3), obj.get("n"));
+        // Whole results stay integers, so counters don't turn into decimals
+        assertEquals("5", obj.get("count").toString());
+    }
+
+    @Test
+    void setReplacesWhatIsNotAnObject() {
+        JsonObject obj = parse("{\"a\":3}");
+        DataPatch.create().set("a.b", 1).apply(obj);
+        assertEquals(parse("{\"a\":{\"b\":1}}"), obj);
+    }
+
+    @Test
+    void unknownOperationIsRejected() {
+        JsonArray json = new JsonArray();
+        JsonArray operation = new JsonArray();
+        operation.add("mul");
+        operation.add("a");
+        operation.add(2);
+        json.add(operation);
+        assertThrows(IllegalArgumentException.class, () -> DataPatch.fromJson(json));
+    }
+
+    /**
+     * Persisted patches replayed on the persisted document give the document the patches built in memory,
+     * whether they're replayed one by one or appended into one patch
+     */
+    @Test
+    void replayMatchesInMemoryApply() {
+        Random random = new Random(8);
+        for (int round = 0; round < 2000; round++) {
+            JsonObject base = DataPatch.create().set("a.b.c", random.nextInt(5)).set("e", "x").apply(null);
+            List<DataPatch> patches = new ArrayList<>();
+            for (int i = random.nextInt(6); i > 0; i--) {
+                patches.add(randomPatch(random));
+            }
+            JsonObject memory = base.deepCopy();
+            JsonObject replayed = DataJson.read(DataJson.toBytes(base));
+            DataPatch appended = DataPatch.create();
+            for (DataPatch patch : patches) {
+                memory = patch.apply(memory);
+                replayed = replay(patch).apply(replayed);
+                appended.append(patch);
+            }
+            JsonObject merged = replay(appended).apply(DataJson.read(DataJson.toBytes(base)));
+            String expected = memory.toString();
+            assertEquals(expected, replayed.toString(), "Replayed one by one: " + patches);
+            assertEquals(expected, merged.toString(), "Replayed as one patch: " + appended);
+        }
+    }
+}
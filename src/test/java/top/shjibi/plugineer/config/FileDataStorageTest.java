@@ -0,0 +1,154 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileDataStorageTest {
+
+    @TempDir
+    File folder;
+
+    @BeforeEach
+    void setUp() {
+        // Moved files are logged
+        TestServer.install();
+    }
+
+    private static JsonObject value(int n) {
+        JsonObject obj = new JsonObject();
+        obj.addProperty("n", n);
+        return obj;
+    }
+
+    @Test
+    void concurrentWritesOfAFileDoNotCollide() throws Exception {
+        FileDataStorage storage = new FileDataStorage(folder, FileDataStorage.Layout.SHARDED, false, Deflater.DEFAULT_COMPRESSION);
+        UUID uuid = UUID.randomUUID();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                int thread = i;
+                futures.add(executor.submit(() -> {
+                    for (int n = 0; n < 200; n++) {
+                        // A write, and a group commit as the write-behind flush makes
+                        if (n % 2 == 0) storage.write(uuid, value(thread * 1000 + n));
+                        else storage.commit(Map.of(uuid, value(thread * 1000 + n)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        JsonObject stored = storage.read(uuid);
+        assertNotNull(stored);
+        assertEquals(199, stored.get("n").getAsInt() % 1000, "One of the last writes wins");
+        File[] left = storage.getFile(uuid).getParentFile().listFiles();
+        assertNotNull(left);
+        assertEquals(1, left.length, "No temporary file is left: " + Arrays.toString(left));
+    }
+
+    /**
+     * @return Every file under the folder, relative to it
+     */
+    private List<String> tree() throws IOException {
+        try (Stream<Path> paths = Files.walk(folder.toPath())) {
+            return paths.filter(Files::isRegularFile).map(path -> folder.toPath().relativize(path).toString()).sorted().toList();
+        }
+    }
+
+    @Test
+    void filesAreMovedToTheLayout() throws IOException {
+        FileDataStorage flat = new FileDataStorage(folder);
+        Map<UUID, JsonObject> values = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            UUID uuid = UUID.randomUUID();
+            values.put(uuid, value(i));
+            flat.write(uuid, value(i));
+        }
+        FileDataStorage sharded = new FileDataStorage(folder, FileDataStorage.Layout.SHARDED, false, Deflater.DEFAULT_COMPRESSION);
+        for (Map.Entry<UUID, JsonObject> entry : values.entrySet()) {
+            String name = entry.getKey().toString();
+            assertEquals(new File(folder, name.substring(0, 2) + "/" + name.substring(2, 4) + "/" + name + ".json"), sharded.getFile(entry.getKey()));
+            assertEquals(entry.getValue(), sharded.read(entry.getKey()));
+        }
+        assertEquals(20, sharded.getFiles().length);
+        assertEquals(20, tree().size());
+        File[] left = folder.listFiles(File::isFile);
+        assertNotNull(left);
+        assertEquals(0, left.length);
+        // And back, which deletes the empty shards
+        flat = new FileDataStorage(folder);
+        for (Map.Entry<UUID, JsonObject> entry : values.entrySet()) {
+            assertEquals(entry.getValue(), flat.read(entry.getKey()));
+        }
+        File[] shards = folder.listFiles(File::isDirectory);
+        assertNotNull(shards);
+        assertEquals(0, shards.length);
+        assertEquals(20, flat.getFiles().length);
+    }
+
+    @Test
+    void fileIsNotMovedOverAnotherOne() throws IOException {
+        UUID uuid = UUID.randomUUID();
+        FileDataStorage sharded = new FileDataStorage(folder, FileDataStorage.Layout.SHARDED, false, Deflater.DEFAULT_COMPRESSION);
+        sharded.write(uuid, value(1));
+        Files.writeString(new File(folder, uuid + FileDataStorage.JSON_SUFFIX).toPath(), value(2).toString());
+        sharded = new FileDataStorage(folder, FileDataStorage.Layout.SHARDED, false, Deflater.DEFAULT_COMPRESSION);
+        assertEquals(value(1), sharded.read(uuid));
+        assertEquals(2, tree().size());
+    }
+
+    @Test
+    void groupCommitWritesRemovesAndPatches() throws IOException {
+        // Over the size of a group
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            uuids.add(UUID.randomUUID());
+        }
+        UUID removed = uuids.get(0);
+        UUID patched = uuids.get(1);
+        UUID legacy = uuids.get(2);
+        new FileDataStorage(folder, FileDataStorage.Layout.SHARDED, true, Deflater.DEFAULT_COMPRESSION).write(legacy, value(-1));
+        FileDataStorage storage = new FileDataStorage(folder, FileDataStorage.Layout.SHARDED, false, Deflater.DEFAULT_COMPRESSION);
+        storage.write(removed, value(-1));
+        storage.write(patched, value(10));
+        Map<UUID, JsonElement> batch = new LinkedHashMap<>();
+        for (int i = 0; i < uuids.size(); i++) {
+            batch.put(uuids.get(i), value(i));
+        }
+        batch.put(removed, JsonNull.INSTANCE);
+        batch.put(patched, DataPatch.create().increment("n", 5).set("patched", true).toJson());
+        storage.commit(batch);
+        assertNull(storage.read(removed));
+        JsonObject expected = value(15);
+        expected.addProperty("patched", true);
+        assertEquals(expected, storage.read(patched));
+        assertEquals(value(2), storage.read(legacy));
+        for (int i = 3; i < uuids.size(); i++) {
+            assertEquals(value(i), storage.read(uuids.get(i)));
+        }
+        // Only the live files of the current format, no temporary file or file of the other format is left
+        List<String> files = tree();
+        assertEquals(uuids.size() - 1, files.size());
+        assertTrue(files.stream().allMatch(name -> name.endsWith(FileDataStorage.JSON_SUFFIX)), files.toString());
+    }
+}
@@ -0,0 +1,376 @@
+package top.shjibi.plugineer.config;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalDataStorageTest {
+
+    @TempDir
+    Path folder;
+    private JournalDataStorage storage;
+
+    @BeforeEach
+    void setUp() {
+        TestServer.install();
+        storage = open(1 << 20);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    private JournalDataStorage open(long maxSegmentSize) {
+        // Compacted only when a test asks for it
+        return new JournalDataStorage(folder.toFile(), maxSegmentSize, 3600);
+    }
+
+    private void reopen() {
+        storage.close();
+        storage = open(1 << 20);
+    }
+
+    private static JsonObject value(int n) {
+        JsonObject obj = new JsonObject();
+        obj.addProperty("n", n);
+        obj.addProperty("name", "entry" + n);
+        return obj;
+    }
+
+    private File lastSegment() {
+        File[] files = storage.getFiles();
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        return files[files.length - 1];
+    }
+
+    @Test
+    void reopenKeepsLatestValues() {
+        UUID kept = UUID.randomUUID();
+        UUID replaced = UUID.randomUUID();
+        UUID deleted = UUID.randomUUID();
+        storage.write(kept, value(1));
+        storage.write(replaced, value(2));
+        storage.write(deleted, value(3));
+        storage.write(replaced, value(4));
+        storage.write(deleted, null);
+        reopen();
+        assertEquals(value(1), storage.read(kept));
+        assertEquals(value(4), storage.read(replaced));
+        assertNull(storage.read(deleted));
+        Map<UUID, JsonObject> loaded = new HashMap<>();
+        storage.loadAll(loaded::put);
+        assertEquals(Map.of(kept, value(1), replaced, value(4)), loaded);
+    }
+
+    @Test
+    void truncatedRecordIsDiscarded() throws IOException {
+        UUID complete = UUID.randomUUID();
+        UUID torn = UUID.randomUUID();
+        storage.write(complete, value(1));
+        storage.write(torn, value(2));
+        storage.write(torn, value(3));
+        File segment = lastSegment();
+        long size = segment.length();
+        storage.close();
+        // A crash in the middle of the last write
+        try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(size - 5);
+        }
+        storage = open(1 << 20);
+        assertEquals(value(1), storage.read(complete));
+        assertEquals(value(2), storage.read(torn), "The previous record of a torn write is kept");
+        long recovered = segment.length();
+        assertTrue(recovered < size - 5, "The torn record is cut off the segment");
+        // New records are appended after the valid part, and survive the next reopen
+        storage.write(torn, value(5));
+        reopen();
+        assertEquals(value(1), storage.read(complete));
+        assertEquals(value(5), storage.read(torn));
+    }
+
+    @Test
+    void corruptedRecordDiscardsTheRest() throws IOException {
+        UUID first = UUID.randomUUID();
+        UUID corrupted = UUID.randomUUID();
+        UUID after = UUID.randomUUID();
+        storage.write(first, value(1));
+        long start = lastSegment().length();
+        storage.write(corrupted, value(2));
+        storage.write(after, value(3));
+        File segment = lastSegment();
+        storage.close();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            // A byte of the payload, past the 21 bytes of the header
+            file.seek(start + 25);
+            int b = file.read();
+            file.seek(start + 25);
+            file.write(b ^ 0xFF);
+        }
+        storage = open(1 << 20);
+        assertEquals(value(1), storage.read(first));
+        assertNull(storage.read(corrupted));
+        assertNull(storage.read(after), "Records after a corrupted one can't be trusted");
+        assertEquals(start, segment.length());
+    }
+
+    @Test
+    void patchesAreReplayedAfterReopen() {
+        UUID uuid = UUID.randomUUID();
+        JsonObject expected = value(0);
+        storage.write(uuid, expected.deepCopy());
+        // More patches than a chain may hold, so the chain is also rewritten as a whole value once
+        for (int i = 0; i < 40; i++) {
+            DataPatch patch = DataPatch.create().increment("n", 1).set("stats.last", i);
+            if (i % 7 == 0) patch.remove("name");
+            else patch.set("name", "entry" + i);
+            expected = patch.apply(expected);
+            storage.writeAll(Map.<UUID, JsonElement>of(uuid, patch.toJson()));
+            assertEquals(expected, storage.read(uuid));
+        }
+        reopen();
+        assertEquals(expected, storage.read(uuid));
+    }
+
+    @Test
+    void compactionKeepsLiveValuesAndDeletions() {
+        storage.close();
+        // Small segments, so the updates are spread over many of them
+        storage = open(2048);
+        Random random = new Random(3);
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            uuids.add(UUID.randomUUID());
+        }
+        Map<UUID, JsonObject> expected = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            UUID uuid = uuids.get(random.nextInt(uuids.size()));
+            Map<UUID, JsonElement> batch = new HashMap<>();
+            if (random.nextInt(5) == 0) {
+                batch.put(uuid, JsonNull.INSTANCE);
+                expected.remove(uuid);
+            } else if (expected.containsKey(uuid) && random.nextBoolean()) {
+                DataPatch patch = DataPatch.create().increment("n", 1);
+                batch.put(uuid, patch.toJson());
+                expected.put(uuid, patch.apply(expected.get(uuid)));
+            } else {
+                batch.put(uuid, value(i));
+                expected.put(uuid, value(i));
+            }
+            storage.writeAll(batch);
+        }
+        int segments = storage.getFiles().length;
+        storage.compact();
+        assertTrue(storage.getFiles().length < segments, "Compaction removes the outdated segments");
+        storage.close();
+        storage = open(2048);
+        for (UUID uuid : uuids) {
+            assertEquals(expected.get(uuid), storage.read(uuid), "Entry " + uuid);
+        }
+    }
+
+    @Test
+    void compactionSurvivesCrashAfterDeletingSegment() throws IOException {
+        storage.close();
+        CrashingJournal crashing = new CrashingJournal(folder.toFile());
+        storage = crashing;
+        // Never updated, so their only records are in the first segment once the rest of it is outdated
+        Map<UUID, JsonObject> expected = new HashMap<>();
+        for (int i = 0; i < 5; i++) {
+            UUID uuid = UUID.randomUUID();
+            storage.write(uuid, value(i));
+            expected.put(uuid, value(i));
+        }
+        UUID updated = UUID.randomUUID();
+        for (int i = 0; i < 200; i++) {
+            storage.write(updated, value(i));
+        }
+        expected.put(updated, value(199));
+        crashing.crashOnDelete = true;
+        storage.compact();
+        assertNotNull(crashing.image, "A segment was compacted");
+        storage.close();
+        crashing.crash();
+        storage = open(2048);
+        for (Map.Entry<UUID, JsonObject> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), storage.read(entry.getKey()), "Entry " + entry.getKey());
+        }
+    }
+
+    /**
+     * A journal whose files are cut to what was forced to the disk when the first compacted segment is deleted,
+     * as if the process crashed right after deleting it
+     */
+    private static final class CrashingJournal extends JournalDataStorage {
+        private final List<DurableChannel> channels = new ArrayList<>();
+        private boolean crashOnDelete;
+        private Map<Path, Long> image;
+
+        private CrashingJournal(File folder) {
+            super(folder, 2048, 3600);
+        }
+
+        @Override
+        FileChannel openChannel(Path file) throws IOException {
+            DurableChannel channel = new DurableChannel(this, file, super.openChannel(file));
+            channels.add(channel);
+            return channel;
+        }
+
+        /**
+         * Called when a channel is closed, which the journal does right before deleting a compacted segment
+         */
+        private void closed(DurableChannel closed) {
+            channels.remove(closed);
+            if (!crashOnDelete) return;
+            crashOnDelete = false;
+            image = new HashMap<>();
+            for (DurableChannel channel : channels) {
+                image.put(channel.file, channel.forced);
+            }
+        }
+
+        /**
+         * Restores the files as they were on the disk at the crash, what wasn't forced is lost
+         */
+        private void crash() throws IOException {
+            for (File file : getFiles()) {
+                Long forced = image.get(file.toPath());
+                if (forced == null) {
+                    Files.delete(file.toPath());
+                    continue;
+                }
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(forced);
+                }
+            }
+        }
+    }
+
+    /**
+     * A channel which remembers how much of its file was forced to the disk, the journal only appends to its files
+     */
+    private static final class DurableChannel extends FileChannel {
+        private final CrashingJournal journal;
+        private final Path file;
+        private final FileChannel channel;
+        private long forced;
+
+        private DurableChannel(CrashingJournal journal, Path file, FileChannel channel) throws IOException {
+            this.journal = journal;
+            this.file = file;
+            this.channel = channel;
+            this.forced = channel.size();
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            channel.force(metaData);
+            forced = channel.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            forced = Math.min(forced, size);
+            return this;
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            channel.close();
+            journal.closed(this);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return channel.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return channel.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return channel.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return channel.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return channel.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return channel.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return channel.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return channel.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+    }
+}
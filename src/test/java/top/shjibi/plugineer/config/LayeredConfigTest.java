@@ -0,0 +1,94 @@
+package top.shjibi.plugineer.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LayeredConfigTest {
+
+    @TempDir
+    File folder;
+    private TestPlugin plugin;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        TestServer.install();
+        plugin = new TestPlugin(folder);
+        // Above the default layer, which is the resource layered.yml
+        write("layered.yml", "name: file\nlimits:\n  players: 20\n");
+        write("worlds/nether.yml", "limits:\n  rate: 7\nlist: [c]\n");
+        write("worlds/event.yml", "name: event\nlimits:\n  extra: true\n");
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(folder, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.writeString(file.toPath(), content);
+    }
+
+    private LayeredConfig config() {
+        return new LayeredConfig(plugin, "layered", null, "worlds/nether.yml", "worlds/missing.yml", "worlds/event.yml");
+    }
+
+    @Test
+    void higherLayersReplaceValuesAndSectionsAreMerged() {
+        LayeredConfig config = config();
+        assertEquals("event", config.get("name"));
+        assertEquals(20, config.get("limits.players"));
+        assertEquals(7, config.get("limits.rate"));
+        assertEquals(true, config.get("limits.extra"));
+        // Lists are values, they aren't merged
+        assertEquals(List.of("c"), config.get("list"));
+        assertEquals(1, config.get("only-default"));
+        assertEquals(Map.of("players", 20, "rate", 7, "extra", true), config.get("limits"));
+        assertEquals(List.of("name", "limits", "list", "only-default"), List.copyOf(config.getKeys()));
+    }
+
+    @Test
+    void sectionsAreParsedWhenRead() {
+        LayeredConfig config = config();
+        assertEquals(0, config.getParsedCount());
+        assertEquals(20, config.get("limits.players"));
+        // The section of every layer which has it
+        assertEquals(4, config.getParsedCount());
+        assertNull(config.get("missing.path"));
+        assertFalse(config.contains("missing"));
+        assertEquals(4, config.getParsedCount());
+    }
+
+    @Test
+    void snapshotHoldsTheMergedValues() {
+        ConfigSnapshot snapshot = config().getSnapshot();
+        assertEquals("event", snapshot.get("name"));
+        assertEquals(7, snapshot.get("limits.rate"));
+        assertEquals(1, snapshot.get("only-default"));
+    }
+
+    @Test
+    void reloadReplacesAllTheLayers() throws IOException {
+        LayeredConfig config = config();
+        ConfigSnapshot before = config.getSnapshot();
+        write("worlds/event.yml", "limits:\n  players: 99\n");
+        write("worlds/missing.yml", "name: added\n");
+        config.reload();
+        assertEquals("added", config.get("name"));
+        assertEquals(99, config.get("limits.players"));
+        assertFalse(config.contains("limits.extra"));
+        assertEquals("event", before.get("name"));
+    }
+
+    @Test
+    void saveDoesNothing() {
+        LayeredConfig config = config();
+        assertDoesNotThrow(config::save);
+        assertEquals("event", config.get("name"));
+    }
+}
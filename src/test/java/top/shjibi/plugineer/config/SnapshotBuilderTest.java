@@ -0,0 +1,62 @@
+package top.shjibi.plugineer.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnapshotBuilderTest {
+
+    @TempDir
+    Path folder;
+
+    private DataSnapshot add(Path file, String snapshot, String previous) throws IOException {
+        SnapshotBuilder builder = new SnapshotBuilder(folder.resolve(snapshot).toFile(),
+                previous == null ? null : folder.resolve(previous).toFile());
+        builder.add(file, file.getFileName().toString());
+        return builder.build();
+    }
+
+    private DataSnapshot copy(Path file, long size, String snapshot, String previous) throws IOException {
+        SnapshotBuilder builder = new SnapshotBuilder(folder.resolve(snapshot).toFile(),
+                previous == null ? null : folder.resolve(previous).toFile());
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            builder.copy(channel, size, file.getFileName().toString());
+        }
+        return builder.build();
+    }
+
+    @Test
+    void editingAFileInPlaceDoesNotChangeSnapshots() throws IOException {
+        Path file = Files.writeString(folder.resolve("entry.json"), "{\"n\":1}");
+        assertEquals(1, add(file, "1", null).copiedFiles());
+        assertEquals(0, add(file, "2", "1").changedFiles(), "An unchanged file is shared with the previous snapshot");
+        // A truncating write, as a text editor or a web panel makes
+        Files.writeString(file, "{\"n\":10}");
+        assertEquals("{\"n\":1}", Files.readString(folder.resolve("1/entry.json")));
+        assertEquals("{\"n\":1}", Files.readString(folder.resolve("2/entry.json")));
+        assertEquals(1, add(file, "3", "2").changedFiles());
+        assertEquals("{\"n\":10}", Files.readString(folder.resolve("3/entry.json")));
+    }
+
+    @Test
+    void segmentWithOtherBytesOfTheSameSizeIsCopied() throws IOException {
+        Path segment = folder.resolve("journal.log");
+        Files.writeString(segment, "record-1 record-2 ");
+        assertEquals(1, copy(segment, 18, "1", null).changedFiles());
+        assertEquals(0, copy(segment, 18, "2", "1").changedFiles(), "The same bytes are linked");
+        // Cut after a crash, and appended to the same size again
+        Files.writeString(segment, "record-1 record-3 ");
+        DataSnapshot snapshot = copy(segment, 18, "3", "2");
+        assertEquals(1, snapshot.copiedFiles());
+        assertEquals("record-1 record-3 ", Files.readString(folder.resolve("3/journal.log"), StandardCharsets.UTF_8));
+        assertEquals("record-1 record-2 ", Files.readString(folder.resolve("2/journal.log"), StandardCharsets.UTF_8));
+    }
+}
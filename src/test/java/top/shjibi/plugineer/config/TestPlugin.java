@@ -0,0 +1,28 @@
+package top.shjibi.plugineer.config;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.plugin.java.JavaPluginLoader;
+
+import java.io.File;
+
+/**
+ * A plugin created with the constructor which {@link JavaPlugin} provides for tests, it needs a {@link TestServer}.
+ * Its resources are the resources of the tests.
+ */
+final class TestPlugin extends JavaPlugin {
+
+    @SuppressWarnings("deprecation")
+    TestPlugin(File dataFolder) {
+        super(new JavaPluginLoader(Bukkit.getServer()), new PluginDescriptionFile("Test", "1.0", TestPlugin.class.getName()),
+                dataFolder, new File(dataFolder, "Test.jar"));
+    }
+
+    /**
+     * Enables the plugin, so tasks can be scheduled for it
+     */
+    void enable() {
+        setEnabled(true);
+    }
+}
@@ -0,0 +1,66 @@
+package top.shjibi.plugineer.config;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.scheduler.BukkitScheduler;
+
+import java.lang.reflect.Proxy;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+/**
+ * Installs a {@link Server} which only provides a logger, for the code which logs through {@link Bukkit#getLogger()},
+ * and a scheduler whose tasks run when the test ticks it on the main thread, which is the thread which installed it last
+ */
+final class TestServer {
+
+    private static final Logger LOGGER = Logger.getLogger("Test");
+    private static final Queue<Runnable> TASKS = new ConcurrentLinkedQueue<>();
+    private static final BukkitScheduler SCHEDULER = (BukkitScheduler) Proxy.newProxyInstance(BukkitScheduler.class.getClassLoader(),
+            new Class<?>[]{BukkitScheduler.class}, (proxy, method, args) -> switch (method.getName()) {
+                case "runTask" -> {
+                    TASKS.add((Runnable) args[1]);
+                    yield null;
+                }
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "equals" -> proxy == args[0];
+                case "toString" -> "TestScheduler";
+                default -> throw new UnsupportedOperationException(method.getName());
+            });
+    private static volatile Thread mainThread;
+
+    private TestServer() {
+    }
+
+    static synchronized void install() {
+        mainThread = Thread.currentThread();
+        TASKS.clear();
+        if (Bukkit.getServer() != null) return;
+        Bukkit.setServer((Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[]{Server.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getLogger" -> LOGGER;
+                    case "getScheduler" -> SCHEDULER;
+                    case "isPrimaryThread" -> Thread.currentThread() == mainThread;
+                    case "getName", "getVersion", "getBukkitVersion" -> "test";
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "TestServer";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                }));
+    }
+
+    /**
+     * Runs the tasks scheduled so far, as the end of a tick would
+     *
+     * @return Count of the tasks which ran
+     */
+    static int tick() {
+        if (Thread.currentThread() != mainThread) throw new IllegalStateException("Not the main thread");
+        int count = 0;
+        for (Runnable task; (task = TASKS.poll()) != null; count++) {
+            task.run();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,141 @@
+package top.shjibi.plugineer.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UUIDMapTest {
+
+    // Capacity of a map created for a single entry
+    private static final int CAPACITY = 16;
+
+    /**
+     * Creates a key whose home slot in an empty map is the given slot
+     */
+    private static UUID keyWithHome(int home, Random random) throws ReflectiveOperationException {
+        Method hash = UUIDMap.class.getDeclaredMethod("hash", long.class, long.class);
+        hash.setAccessible(true);
+        while (true) {
+            UUID uuid = new UUID(random.nextLong(), random.nextLong());
+            int slot = (int) hash.invoke(null, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) & (CAPACITY - 1);
+            if (slot == home) return uuid;
+        }
+    }
+
+    @Test
+    void putGetRemove() {
+        UUIDMap<String> map = new UUIDMap<>();
+        UUID a = UUID.randomUUID();
+        UUID b = UUID.randomUUID();
+        assertNull(map.put(a, "a"));
+        assertEquals("a", map.put(a, "a2"));
+        map.put(b, "b");
+        assertEquals(2, map.size());
+        assertEquals("a2", map.get(a));
+        assertEquals("b", map.get(b.getMostSignificantBits(), b.getLeastSignificantBits()));
+        assertEquals("a2", map.remove(a));
+        assertNull(map.get(a));
+        assertFalse(map.containsKey(a));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void iteratorRemovalInWrappedRun() throws ReflectiveOperationException {
+        Random random = new Random(1);
+        // A at 15, B at 0 and C at 1, all with the home slot 15
+        UUID a = keyWithHome(15, random);
+        UUID b = keyWithHome(15, random);
+        UUID c = keyWithHome(15, random);
+        UUIDMap<String> map = new UUIDMap<>(1);
+        map.put(a, "a");
+        map.put(b, "b");
+        map.put(c, "c");
+        Map<UUID, String> seen = new HashMap<>();
+        for (Iterator<Map.Entry<UUID, String>> iterator = map.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<UUID, String> entry = iterator.next();
+            assertNotNull(entry.getValue(), "Entry without a value");
+            assertNull(seen.put(entry.getKey(), entry.getValue()), "Entry returned twice: " + entry.getValue());
+            if (entry.getKey().equals(a)) iterator.remove();
+        }
+        assertEquals(Map.of(a, "a", b, "b", c, "c"), seen);
+        assertEquals(Map.of(b, "b", c, "c"), new HashMap<>(map));
+    }
+
+    @Test
+    void iteratorRemovalReturnsEveryEntryOnce() throws ReflectiveOperationException {
+        // Keys crowded around the end of the arrays, so most runs are long and wrap around to the start
+        Random random = new Random(42);
+        for (int round = 0; round < 2000; round++) {
+            UUIDMap<Integer> map = new UUIDMap<>(1);
+            Map<UUID, Integer> expected = new HashMap<>();
+            int count = 1 + random.nextInt(11);
+            for (int i = 0; i < count; i++) {
+                UUID uuid = keyWithHome((CAPACITY - 3 + random.nextInt(5)) % CAPACITY, random);
+                map.put(uuid, i);
+                expected.put(uuid, i);
+            }
+            Map<UUID, Integer> seen = new HashMap<>();
+            for (Iterator<Map.Entry<UUID, Integer>> iterator = map.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<UUID, Integer> entry = iterator.next();
+                assertNotNull(entry.getValue(), "Entry without a value");
+                assertNull(seen.put(entry.getKey(), entry.getValue()), "Entry returned twice: " + entry.getKey());
+                assertEquals(expected.get(entry.getKey()), entry.getValue());
+                if (random.nextBoolean()) {
+                    iterator.remove();
+                    expected.remove(entry.getKey());
+                }
+            }
+            assertEquals(count, seen.size());
+            assertEquals(expected, new HashMap<>(map));
+        }
+    }
+
+    @Test
+    void matchesHashMap() throws ReflectiveOperationException {
+        Random random = new Random(7);
+        // A small pool of keys sharing few home slots, so puts, removals and lookups keep hitting the same colliding runs
+        // Never more than the 11 entries the map holds before it grows
+        UUID[] keys = new UUID[11];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keyWithHome((CAPACITY - 2 + random.nextInt(4)) % CAPACITY, random);
+        }
+        UUIDMap<Integer> map = new UUIDMap<>(1);
+        Map<UUID, Integer> expected = new HashMap<>();
+        for (int step = 0; step < 200_000; step++) {
+            UUID key = keys[random.nextInt(keys.length)];
+            switch (random.nextInt(10)) {
+                case 0, 1, 2, 3 -> assertEquals(expected.put(key, step), map.put(key, step));
+                case 4, 5 -> assertEquals(expected.remove(key), map.remove(key));
+                case 6 -> {
+                    int modulo = 2 + random.nextInt(3);
+                    assertEquals(expected.entrySet().removeIf(e -> e.getValue() % modulo == 0),
+                            map.entrySet().removeIf(e -> e.getValue() % modulo == 0));
+                }
+                case 7 -> {
+                    for (Map.Entry<UUID, Integer> entry : map.entrySet()) {
+                        if (entry.getKey().equals(key)) entry.setValue(-step);
+                    }
+                    if (expected.containsKey(key)) expected.put(key, -step);
+                }
+                default -> assertEquals(expected.get(key), map.get(key));
+            }
+            assertEquals(expected.size(), map.size());
+            if (step % 1000 == 0) assertEquals(expected, new HashMap<>(map));
+        }
+        assertEquals(expected, new HashMap<>(map));
+    }
+
+    @Test
+    void capacityIsClamped() throws ReflectiveOperationException {
+        Method capacityFor = UUIDMap.class.getDeclaredMethod("capacityFor", int.class);
+        capacityFor.setAccessible(true);
+        assertEquals(CAPACITY, capacityFor.invoke(null, 0));
+        assertEquals(CAPACITY, capacityFor.invoke(null, 11));
+        assertEquals(CAPACITY * 2, capacityFor.invoke(null, 12));
+        // Would double past the largest power of two, and never end
+        assertEquals(1 << 29, capacityFor.invoke(null, Integer.MAX_VALUE));
+    }
+}